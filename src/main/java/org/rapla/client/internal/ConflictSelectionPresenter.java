@@ -35,6 +35,8 @@ import org.rapla.framework.RaplaException;
 import org.rapla.framework.RaplaInitializationException;
 import org.rapla.logger.Logger;
 import org.rapla.scheduler.Promise;
+import org.rapla.scheduler.ResolvedPromise;
+import org.rapla.storage.ConflictQuery;
 
 import javax.inject.Inject;
 import java.util.ArrayList;
@@ -252,13 +254,29 @@ public class ConflictSelectionPresenter implements Presenter
     }
 
     protected void queryAllConflicts()  {
-        raplaFacade.getConflicts()
+        queryConflicts(new ConflictQuery(), new LinkedHashSet<>())
                    .thenAccept(conflicts->updateTree(conflicts))
                    .exceptionally(ex -> {
                        logger.error(ex.getMessage(), ex);
                    });
     }
 
+    /** the tree groups all conflicts, so they are still all loaded, but page by page to keep each response small*/
+    private Promise<Collection<Conflict>> queryConflicts(ConflictQuery query, Collection<Conflict> loaded)
+    {
+        return raplaFacade.queryConflicts(query).thenCompose(page ->
+        {
+            loaded.addAll(page.getConflicts());
+            final String nextCursor = page.getNextCursor();
+            if (nextCursor == null)
+            {
+                return new ResolvedPromise<>(loaded);
+            }
+            query.setCursor(nextCursor);
+            return queryConflicts(query, loaded);
+        });
+    }
+
     private void removeConflict(Collection<Conflict> conflicts, Set<ReferenceInfo> removedReferences)
     {
         Set<String> removedIds = new LinkedHashSet<>();
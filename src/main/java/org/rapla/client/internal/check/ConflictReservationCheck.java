@@ -54,28 +54,11 @@ public class ConflictReservationCheck implements EventCheck
 
     public Promise<Boolean> check(Collection<Reservation> reservations, PopupContext sourceComponent)
     {
-        final List<Conflict> conflictList = new ArrayList<>();
-        Promise<Void> p = null;
-        for (Reservation reservation : reservations)
-        {
-            Promise<Collection<Conflict>> promise = raplaFacade.getConflictsForReservation(reservation);
-            final Promise<Void> resultPromise = promise.thenAccept((conflicts) -> {
-                for (Conflict conflict : conflicts)
-                {
-                    conflictList.add(conflict);
-                }
-            });
-            if (p == null)
-            {
-                p = resultPromise;
-            }
-            else
-            {
-                p = p.thenCombine(resultPromise, (a, b) -> Promise.VOID);
-            }
-        }
-        return p.thenCompose((dummy)->
+        // all reservations are checked in one request instead of one request per reservation
+        Promise<Collection<Conflict>> p = raplaFacade.getConflictsForReservations(reservations);
+        return p.thenCompose((conflicts)->
         {
+            final List<Conflict> conflictList = new ArrayList<>(conflicts);
             if ( conflictList.isEmpty())
             {
                 return new ResolvedPromise(true);
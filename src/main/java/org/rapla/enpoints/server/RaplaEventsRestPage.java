@@ -16,7 +16,6 @@ import org.rapla.facade.internal.CalendarModelImpl;
 import org.rapla.framework.RaplaException;
 import org.rapla.rest.PATCH;
 import org.rapla.scheduler.Promise;
-import org.rapla.server.PromiseWait;
 import org.rapla.server.RemoteSession;
 import org.rapla.server.internal.SecurityManager;
 import org.rapla.storage.CachableStorageOperator;
@@ -50,7 +49,6 @@ import java.util.Map;
     @Inject SecurityManager securityManager;
     private final HttpServletRequest request;
     @Inject CachableStorageOperator operator;
-    @Inject PromiseWait promiseWait;
 
     @Inject public RaplaEventsRestPage(@Context HttpServletRequest request)
     {
@@ -59,7 +57,7 @@ import java.util.Map;
 
     private Collection<String> CLASSIFICATION_TYPES = Arrays.asList(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION);
 
-    @GET @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML }) public List<ReservationImpl> list(@QueryParam("start") Date start,
+    @GET @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML }) public Promise<List<ReservationImpl>> list(@QueryParam("start") Date start,
             @QueryParam("end") Date end, @QueryParam("resources") List<String> resources,@QueryParam("owners") List<String> ownersId, @QueryParam("eventTypes") Collection<String> eventTypes,
             @QueryParam("attributeFilter") Map<String, String> simpleFilter) throws Exception
     {
@@ -84,18 +82,19 @@ import java.util.Map;
         final User owner = null;
         final Promise<AppointmentMapping> promise = operator
                 .queryAppointments(owner, allocatables, owners, start, end, filters, annotationQuery, false);
-        final AppointmentMapping appMap = promiseWait.waitForWithRaplaException(promise, 20000);
-        final List<ReservationImpl> result = new ArrayList<>();
-        final Collection<Reservation> reservations = appMap.getAllReservations();
-        PermissionController permissionController = facade.getPermissionController();
-        for (Reservation r : reservations)
-        {
-            if (permissionController.canRead(r, user))
+        return promise.thenApply((appMap) -> {
+            final List<ReservationImpl> result = new ArrayList<>();
+            final Collection<Reservation> reservations = appMap.getAllReservations();
+            PermissionController permissionController = facade.getPermissionController();
+            for (Reservation r : reservations)
             {
-                result.add((ReservationImpl) r);
+                if (permissionController.canRead(r, user))
+                {
+                    result.add((ReservationImpl) r);
+                }
             }
-        }
-        return result;
+            return result;
+        });
     }
 
     @GET @Path("{id}") @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML }) public ReservationImpl get(@PathParam("id") String id)
@@ -106,6 +106,7 @@ public final class AppointmentImpl extends SimpleEntity implements Appointment
 
     public void move(Date start,Date end) {
         checkWritable();
+        invalidateOccurrences();
         this.start = start;
         this.end = end;
         if ( isWholeDaysSet)
@@ -141,6 +142,7 @@ public final class AppointmentImpl extends SimpleEntity implements Appointment
 
     public void setWholeDays(boolean enable) {
         checkWritable();
+        invalidateOccurrences();
         if (enable) {
         	long cutStartTime = DateTools.cutDate(start.getTime());
             if (start.getTime() != cutStartTime)
@@ -192,6 +194,41 @@ public final class AppointmentImpl extends SimpleEntity implements Appointment
     }
 
     transient Date maxDate;
+    transient volatile AppointmentOccurrenceCache.Occurrences occurrences;
+
+    /** drops the cached repetitions. Must be called when start, end or the repeating change*/
+    void invalidateOccurrences() {
+        AppointmentOccurrenceCache.Occurrences occurrences = this.occurrences;
+        if ( occurrences != null)
+        {
+            this.occurrences = null;
+            AppointmentOccurrenceCache.remove( occurrences);
+        }
+    }
+
+    /** returns the cached repetitions if they cover the passed end or null if the repetitions can't be cached.
+     * Only read only appointments are cached, because they are the ones stored in the cache and expanded over and over again.*/
+    private AppointmentOccurrenceCache.Occurrences getOccurrences(RepeatingImpl repeating, long end) {
+        if ( !isReadOnly() )
+        {
+            return null;
+        }
+        AppointmentOccurrenceCache.Occurrences occurrences = this.occurrences;
+        if ( occurrences == null || occurrences.evicted)
+        {
+            occurrences = AppointmentOccurrenceCache.build( this, repeating);
+            this.occurrences = occurrences;
+        }
+        else
+        {
+            AppointmentOccurrenceCache.touch( occurrences);
+        }
+        if ( end > occurrences.coveredUntil)
+        {
+            return null;
+        }
+        return occurrences;
+    }
 
     /** returns the largest date that covers the appointment
         and null if the appointments repeats forever.
@@ -224,6 +261,7 @@ public final class AppointmentImpl extends SimpleEntity implements Appointment
 
     public void setRepeatingEnabled(boolean enableRepeating) {
         checkWritable();
+        invalidateOccurrences();
         if (this.repeating == null) {
             if (enableRepeating) {
                 this.repeating = new RepeatingImpl(Repeating.WEEKLY,this);
@@ -398,6 +436,33 @@ public final class AppointmentImpl extends SimpleEntity implements Appointment
             }
         }
         
+        long blockLength = Math.max(0, e - s);
+        AppointmentOccurrenceCache.Occurrences occurrences = getOccurrences( repeating, c2);
+        if ( occurrences != null)
+        {
+            // the same conditions as in the loop below, but we start with the first repetition that can overlap
+            final long[] starts = occurrences.starts;
+            final long maxEnding = occurrences.maxEnding;
+            final boolean cutEnd = end != DateTools.cutDate(end);
+            for (int i = occurrences.indexAfter( c1 - blockLength);i<starts.length;i++) {
+                long currentPos = starts[i];
+                if ( currentPos > c2)
+                {
+                    break;
+                }
+                if ( currentPos < c2 && ( cutEnd || !occurrences.daily || currentPos < maxEnding)) {
+                    boolean isException = occurrences.exceptions.get( i);
+                    if ((!isException || !excludeExceptions)) {
+                        if ( blocks == null )
+                        {
+                            return true;
+                        }
+                        blocks.add( new AppointmentBlock(currentPos,currentPos + blockLength,this, isException));
+                    }
+                }
+            }
+            return false;
+        }
         long l = repeating.getIntervalLength( s  );
         //System.out.println( "l in days " + l / DateTools.MILLISECONDS_PER_DAY );
         Assert.isTrue(l>0);
@@ -418,7 +483,6 @@ public final class AppointmentImpl extends SimpleEntity implements Appointment
         DD=DE?BUG: print("Maxend " + f( maxEnding));
         long currentPos = s + timeFromStart;
         DD=DE?BUG: print( " currentPos:" + n(currentPos) + " c2-s:" + n(c2-s) + " c1-e:" + n(c1-e));
-        long blockLength = Math.max(0, e - s);
         while (currentPos <= c2 && (maxNumber<0 || (currentPos<=maxEnding ))) {
             DD=DE?BUG: print(" current pos:" + f(currentPos));
             if (( currentPos + blockLength > c1  )  && ( currentPos < c2 ) && (( end!=DateTools.cutDate(end) || !repeating.isDaily() || currentPos < maxEnding))) {
@@ -665,16 +729,16 @@ public final class AppointmentImpl extends SimpleEntity implements Appointment
         long l1 = r1.getFixedIntervalLength();
         long l2 = r2.getFixedIntervalLength();
         long gap = (l1 * l2) / gcd(l1,l2);
-        Date[] exceptions1 = r1.getExceptions();
-        Date[] exceptions2 = r2.getExceptions();
+        long[] exceptions1 = r1.getExceptionTimes();
+        long[] exceptions2 = r2.getExceptionTimes();
         DD=DE?BUG: print(" Testing Exceptions for overlapp " + f(s1) + " with " + f(s2) + " gap " + n(gap));
         int i1 = 0;
         int i2 = 0;
         long x = 0;
         if (exceptions1.length>i1)
-            DD=DE?BUG: print("Exception a1: " + fe(exceptions1[i1].getTime()));
+            DD=DE?BUG: print("Exception a1: " + fe(exceptions1[i1]));
         if (exceptions2.length>i2)
-            DD=DE?BUG: print("Exception a2: " + fe(exceptions2[i2].getTime()));
+            DD=DE?BUG: print("Exception a2: " + fe(exceptions2[i2]));
         long exceptionTime1 = 0;
         long exceptionTime2 = 0;
   
@@ -683,28 +747,20 @@ public final class AppointmentImpl extends SimpleEntity implements Appointment
             long pos1 = s1 + x*gap;
             long pos2 = s2 + x*gap;
            
-            // Find first exception from app1 that matches gap
-            while (i1<exceptions1.length)
+            // Find first exception from app1 that matches gap. If there is none the last exception is used
+            if (i1<exceptions1.length)
             {
-               	exceptionTime1=exceptions1[i1].getTime();
-            	if ( exceptionTime1  >= pos1)
-            	{
-            		DD=DE?BUG: print("Exception  a1: " + fe(exceptionTime1));
-            		break;
-            	}
-            	i1 ++;            	
+                i1 = r1.indexOfFirstExceptionFrom( pos1, i1);
+                exceptionTime1 = exceptions1[Math.min(i1, exceptions1.length - 1)];
+                DD=DE?BUG: print("Exception  a1: " + fe(exceptionTime1));
             }
 
             // Find first exception from app2 that matches gap
-            while (i2<exceptions2.length)
+            if (i2<exceptions2.length)
             {
-            	exceptionTime2 = exceptions2[i2].getTime();
-            	if ( exceptionTime2 >= pos1)
-            	{
-            		DD=DE?BUG: print("Exception a2: " + fe(exceptionTime2));
-            		break;
-            	}
-            	i2 ++;
+                i2 = r2.indexOfFirstExceptionFrom( pos1, i2);
+                exceptionTime2 = exceptions2[Math.min(i2, exceptions2.length - 1)];
+                DD=DE?BUG: print("Exception a2: " + fe(exceptionTime2));
             }
             
             boolean matches1 = false;
@@ -766,6 +822,7 @@ public final class AppointmentImpl extends SimpleEntity implements Appointment
     }
 
     static private void copy(AppointmentImpl source,AppointmentImpl dest) {
+        dest.invalidateOccurrences();
         dest.isWholeDaysSet = source.isWholeDaysSet;
         dest.start = source.start;
         dest.end = source.end;
@@ -0,0 +1,234 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org .       |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.entities.domain.internal;
+
+import org.rapla.components.util.DateTools;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Bounded cache for the expanded occurrences of repeating appointments.
+ * <p>
+ * For each read only repeating appointment the start of every repetition (without the first block) up to
+ * a configurable horizon (6 years by default) is stored in a sorted <code>long[]</code> together with the exception flag of each
+ * repetition. {@link AppointmentImpl#createBlocks} and {@link AppointmentImpl#overlaps} can then find
+ * the first matching repetition with a binary search instead of stepping through the series.
+ * </p>
+ * <p>
+ * The occurrences are built lazily on the first request and dropped when the appointment or its repeating is
+ * changed. If the total number of cached occurrences exceeds {@link #getMaxCachedOccurrences()} they are evicted in
+ * approximately least recently used order (second chance). A cache hit only sets the referenced flag of the
+ * occurrences and takes no lock, so concurrent queries and the parallel conflict calculation don't block each other.
+ * </p>
+ */
+public final class AppointmentOccurrenceCache
+{
+    public static final long DEFAULT_HORIZON = DateTools.MILLISECONDS_PER_WEEK * 312;
+    public static final long DEFAULT_MAX_CACHED_OCCURRENCES = 2000000;
+    /** the maximum number of repetitions that are cached for a single appointment*/
+    static final int MAX_OCCURRENCES_PER_APPOINTMENT = 5000;
+
+    /** the time span (beginning with the later of today and the appointment start) for which repetitions are cached*/
+    private static volatile long horizon = DEFAULT_HORIZON;
+    /** the maximum number of repetitions of all appointments kept in memory*/
+    private static volatile long maxCachedOccurrences = DEFAULT_MAX_CACHED_OCCURRENCES;
+
+    private static final Object lock = new Object();
+    /** the cached occurrences in insertion order, guarded by lock*/
+    private static final ArrayDeque<Occurrences> queue = new ArrayDeque<>();
+    private static volatile long cachedOccurrences;
+    /** the number of removed occurrences that are still in the queue*/
+    private static int removedInQueue;
+
+    private AppointmentOccurrenceCache()
+    {
+    }
+
+    /** the repetitions of one appointment, starting with the second block*/
+    static final class Occurrences
+    {
+        final long[] starts;
+        final BitSet exceptions;
+        /** every repetition that starts before or at this time is contained in starts*/
+        final long coveredUntil;
+        final int maxNumber;
+        final long maxEnding;
+        final boolean daily;
+        volatile boolean evicted;
+        /** set on each cache hit and cleared when the occurrences get a second chance in the eviction*/
+        volatile boolean referenced;
+
+        private Occurrences(long[] starts, BitSet exceptions, long coveredUntil, int maxNumber, long maxEnding, boolean daily)
+        {
+            this.starts = starts;
+            this.exceptions = exceptions;
+            this.coveredUntil = coveredUntil;
+            this.maxNumber = maxNumber;
+            this.maxEnding = maxEnding;
+            this.daily = daily;
+        }
+
+        /** @return the index of the first repetition that starts after the passed time*/
+        int indexAfter(long time)
+        {
+            int index = Arrays.binarySearch(starts, time);
+            if (index < 0)
+            {
+                return -index - 1;
+            }
+            // starts are strictly increasing so the next one starts after time
+            return index + 1;
+        }
+    }
+
+    /** @return the number of repetitions currently held in the cache*/
+    public static long getCachedOccurrences()
+    {
+        return cachedOccurrences;
+    }
+
+    public static long getHorizon()
+    {
+        return horizon;
+    }
+
+    /**
+     * sets the time span in milliseconds for which the repetitions are cached. Only affects occurrences that are built
+     * afterwards, repetitions after the horizon are still calculated stepwise.
+     */
+    public static void setHorizon(long horizon)
+    {
+        if (horizon <= 0)
+        {
+            throw new IllegalArgumentException("Horizon must be positive but was " + horizon);
+        }
+        AppointmentOccurrenceCache.horizon = horizon;
+    }
+
+    public static long getMaxCachedOccurrences()
+    {
+        return maxCachedOccurrences;
+    }
+
+    /** sets the maximum number of repetitions of all appointments kept in memory. 0 disables the cache */
+    public static void setMaxCachedOccurrences(long maxCachedOccurrences)
+    {
+        if (maxCachedOccurrences < 0)
+        {
+            throw new IllegalArgumentException("Maximum number of cached occurrences must not be negative but was " + maxCachedOccurrences);
+        }
+        synchronized (lock)
+        {
+            AppointmentOccurrenceCache.maxCachedOccurrences = maxCachedOccurrences;
+            evict();
+        }
+    }
+
+    static Occurrences build(AppointmentImpl appointment, RepeatingImpl repeating)
+    {
+        final long s = appointment.getStart().getTime();
+        final int maxNumber = repeating.getNumber();
+        final long maxEnding = maxNumber >= 0 ? repeating.getEnd().getTime() : Long.MAX_VALUE;
+        final long limit = Math.max(System.currentTimeMillis(), s) + horizon;
+        long[] starts = new long[16];
+        BitSet exceptions = new BitSet();
+        int size = 0;
+        long currentPos = s + repeating.getIntervalLength(s);
+        long coveredUntil;
+        while (true)
+        {
+            if (maxNumber >= 0 && currentPos > maxEnding)
+            {
+                coveredUntil = Long.MAX_VALUE;
+                break;
+            }
+            if (currentPos > limit || size >= MAX_OCCURRENCES_PER_APPOINTMENT)
+            {
+                coveredUntil = currentPos - 1;
+                break;
+            }
+            if (size == starts.length)
+            {
+                starts = Arrays.copyOf(starts, size * 2);
+            }
+            if (repeating.isException(currentPos))
+            {
+                exceptions.set(size);
+            }
+            starts[size++] = currentPos;
+            currentPos += repeating.getIntervalLength(currentPos);
+        }
+        final Occurrences occurrences = new Occurrences(Arrays.copyOf(starts, size), exceptions, coveredUntil, maxNumber, maxEnding, repeating.isDaily());
+        synchronized (lock)
+        {
+            queue.add(occurrences);
+            cachedOccurrences += size;
+            evict();
+        }
+        return occurrences;
+    }
+
+    /** marks the occurrences as recently used. Called on every cache hit, so it must not lock*/
+    static void touch(Occurrences occurrences)
+    {
+        // only write if necessary, to keep the cache line of a frequently used appointment shared between the cores
+        if (!occurrences.referenced)
+        {
+            occurrences.referenced = true;
+        }
+    }
+
+    static void remove(Occurrences occurrences)
+    {
+        synchronized (lock)
+        {
+            if (occurrences.evicted)
+            {
+                return;
+            }
+            occurrences.evicted = true;
+            cachedOccurrences -= occurrences.starts.length;
+            // the entry is removed from the queue lazily
+            removedInQueue++;
+            if (removedInQueue > queue.size() / 2)
+            {
+                queue.removeIf((o) -> o.evicted);
+                removedInQueue = 0;
+            }
+        }
+    }
+
+    private static void evict()
+    {
+        // each entry gets at most one second chance, so the loop ends after two rounds
+        while (cachedOccurrences > maxCachedOccurrences && !queue.isEmpty())
+        {
+            final Occurrences eldest = queue.poll();
+            if (eldest.evicted)
+            {
+                removedInQueue--;
+                continue;
+            }
+            if (eldest.referenced)
+            {
+                eldest.referenced = false;
+                queue.add(eldest);
+                continue;
+            }
+            eldest.evicted = true;
+            cachedOccurrences -= eldest.starts.length;
+        }
+    }
+}
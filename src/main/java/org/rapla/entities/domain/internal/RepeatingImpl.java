@@ -44,7 +44,8 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
     private Set<Date> exceptions;
     private Set<Integer> weekdays;
     transient private Date[] exceptionArray;
-    transient private boolean arrayUpToDate = false;
+    transient private long[] exceptionTimes;
+    transient private volatile boolean arrayUpToDate = false;
     transient private Appointment appointment;
     private int frequency;
     boolean monthly;
@@ -70,6 +71,7 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
     		throw new IllegalStateException("Repeating type cannot be null");
     	}
         checkWritable();
+        changed();
         this.repeatingType = repeatingType;
         monthly = false;
         yearly = false;
@@ -124,12 +126,21 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
             throw new ReadOnlyException( this );
     }
 
+    /** drops the cached repetitions of the appointment*/
+    private void changed() {
+        if ( appointment instanceof AppointmentImpl)
+        {
+            ((AppointmentImpl) appointment).invalidateOccurrences();
+        }
+    }
+
     public Appointment getAppointment() {
         return appointment;
     }
 
     public void setInterval(int interval) {
         checkWritable();
+        changed();
         if (interval<1)
             interval = 1;
         this.interval = interval;
@@ -201,6 +212,7 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
     {
         if ( readOnly )
             throw new ReadOnlyException( this );
+        changed();
         if ( weekdays !=null)
         {
             this.weekdays = new TreeSet<>(weekdays);
@@ -213,6 +225,7 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
 
     public void setEnd(Date end) {
         checkWritable();
+        changed();
         isFixedNumber = false;
         number = -1;
         this.end = end;
@@ -271,6 +284,7 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
 
     public void setNumber(int number) {
         checkWritable();
+        changed();
         if (number>-1) {
             isFixedNumber = true;
             this.number = Math.max(number,1);
@@ -282,24 +296,29 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
 
     }
 
+    /** returns true if the time lies within the day of an exception. Uses a binary search on the sorted exceptions.*/
     public boolean isException(long time) {
         if (!hasExceptions())
             return false;
 
-        Date[] exceptions = getExceptions();
-        if (exceptions.length == 0) {
-            //          System.out.println("no exceptions");
-            return false;
+        long[] exceptions = getExceptionTimes();
+        int index = Arrays.binarySearch(exceptions, time);
+        if (index >= 0) {
+            return true;
         }
-        for (int i=0;i<exceptions.length;i++) {
-            //System.out.println("Comparing exception " + exceptions[i] + " with " + new Date(time));
-            if (exceptions[i].getTime()<=time
-                && time<exceptions[i].getTime() + DateTools.MILLISECONDS_PER_DAY) {
-                //System.out.println("Exception matched " + exceptions[i]);
-                return true;
-            }
+        // the last exception that starts before time is the only candidate, because every later exception starts after time
+        int before = -index - 2;
+        return before >= 0 && time < exceptions[before] + DateTools.MILLISECONDS_PER_DAY;
+    }
+
+    /** returns the index of the first exception that starts at or after the time or the number of exceptions if there is none.*/
+    int indexOfFirstExceptionFrom(long time, int fromIndex) {
+        long[] exceptions = getExceptionTimes();
+        if (fromIndex >= exceptions.length) {
+            return exceptions.length;
         }
-        return false;
+        int index = Arrays.binarySearch(exceptions, fromIndex, exceptions.length, time);
+        return index >= 0 ? index : -index - 1;
     }
 
     public int getNumber() {
@@ -344,6 +363,7 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
             exceptions = new TreeSet<>();
         exceptions.add(DateTools.cutDate(date));
         arrayUpToDate = false;
+        changed();
     }
 
     public void addExceptions(TimeInterval interval) {
@@ -359,6 +379,7 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
             exceptions.add(new Date(l));
         }
         arrayUpToDate = false;
+        changed();
     }
 
     public void removeException(Date date) {
@@ -373,6 +394,7 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
         if (exceptions.size()==0)
             exceptions = null;
         arrayUpToDate = false;
+        changed();
     }
 
     public void clearExceptions() {
@@ -381,6 +403,7 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
         exceptions.clear();
         exceptions = null;
         arrayUpToDate = false;
+        changed();
     }
 
     public String toString() {
@@ -466,21 +489,42 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
 		dest.setType(repeating.getType());
     	RepeatingImpl source = (RepeatingImpl)repeating;
 		copy( source, dest);
+        arrayUpToDate = false;
+        changed();
     }
 
     private static final Date[] DATE_ARRAY = new Date[0];
+    private static final long[] EMPTY_TIMES = new long[0];
     public Date[] getExceptions() {
         if (!arrayUpToDate) {
+            Date[] array;
+            long[] times;
             if (exceptions != null) {
-                exceptionArray = exceptions.toArray(DATE_ARRAY);
-                Arrays.sort(exceptionArray);
+                array = exceptions.toArray(DATE_ARRAY);
+                Arrays.sort(array);
+                times = new long[array.length];
+                for (int i = 0; i < array.length; i++) {
+                    times[i] = array[i].getTime();
+                }
+            }
+            else {
+                array = DATE_ARRAY;
+                times = EMPTY_TIMES;
             }
-            else
-                exceptionArray = DATE_ARRAY;
+            exceptionArray = array;
+            exceptionTimes = times;
             arrayUpToDate = true;
         }
         return exceptionArray;
     }
+
+    /** the start times of the exceptions in ascending order. The array is rebuild once after each modification of the exceptions*/
+    long[] getExceptionTimes() {
+        if (!arrayUpToDate) {
+            getExceptions();
+        }
+        return exceptionTimes;
+    }
     public boolean hasExceptions() {
         return exceptions != null && exceptions.size()>0;
     }
@@ -520,6 +520,11 @@ public final class ReservationImpl extends SimpleEntity implements Reservation,
         return requestStatus.get( allocatable.getId());
     }
 
+    /** returns true if a request status is set for at least one allocatable*/
+    public boolean hasRequestStatus() {
+        return requestStatus != null && !requestStatus.isEmpty();
+    }
+
     public Appointment[] getRestriction(Allocatable allocatable) {
         String allocatableId = allocatable.getId();
         return getRestrictionForAllocatableRef(allocatableId);
@@ -50,6 +50,7 @@ public final class ClassificationFilterImpl
     transient boolean arrayUpToDate = false;
     transient ClassificationFilterRuleImpl[] rulesArray;
     transient EntityResolver resolver;
+    transient ClassificationFilterPredicate.CompiledFilter compiled;
     ClassificationFilterImpl() {
 	}
     
@@ -59,6 +60,7 @@ public final class ClassificationFilterImpl
 
     public void setResolver( EntityResolver resolver)  {
         this.resolver = resolver;
+        compiled = null;
         for (Iterator<ClassificationFilterRuleImpl> it=list.iterator();it.hasNext();)
         {
              it.next().setResolver( resolver );
@@ -134,6 +136,7 @@ public final class ClassificationFilterImpl
         else
             list.add(index, rule);
         arrayUpToDate = false;
+        compiled = null;
     }
 
     
@@ -185,12 +188,14 @@ public final class ClassificationFilterImpl
         checkWritable();
         list.clear();
         arrayUpToDate = false;
+        compiled = null;
     }
 
     public void removeRule(int index) {
         checkWritable();
         list.remove(index);
         arrayUpToDate = false;
+        compiled = null;
         //System.out.println("Rule " + index + " for '" + dynamicType + "' removed.");
     }
 
@@ -202,39 +207,24 @@ public final class ClassificationFilterImpl
     }
 
     public boolean matches(Classification classification) {
-        if (!getType().equals(classification.getType()))
+        ClassificationFilterPredicate.CompiledFilter compiledFilter = getCompiled();
+        ClassificationImpl classificationImpl = (ClassificationImpl) classification;
+        if (!compiledFilter.type.getId().equals(classificationImpl.getParentId()))
             return false;
-        ClassificationFilterRuleImpl[] rules = getRules();
-        for (int i=0;i<rules.length;i++) {
-            ClassificationFilterRuleImpl rule = rules[i];
-			Attribute attribute = rule.getAttribute();
-			if ( attribute != null)
-			{
-				Collection<Object> values = classification.getValues(attribute);
-				if ( values.size() == 0)
-				{
-			        if (!rule.matches( null))
-			        {
-			            return false;
-			        }
-		                    
-				}
-				else
-				{
-    				boolean matchesOne= false;
-    				for (Object value: values)
-    				{
-    					if (rule.matches( value))
-    						matchesOne = true;
-    				}
-    				if ( !matchesOne )
-    				{
-    					return false;
-    				}
-				}
-			}
+        return compiledFilter.matches(classificationImpl);
+    }
+
+    /** returns the rules compiled for the current version of the type. They are compiled again if the type or the rules change.
+     * @see ClassificationFilterPredicate*/
+    ClassificationFilterPredicate.CompiledFilter getCompiled() {
+        DynamicType type = getType();
+        ClassificationFilterPredicate.CompiledFilter result = compiled;
+        // a changed type is a new object in the cache
+        if (result == null || result.type != type) {
+            result = new ClassificationFilterPredicate.CompiledFilter(type, getRules(), resolver);
+            compiled = result;
         }
-        return true;
+        return result;
     }
 
     boolean hasType(DynamicType type) {
@@ -294,6 +284,7 @@ public final class ClassificationFilterImpl
             }
         }
         arrayUpToDate = false;
+        compiled = null;
     }
 
     public void commitRemove(DynamicType type) throws CannotExistWithoutTypeException 
@@ -0,0 +1,373 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.entities.dynamictype.internal;
+
+import org.rapla.components.util.ParseDateException;
+import org.rapla.components.util.SerializableDateTimeFormat;
+import org.rapla.entities.Category;
+import org.rapla.entities.Entity;
+import org.rapla.entities.dynamictype.Attribute;
+import org.rapla.entities.dynamictype.AttributeType;
+import org.rapla.entities.dynamictype.Classifiable;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.ClassificationFilter;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.storage.EntityResolver;
+import org.rapla.entities.storage.internal.ReferenceHandler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Evaluates an array of classification filters on many classifiables. A classifiable matches if one of the filters matches.
+ * <p>
+ * The filters are grouped by their dynamic type, so only the filters of the classification type are checked.
+ * Each filter rule is translated once into a condition on the stored string values of the classification with already parsed rule values,
+ * and the rules are ordered so that the cheap comparisons are done first.
+ * The result is the same as with {@link ClassificationFilter.Util#matches(ClassificationFilter[], Classifiable)}.
+ * </p>
+ * The compiled form of each filter is cached in the filter until its dynamic type or its rules change,
+ * so calling {@link #compile(ClassificationFilter[])} again for the same filters is cheap.
+ */
+public final class ClassificationFilterPredicate implements Predicate<Classifiable>
+{
+    private final ClassificationFilter[] filters;
+    private final Map<String, List<CompiledFilter>> filtersByType = new HashMap<>();
+
+    private ClassificationFilterPredicate(ClassificationFilter[] filters)
+    {
+        this.filters = filters;
+        for (ClassificationFilter filter : filters)
+        {
+            final CompiledFilter compiled = ((ClassificationFilterImpl) filter).getCompiled();
+            filtersByType.computeIfAbsent(compiled.type.getId(), (typeId) -> new ArrayList<>()).add(compiled);
+        }
+    }
+
+    public static ClassificationFilterPredicate compile(ClassificationFilter[] filters)
+    {
+        return new ClassificationFilterPredicate(filters);
+    }
+
+    /** @return the filters this predicate was compiled from*/
+    public ClassificationFilter[] getFilters()
+    {
+        return filters;
+    }
+
+    @Override
+    public boolean test(Classifiable classifiable)
+    {
+        return matches(classifiable.getClassification());
+    }
+
+    public boolean matches(Classification classification)
+    {
+        final ClassificationImpl classificationImpl = (ClassificationImpl) classification;
+        final List<CompiledFilter> typeFilters = filtersByType.get(classificationImpl.getParentId());
+        if (typeFilters == null)
+        {
+            return false;
+        }
+        for (CompiledFilter filter : typeFilters)
+        {
+            if (filter.matches(classificationImpl))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** the rules of one filter for one version of its dynamic type */
+    static final class CompiledFilter
+    {
+        final DynamicType type;
+        final List<CompiledRule> rules = new ArrayList<>();
+
+        CompiledFilter(DynamicType type, ClassificationFilterRuleImpl[] rules, EntityResolver resolver)
+        {
+            this.type = type;
+            for (ClassificationFilterRuleImpl rule : rules)
+            {
+                final Attribute attribute = rule.getAttribute();
+                // rules for removed attributes are ignored
+                if (attribute != null)
+                {
+                    this.rules.add(new CompiledRule(attribute, rule, resolver));
+                }
+            }
+            this.rules.sort(Comparator.comparingInt((compiledRule) -> compiledRule.cost));
+        }
+
+        boolean matches(ClassificationImpl classification)
+        {
+            for (CompiledRule rule : rules)
+            {
+                if (!rule.matches(classification))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** a single condition of a rule, that is tested with the stored string value or null if the classification has no value*/
+    private interface Condition
+    {
+        boolean matches(String value);
+    }
+
+    static final class CompiledRule
+    {
+        private final Attribute attribute;
+        private final Condition[] conditions;
+        private final int cost;
+
+        CompiledRule(Attribute attribute, ClassificationFilterRuleImpl rule, EntityResolver resolver)
+        {
+            this.attribute = attribute;
+            final String[] operators = rule.getOperators();
+            conditions = new Condition[operators.length];
+            int cost = 0;
+            for (int i = 0; i < operators.length; i++)
+            {
+                final Object ruleValue = rule.getValue(attribute, i);
+                conditions[i] = createCondition(attribute, operators[i], ruleValue, resolver);
+                cost = Math.max(cost, getCost(attribute.getType(), operators[i]));
+            }
+            this.cost = cost;
+        }
+
+        boolean matches(ClassificationImpl classification)
+        {
+            final Collection<String> values = classification.getValuesUnresolvedStrings(attribute);
+            if (values.isEmpty())
+            {
+                return matchesOne(null);
+            }
+            for (String value : values)
+            {
+                if (matchesOne(value))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matchesOne(String value)
+        {
+            for (Condition condition : conditions)
+            {
+                if (condition.matches(value))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** references are compared by id, only the category hierarchy needs the resolved categories */
+    private static int getCost(AttributeType type, String operator)
+    {
+        if (type == AttributeType.ALLOCATABLE || type == AttributeType.BOOLEAN)
+        {
+            return 0;
+        }
+        if (type == AttributeType.CATEGORY)
+        {
+            return operator.equals("is") ? 3 : 0;
+        }
+        if (type == AttributeType.STRING)
+        {
+            return 1;
+        }
+        if (type == AttributeType.INT)
+        {
+            return 2;
+        }
+        return 4;
+    }
+
+    private static Condition createCondition(Attribute attribute, String operator, Object ruleValue, EntityResolver resolver)
+    {
+        final AttributeType type = attribute.getType();
+        if (type == AttributeType.CATEGORY || type == AttributeType.ALLOCATABLE)
+        {
+            final Class<? extends Entity> refType = attribute.getRefType();
+            if (ruleValue == null)
+            {
+                // matches if the classification has no value or references an entity that can't be resolved
+                return (value) -> value == null || resolveReference(resolver, value, refType) == null;
+            }
+            final String ruleId = ((Entity) ruleValue).getId();
+            if (operator.equals("="))
+            {
+                return (value) -> ruleId.equals(value);
+            }
+            if (operator.equals("is"))
+            {
+                if (type == AttributeType.ALLOCATABLE)
+                {
+                    return (value) -> ruleId.equals(value);
+                }
+                final Category category = (Category) ruleValue;
+                return (value) ->
+                {
+                    if (value == null)
+                    {
+                        return false;
+                    }
+                    if (ruleId.equals(value))
+                    {
+                        return true;
+                    }
+                    final Category valueCategory = (Category) resolveReference(resolver, value, refType);
+                    return valueCategory != null && category.isAncestorOf(valueCategory);
+                };
+            }
+            return (value) -> false;
+        }
+        else if (type == AttributeType.STRING)
+        {
+            if (ruleValue == null)
+            {
+                return (value) -> value == null;
+            }
+            if (operator.equals("is") || operator.equals("="))
+            {
+                return (value) -> ruleValue.equals(value);
+            }
+            final String string = ((String) ruleValue).toLowerCase().trim();
+            if (operator.equals("contains"))
+            {
+                return (value) -> value == null ? string.length() == 0 : value.toLowerCase().contains(string);
+            }
+            else if (operator.equals("starts"))
+            {
+                return (value) -> value == null ? string.length() == 0 : value.toLowerCase().startsWith(string);
+            }
+            else if (operator.equals("ends"))
+            {
+                return (value) -> value == null ? string.length() == 0 : value.toLowerCase().endsWith(string);
+            }
+            return (value) -> value == null && string.length() == 0;
+        }
+        else if (type == AttributeType.BOOLEAN)
+        {
+            final Boolean ruleBoolean = (Boolean) ruleValue;
+            return (value) ->
+            {
+                final Boolean valueBoolean = parseBoolean(value);
+                if (ruleBoolean == null)
+                {
+                    return valueBoolean == null || valueBoolean;
+                }
+                if (valueBoolean == null)
+                {
+                    return !ruleBoolean;
+                }
+                return ruleBoolean.equals(valueBoolean);
+            };
+        }
+        else if (type == AttributeType.INT || type == AttributeType.DATE)
+        {
+            if (ruleValue == null)
+            {
+                if (operator.equals("<>"))
+                {
+                    return (value) -> parseLong(type, value) != null;
+                }
+                else if (operator.equals("="))
+                {
+                    return (value) -> parseLong(type, value) == null;
+                }
+                return (value) -> false;
+            }
+            final long ruleLong = type == AttributeType.INT ? (Long) ruleValue : ((Date) ruleValue).getTime();
+            return (value) ->
+            {
+                final Long valueLong = parseLong(type, value);
+                return valueLong != null && ClassificationFilterRuleImpl.compare(operator, valueLong, ruleLong);
+            };
+        }
+        return (value) -> false;
+    }
+
+    private static Entity resolveReference(EntityResolver resolver, String id, Class<? extends Entity> refType)
+    {
+        Entity resolved = resolver.tryResolve(id, refType);
+        if (resolved == null)
+        {
+            resolved = ReferenceHandler.tryResolveMissingAllocatable(resolver, id, refType);
+        }
+        return resolved;
+    }
+
+    /** same conversion as {@link AttributeImpl#parseAttributeValueWithoutRef(Attribute, String)}*/
+    private static Boolean parseBoolean(String value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        final String trim = value.trim();
+        if (trim.length() == 0)
+        {
+            return null;
+        }
+        return trim.equalsIgnoreCase("true") || trim.equals("1") ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    /** same conversion as {@link AttributeImpl#parseAttributeValueWithoutRef(Attribute, String)}, dates are returned as milliseconds*/
+    private static Long parseLong(AttributeType type, String value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        final String trim = value.trim();
+        if (trim.length() == 0)
+        {
+            return null;
+        }
+        if (type == AttributeType.INT)
+        {
+            try
+            {
+                return Long.parseLong(trim);
+            }
+            catch (NumberFormatException ex)
+            {
+                throw new IllegalStateException(ex.getMessage(), ex);
+            }
+        }
+        try
+        {
+            return new SerializableDateTimeFormat().parseDate(trim, false).getTime();
+        }
+        catch (ParseDateException ex)
+        {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+}
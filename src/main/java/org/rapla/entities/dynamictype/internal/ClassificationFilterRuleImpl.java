@@ -190,7 +190,7 @@ public final class ClassificationFilterRuleImpl extends ReferenceHandler
         return result;
     }
     
-	private Object getValue(Attribute attribute, int index) 
+	Object getValue(Attribute attribute, int index) 
 	{
 		 AttributeType type = attribute.getType();
         final String key = String.valueOf(index);
@@ -374,36 +374,43 @@ public final class ClassificationFilterRuleImpl extends ReferenceHandler
             
             long long1 = type == AttributeType.INT ? ((Long) value).longValue()     : ((Date) value).getTime();
             long long2 = type == AttributeType.INT ? ((Long) ruleValue).longValue() : ((Date) ruleValue).getTime();
-
-            if (operator.equals("<")) 
-            {
-                return long1 < long2;
-            }
-            else if (operator.equals("=")) 
-            {
-                return long1 ==  long2;
-            }
-            else if (operator.equals(">")) 
-            {
-                return long1 >  long2;
-            }
-            else if (operator.equals(">=")) 
-            {
-                return long1 >=  long2;
-            }
-            else if (operator.equals("<=")) 
-            {
-                return long1 >=  long2;
-            }
-            else if (operator.equals("<>")) 
-            {
-                return long1 !=  long2;
-            }
+            return compare(operator, long1, long2);
         }
         
         return false;
     }
 
+
+    /** compares a number or date value with the rule value */
+    static boolean compare(String operator, long long1, long long2)
+    {
+        if (operator.equals("<")) 
+        {
+            return long1 < long2;
+        }
+        else if (operator.equals("=")) 
+        {
+            return long1 ==  long2;
+        }
+        else if (operator.equals(">")) 
+        {
+            return long1 >  long2;
+        }
+        else if (operator.equals(">=")) 
+        {
+            return long1 >=  long2;
+        }
+        else if (operator.equals("<=")) 
+        {
+            return long1 >=  long2;
+        }
+        else if (operator.equals("<>")) 
+        {
+            return long1 !=  long2;
+        }
+        return false;
+    }
+
    
 	public String toString()
     {
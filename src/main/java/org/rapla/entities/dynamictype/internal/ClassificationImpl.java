@@ -157,7 +157,7 @@ public class ClassificationImpl implements Classification,DynamicTypeDependant,
 
 
 
-	private String getParentId() {
+	String getParentId() {
 		if  (typeId != null)
 			return typeId;
 		if (type == null)
@@ -19,6 +19,7 @@ import org.rapla.entities.EntityNotFoundException;
 import org.rapla.entities.IllegalAnnotationException;
 import org.rapla.entities.MultiLanguageName;
 import org.rapla.entities.RaplaObject;
+import org.rapla.entities.storage.CategoryHierarchy;
 import org.rapla.entities.storage.EntityResolver;
 import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.entities.storage.internal.SimpleEntity;
@@ -194,6 +195,15 @@ final public class CategoryImpl extends SimpleEntity implements Category, Modifi
 
     /** returns true if this is a direct or transitive parent of the passed category*/
     public boolean isAncestorOf(Category category) {
+        // the stored categories are numbered by the storage, so the check doesn't need to walk the parents
+        if (resolver instanceof CategoryHierarchy)
+        {
+            final Boolean result = ((CategoryHierarchy) resolver).isAncestorOf(this, category);
+            if (result != null)
+            {
+                return result;
+            }
+        }
         return isAncestorOf( defaultResolver,this,category, 0);
     }
 
@@ -0,0 +1,22 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.entities.storage;
+
+import org.rapla.entities.Category;
+
+/** A resolver that indexes the stored category tree, so that ancestor checks don't need to walk the parent chain. */
+public interface CategoryHierarchy
+{
+    /** @return if ancestor is a direct or transitive parent of category or null if one of the categories is not part of the indexed tree*/
+    Boolean isAncestorOf(Category ancestor, Category category);
+}
@@ -33,7 +33,12 @@ import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.framework.RaplaException;
 import org.rapla.scheduler.CommandScheduler;
 import org.rapla.scheduler.Promise;
+import org.rapla.storage.ConflictPage;
+import org.rapla.storage.ConflictQuery;
+import org.rapla.storage.FreeBusyMatrix;
 import org.rapla.storage.PermissionController;
+import org.rapla.storage.SearchQuery;
+import org.rapla.storage.SearchResult;
 import org.rapla.storage.StorageOperator;
 
 import java.util.Collection;
@@ -111,9 +116,16 @@ public interface RaplaFacade
     /** returns all allocatables from the set of passed allocatables, that are already allocated by different parallel reservations at the time-slices, that are described by the appointment */
     Promise<Map<ReferenceInfo<Allocatable>, Collection<Appointment>>> getAllocatableBindings(Collection<Allocatable> allocatables, Collection<Appointment> forAppointment);
 
+    /** returns the free and busy slots of the allocatables between start and end. Reservations in the ignoreList are not counted as busy. */
+    Promise<FreeBusyMatrix> getFreeBusy(Collection<Allocatable> allocatables, Date start, Date end, int slotMinutes, Collection<Reservation> ignoreList);
+
     /** returns all existing conflicts with the reservation */
     Promise<Collection<Conflict>> getConflictsForReservation(Reservation reservation);
 
+    /** returns all existing conflicts with the passed reservations in one request. Conflicts between the passed reservations are not checked.
+     * @see #getConflictsForReservation(Reservation) */
+    Promise<Collection<Conflict>> getConflictsForReservations(Collection<Reservation> reservations);
+
 
     /** returns if the user has the permissions to change/createInfoDialog an
      allocation on the passed appointment. Changes of an
@@ -303,6 +315,12 @@ public interface RaplaFacade
      */
     Promise<Collection<Conflict>> getConflicts();
 
+    /** returns one page of the conflicts matching the query, that are visible for the user. Use the count only mode of the query, if only the number of conflicts is needed */
+    Promise<ConflictPage> queryConflicts(ConflictQuery query);
+
+    /** returns the resources and events that are readable for the user and match the search text, the best matches first*/
+    Promise<SearchResult> search(SearchQuery query);
+
     Promise<Collection<Reservation>> getResourceRequests();
 
     /** returns all available periods */
@@ -57,8 +57,13 @@ import org.rapla.logger.Logger;
 import org.rapla.scheduler.CommandScheduler;
 import org.rapla.scheduler.Promise;
 import org.rapla.scheduler.ResolvedPromise;
+import org.rapla.storage.ConflictPage;
+import org.rapla.storage.ConflictQuery;
+import org.rapla.storage.FreeBusyMatrix;
 import org.rapla.storage.PermissionController;
 import org.rapla.storage.RaplaSecurityException;
+import org.rapla.storage.SearchQuery;
+import org.rapla.storage.SearchResult;
 import org.rapla.storage.StorageOperator;
 
 import javax.inject.Inject;
@@ -91,6 +96,10 @@ import java.util.stream.Stream;
 @Singleton
 @DefaultImplementation(of = RaplaFacade.class, context = InjectionContext.all)
 public class FacadeImpl implements RaplaFacade {
+	/** slot length of the free busy matrix, that is used to filter out free allocatables before the conflict check*/
+	static final int FREE_BUSY_SLOT_MINUTES = 15;
+	/** for fewer allocatables the extra request for the free busy matrix doesn't pay off*/
+	static final int FREE_BUSY_PREFILTER_MIN_ALLOCATABLES = 20;
 	private StorageOperator operator;
 	private final RaplaResources i18n;
 
@@ -494,6 +503,12 @@ public class FacadeImpl implements RaplaFacade {
         return operator.getConflicts(reservation);
     }
 
+    public Promise<Collection<Conflict>> getConflictsForReservations(Collection<Reservation> reservations)
+    {
+        final Collection<Reservation> ignoreList = Collections.emptyList();
+        return operator.getConflictsForReservations(reservations, ignoreList);
+    }
+
 	public Promise<Collection<Conflict>> getConflicts() {
 
 		final User user = null;
@@ -509,6 +524,18 @@ public class FacadeImpl implements RaplaFacade {
 	}
 
 
+	public Promise<ConflictPage> queryConflicts(ConflictQuery query)
+	{
+		final User user = null;
+		return operator.queryConflicts(user, query);
+	}
+
+	public Promise<SearchResult> search(SearchQuery query)
+	{
+		final User user = null;
+		return operator.search(user, query);
+	}
+
 //	public boolean canReadReservationsFromOthers(User user) {
 //		return hasGroupRights(user, Permission.GROUP_CAN_READ_EVENTS_FROM_OTHERS);
 //	}
@@ -579,6 +606,76 @@ public class FacadeImpl implements RaplaFacade {
 				}
 			}
 		}
+		final TimeInterval interval = getFreeBusyInterval(appointments);
+		if (interval == null || allocatables.size() <= FREE_BUSY_PREFILTER_MIN_ALLOCATABLES)
+		{
+			return getAllocatableBindings(allocatables, appointments, ignoreList);
+		}
+		// only allocatables that are busy during one of the appointments need the exact conflict check
+		final Promise<FreeBusyMatrix> freeBusy = operator.getFreeBusy(allocatables, interval.getStart(), interval.getEnd(), FREE_BUSY_SLOT_MINUTES, ignoreList);
+		return freeBusy.thenCompose((matrix) -> {
+			final List<AppointmentBlock> blocks = new ArrayList<>();
+			for (Appointment appointment : appointments)
+			{
+				// exceptions are included so the prefilter never drops a possible conflict
+				appointment.createBlocks(interval.getStart(), interval.getEnd(), blocks, false);
+			}
+			final List<Allocatable> candidates = new ArrayList<>();
+			for (Allocatable allocatable : allocatables)
+			{
+				final ReferenceInfo<Allocatable> ref = allocatable.getReference();
+				for (AppointmentBlock block : blocks)
+				{
+					if (matrix.isBusy(ref, block.getStart(), block.getEnd()))
+					{
+						candidates.add(allocatable);
+						break;
+					}
+				}
+			}
+			if (candidates.isEmpty())
+			{
+				return new ResolvedPromise<>(new HashMap<>());
+			}
+			return getAllocatableBindings(candidates, appointments, ignoreList);
+		});
+	}
+
+	/** @return the interval that covers all appointments or null if one of them repeats forever */
+	private TimeInterval getFreeBusyInterval(Collection<Appointment> appointments)
+	{
+		if (appointments == null || appointments.isEmpty())
+		{
+			return null;
+		}
+		Date start = null;
+		Date end = null;
+		for (Appointment appointment : appointments)
+		{
+			final Date maxEnd = appointment.getMaxEnd();
+			if (maxEnd == null)
+			{
+				return null;
+			}
+			if (start == null || appointment.getStart().before(start))
+			{
+				start = appointment.getStart();
+			}
+			if (end == null || maxEnd.after(end))
+			{
+				end = maxEnd;
+			}
+		}
+		final long slotLength = FREE_BUSY_SLOT_MINUTES * DateTools.MILLISECONDS_PER_MINUTE;
+		if (!end.after(start) || (end.getTime() - start.getTime()) / slotLength >= FreeBusyMatrix.MAX_SLOT_COUNT)
+		{
+			return null;
+		}
+		return new TimeInterval(start, end);
+	}
+
+	private Promise<Map<ReferenceInfo<Allocatable>,Collection<Appointment>>> getAllocatableBindings(Collection<Allocatable> allocatables, Collection<Appointment> appointments, Collection<Reservation> ignoreList)
+	{
 		Promise<Map<ReferenceInfo<Allocatable>, Collection<Appointment>>> result;
 		Promise<Map<ReferenceInfo<Allocatable>, Map<Appointment, Collection<Appointment>>>> allAllocatableBindings = operator.getAllAllocatableBindings(allocatables, appointments, ignoreList);
 		result = allAllocatableBindings.thenApply((allocatableBindings) -> {
@@ -601,6 +698,11 @@ public class FacadeImpl implements RaplaFacade {
 	}
 	
 	
+	public Promise<FreeBusyMatrix> getFreeBusy(Collection<Allocatable> allocatables, Date start, Date end, int slotMinutes, Collection<Reservation> ignoreList)
+	{
+		return operator.getFreeBusy(allocatables, start, end, slotMinutes, ignoreList);
+	}
+
 	public Promise<Date> getNextAllocatableDate(Collection<Allocatable> allocatables,	Appointment appointment, CalendarOptions options)  {
 		int worktimeStartMinutes = options.getWorktimeStartMinutes();
 		int worktimeEndMinutes = options.getWorktimeEndMinutes();
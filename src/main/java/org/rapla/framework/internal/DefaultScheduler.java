@@ -9,9 +9,12 @@ import org.rapla.inject.InjectionContext;
 import org.rapla.logger.Logger;
 import org.rapla.logger.RaplaBootstrapLogger;
 import org.rapla.scheduler.CommandScheduler;
+import org.rapla.scheduler.CompletablePromise;
 import org.rapla.scheduler.Observable;
+import org.rapla.scheduler.Promise;
 import org.rapla.scheduler.sync.UtilConcurrentCommandScheduler;
 import org.rapla.server.TimeZoneConverter;
+import org.rapla.server.internal.ServerContainerContext;
 import org.rapla.server.internal.TimeZoneConverterImpl;
 import org.reactivestreams.Publisher;
 
@@ -20,19 +23,45 @@ import javax.inject.Singleton;
 import java.time.*;
 import java.time.temporal.ChronoUnit;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 import static java.time.temporal.ChronoUnit.MILLIS;
 
+/**
+ * The scheduler of the server. Promises created with {@link #supply(Callable)} and {@link #run(Action)} are executed in the request pool,
+ * periodic tasks created with {@link #schedule(Action, long, long)} in the background pool. Exports can use the export pool
+ * with {@link #run(String, Action)}. Each pool has its own size and a bounded queue, so a slow background job can't starve request handling.
+ * The continuations of the promises and the timers run in the executor of the {@link UtilConcurrentCommandScheduler}.
+ */
 @DefaultImplementation(of=CommandScheduler.class,context = {InjectionContext.server})
 @Singleton
 public class DefaultScheduler extends UtilConcurrentCommandScheduler implements Disposable
 {
+	public static final String REQUEST_POOL = "request";
+	public static final String BACKGROUND_POOL = "background";
+	public static final String EXPORT_POOL = "export";
+	public static final String[] POOL_NAMES = { REQUEST_POOL, BACKGROUND_POOL, EXPORT_POOL };
+	/** time in ms after which a job that was rejected by the full background pool is tried again, if it has no period */
+	static final long BACKGROUND_RETRY_DELAY = 1000;
+
 	final private TimeZoneConverter converter;
+	final private Map<String, ExecutorPool> pools = new LinkedHashMap<>();
 
 	@Inject
+	public DefaultScheduler(Logger logger, TimeZoneConverter converter, ServerContainerContext containerContext) {
+		this(logger, converter, 6, containerContext.getExecutorPoolConfigs());
+	}
+
 	public DefaultScheduler(Logger logger, TimeZoneConverter converter) {
 	    this(logger, converter,6);
 	}
@@ -42,15 +71,243 @@ public class DefaultScheduler extends UtilConcurrentCommandScheduler implements
 	}
 
 	public DefaultScheduler(Logger logger, TimeZoneConverter converter,int poolSize) {
+		this(logger, converter, poolSize, Collections.emptyMap());
+	}
+
+	/**
+	 * @param poolSize the number of threads for the timers and the continuations of the promises
+	 * @param poolConfigs the configurations of the named pools, the default configuration is used for missing pools
+	 */
+	public DefaultScheduler(Logger logger, TimeZoneConverter converter,int poolSize, Map<String, ExecutorPool.Config> poolConfigs) {
 	    super(logger,poolSize);
 	    this.converter = converter;
+		for (String name : POOL_NAMES)
+		{
+			final ExecutorPool.Config config = poolConfigs.get(name);
+			final ExecutorPool pool = new ExecutorPool(logger, name, config != null ? config : getDefaultConfig(name));
+			pools.put(name, pool);
+			if (config != null)
+			{
+				logger.info("Using " + name + " pool with " + pool.getConfig());
+			}
+		}
+	}
+
+	public static ExecutorPool.Config getDefaultConfig(String name)
+	{
+		switch (name)
+		{
+			case REQUEST_POOL:
+				// a full request pool rejects the promise, the work never runs on the thread of the caller, e.g. the timer or a continuation
+				return new ExecutorPool.Config(6, 1000, ExecutorPool.Rejection.abort, false);
+			case BACKGROUND_POOL:
+				// a full background pool rejects the job, so it is retried later instead of running on the timer thread
+				return new ExecutorPool.Config(2, 100, ExecutorPool.Rejection.abort, false);
+			case EXPORT_POOL:
+				return new ExecutorPool.Config(1, 10, ExecutorPool.Rejection.abort, false);
+			default:
+				throw new IllegalArgumentException("Unknown pool " + name);
+		}
 	}
-	
+
 	@Override public void dispose()
 	{
+		// the pools complete the promises of their dropped tasks, so they are shut down while the continuations can still run
+		for (ExecutorPool pool : pools.values())
+		{
+			pool.shutdown();
+		}
+		// cancel drops the waiting continuations, so we wait until the continuations of the dropped tasks are started
+		final CountDownLatch continuationsStarted = new CountDownLatch(1);
+		try
+		{
+			execute(continuationsStarted::countDown);
+			continuationsStarted.await(1, TimeUnit.SECONDS);
+		}
+		catch (RejectedExecutionException ex)
+		{
+			// already cancelled
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
 		cancel();
 	}
 
+	public ExecutorPool getPool(String name)
+	{
+		final ExecutorPool pool = pools.get(name);
+		if (pool == null)
+		{
+			throw new IllegalArgumentException("Unknown pool " + name);
+		}
+		return pool;
+	}
+
+	public Collection<ExecutorPool> getPools()
+	{
+		return Collections.unmodifiableCollection(pools.values());
+	}
+
+	@Override
+	public <T> Promise<T> supply(Callable<T> supplier)
+	{
+		return supply(REQUEST_POOL, supplier);
+	}
+
+	@Override
+	public Promise<Void> run(Action action)
+	{
+		return run(REQUEST_POOL, action);
+	}
+
+	public <T> Promise<T> supply(String poolName, Callable<T> supplier)
+	{
+		Objects.requireNonNull(supplier);
+		final CompletablePromise<T> promise = createCompletable();
+		submit(poolName, promise, () -> {
+			final T result;
+			try
+			{
+				result = supplier.call();
+			}
+			catch (Exception ex)
+			{
+				promise.completeExceptionally(ex);
+				return;
+			}
+			promise.complete(result);
+		});
+		return promise;
+	}
+
+	public Promise<Void> run(String poolName, Action action)
+	{
+		Objects.requireNonNull(action);
+		final CompletablePromise<Void> promise = createCompletable();
+		submit(poolName, promise, () -> {
+			try
+			{
+				action.run();
+			}
+			catch (Throwable ex)
+			{
+				promise.completeExceptionally(ex);
+				return;
+			}
+			promise.complete(null);
+		});
+		return promise;
+	}
+
+	private void submit(String poolName, CompletablePromise<?> promise, Runnable task)
+	{
+		try
+		{
+			getPool(poolName).execute(new PromiseTask(promise, task));
+		}
+		catch (RejectedExecutionException ex)
+		{
+			promise.completeExceptionally(ex);
+		}
+	}
+
+	/** completes the promise exceptionally if the task is dropped from the queue, so the caller doesn't wait forever*/
+	private static final class PromiseTask implements ExecutorPool.DroppableTask
+	{
+		private final CompletablePromise<?> promise;
+		private final Runnable task;
+
+		private PromiseTask(CompletablePromise<?> promise, Runnable task)
+		{
+			this.promise = promise;
+			this.task = task;
+		}
+
+		@Override
+		public void run()
+		{
+			task.run();
+		}
+
+		@Override
+		public void dropped(RejectedExecutionException ex)
+		{
+			promise.completeExceptionally(ex);
+		}
+	}
+
+	/** executes the action once after the delay in the background pool*/
+	@Override
+	public io.reactivex.rxjava3.disposables.Disposable delay(Action action, long delay)
+	{
+		return schedule(action, delay, -1);
+	}
+
+	/**
+	 * executes the action after the delay in the background pool and repeats it after each run with the given period.
+	 * An exception in the action is logged and does not stop the repetition.
+	 * @param period the time between the end of a run and the start of the next one, a negative period executes the action only once
+	 */
+	@Override
+	public io.reactivex.rxjava3.disposables.Disposable schedule(Action action, long delay, long period)
+	{
+		final io.reactivex.rxjava3.disposables.Disposable disposable = io.reactivex.rxjava3.disposables.Disposable.empty();
+		scheduleInBackground(action, delay, period, disposable);
+		return disposable;
+	}
+
+	private void scheduleInBackground(Action action, long delay, long period, io.reactivex.rxjava3.disposables.Disposable disposable)
+	{
+		final ExecutorPool pool = getPool(BACKGROUND_POOL);
+		final Runnable task = () -> {
+			if (disposable.isDisposed())
+			{
+				return;
+			}
+			try
+			{
+				action.run();
+			}
+			catch (Throwable ex)
+			{
+				logger.error(ex.getMessage(), ex);
+			}
+			if (period >= 0 && !disposable.isDisposed() && !pool.isShutdown())
+			{
+				scheduleInBackground(action, period, period, disposable);
+			}
+		};
+		try
+		{
+			delay(delay).thenRun(() -> {
+				if (disposable.isDisposed() || pool.isShutdown())
+				{
+					return;
+				}
+				try
+				{
+					pool.execute(task);
+				}
+				catch (RejectedExecutionException ex)
+				{
+					if (pool.isShutdown())
+					{
+						return;
+					}
+					final long retryDelay = period > 0 ? period : BACKGROUND_RETRY_DELAY;
+					logger.warn("Background pool is full. Retrying " + action + " after " + retryDelay + "ms");
+					scheduleInBackground(action, retryDelay, period, disposable);
+				}
+			});
+		}
+		catch (RejectedExecutionException ex)
+		{
+			// scheduler is already disposed
+			logger.debug("Task not scheduled because scheduler is shutdown " + action);
+		}
+	}
 
 	public  io.reactivex.rxjava3.disposables.Disposable scheduleAtGivenTime(Action task, int hour,int minute)
 	{
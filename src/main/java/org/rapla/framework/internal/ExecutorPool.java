@@ -0,0 +1,397 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.framework.internal;
+
+import org.rapla.logger.Logger;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A named thread pool with a fixed number of threads and a bounded queue.
+ * If the queue is full the {@link Rejection} policy of the pool decides what happens with the task.
+ * <p>
+ * With the virtual option each task gets its own virtual thread, if the runtime supports them (Java 21 or later). Blocking tasks then
+ * don't hold a pool thread, so instead of size threads with a queue, up to size + queueSize tasks run at the same time. The tasks
+ * above that limit are handled by the rejection policy. There is no queue, so discardOldest rejects the new task like abort.
+ * </p>
+ * A {@link DroppableTask} is informed if it is dropped without being executed, by the discardOldest policy or by {@link #shutdown()}.
+ */
+public class ExecutorPool implements Executor
+{
+    public enum Rejection
+    {
+        /** the task is rejected with a RejectedExecutionException*/
+        abort,
+        /** the task is executed in the thread that submits it, this slows down the producer*/
+        callerRuns,
+        /** the oldest waiting task is dropped and the new task is queued*/
+        discardOldest
+    }
+
+    /** a task that must know if it is dropped from the queue without being executed, e.g. to complete its promise*/
+    public interface DroppableTask extends Runnable
+    {
+        void dropped(RejectedExecutionException ex);
+    }
+
+    public static final class Config
+    {
+        private final int size;
+        private final int queueSize;
+        private final Rejection rejection;
+        private final boolean virtual;
+
+        public Config(int size, int queueSize, Rejection rejection, boolean virtual)
+        {
+            if (size < 1)
+            {
+                throw new IllegalArgumentException("Pool size must be at least 1 but was " + size);
+            }
+            if (queueSize < 1)
+            {
+                throw new IllegalArgumentException("Queue size must be at least 1 but was " + queueSize);
+            }
+            this.size = size;
+            this.queueSize = queueSize;
+            this.rejection = rejection != null ? rejection : Rejection.callerRuns;
+            this.virtual = virtual;
+        }
+
+        public int getSize()
+        {
+            return size;
+        }
+
+        public int getQueueSize()
+        {
+            return queueSize;
+        }
+
+        public Rejection getRejection()
+        {
+            return rejection;
+        }
+
+        public boolean isVirtual()
+        {
+            return virtual;
+        }
+
+        public Config withSize(int size)
+        {
+            return new Config(size, queueSize, rejection, virtual);
+        }
+
+        public Config withQueueSize(int queueSize)
+        {
+            return new Config(size, queueSize, rejection, virtual);
+        }
+
+        public Config withRejection(Rejection rejection)
+        {
+            return new Config(size, queueSize, rejection, virtual);
+        }
+
+        public Config withVirtual(boolean virtual)
+        {
+            return new Config(size, queueSize, rejection, virtual);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "size=" + size + " queue=" + queueSize + " rejection=" + rejection + (virtual ? " virtual" : "");
+        }
+    }
+
+    private final String name;
+    private final Config config;
+    /** the platform thread pool, null if the pool uses virtual threads*/
+    private final ThreadPoolExecutor executor;
+    private final VirtualThreadExecutor virtualExecutor;
+    private final LongAdder rejected = new LongAdder();
+
+    public ExecutorPool(Logger logger, String name, Config config)
+    {
+        this(name, config, config.isVirtual() ? createVirtualThreadFactory(logger, name) : null);
+    }
+
+    /** @param taskThreadFactory if not null a new thread of the factory is started for each task, otherwise the pool uses a fixed number of platform threads*/
+    ExecutorPool(String name, Config config, ThreadFactory taskThreadFactory)
+    {
+        this.name = name;
+        this.config = config;
+        if (taskThreadFactory != null)
+        {
+            executor = null;
+            virtualExecutor = new VirtualThreadExecutor(taskThreadFactory, config.getSize() + config.getQueueSize());
+        }
+        else
+        {
+            virtualExecutor = null;
+            executor = new ThreadPoolExecutor(config.getSize(), config.getSize(), 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(config.getQueueSize()),
+                    createThreadFactory("rapla-" + name + "-"), createRejectionHandler(config.getRejection()));
+            // idle threads of a pool that is rarely used, e.g. the export pool, are released
+            executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    @Override
+    public void execute(Runnable command)
+    {
+        if (virtualExecutor == null)
+        {
+            executor.execute(command);
+            return;
+        }
+        if (virtualExecutor.isShutdown())
+        {
+            throw new RejectedExecutionException("Pool " + name + " is shut down");
+        }
+        if (virtualExecutor.tryExecute(command))
+        {
+            return;
+        }
+        rejected.increment();
+        if (config.getRejection() == Rejection.callerRuns)
+        {
+            command.run();
+            return;
+        }
+        throw new RejectedExecutionException("Pool " + name + " has " + virtualExecutor.maxRunning + " running tasks");
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public Config getConfig()
+    {
+        return config;
+    }
+
+    /** @return true if the pool runs its tasks in virtual threads*/
+    public boolean isVirtualThreads()
+    {
+        return virtualExecutor != null;
+    }
+
+    /** @return the number of tasks waiting in the queue, always 0 for virtual threads*/
+    public int getQueueDepth()
+    {
+        return virtualExecutor != null ? 0 : executor.getQueue().size();
+    }
+
+    /** @return the number of threads that are executing a task*/
+    public int getActiveCount()
+    {
+        return virtualExecutor != null ? virtualExecutor.running.size() : executor.getActiveCount();
+    }
+
+    public int getPoolSize()
+    {
+        return virtualExecutor != null ? virtualExecutor.running.size() : executor.getPoolSize();
+    }
+
+    public int getLargestPoolSize()
+    {
+        return virtualExecutor != null ? virtualExecutor.largest.get() : executor.getLargestPoolSize();
+    }
+
+    public long getCompletedTaskCount()
+    {
+        return virtualExecutor != null ? virtualExecutor.completed.sum() : executor.getCompletedTaskCount();
+    }
+
+    /** @return the number of tasks that the rejection policy had to handle because the queue was full*/
+    public long getRejectedCount()
+    {
+        return rejected.sum();
+    }
+
+    public boolean isShutdown()
+    {
+        return virtualExecutor != null ? virtualExecutor.isShutdown() : executor.isShutdown();
+    }
+
+    /** interrupts the running tasks and drops the waiting ones*/
+    public void shutdown()
+    {
+        if (virtualExecutor != null)
+        {
+            virtualExecutor.shutdown();
+            return;
+        }
+        for (Runnable task : executor.shutdownNow())
+        {
+            drop(task, new RejectedExecutionException("Pool " + name + " is shut down"));
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return name + " [" + config + "] active=" + getActiveCount() + " queued=" + getQueueDepth() + " completed=" + getCompletedTaskCount() + " rejected="
+                + getRejectedCount();
+    }
+
+    private RejectedExecutionHandler createRejectionHandler(Rejection rejection)
+    {
+        final RejectedExecutionHandler handler;
+        switch (rejection)
+        {
+            case abort:
+                handler = new ThreadPoolExecutor.AbortPolicy();
+                break;
+            case discardOldest:
+                handler = (runnable, threadPoolExecutor) -> {
+                    final Runnable oldest = threadPoolExecutor.getQueue().poll();
+                    if (oldest != null)
+                    {
+                        drop(oldest, new RejectedExecutionException("Queue of pool " + name + " is full"));
+                    }
+                    threadPoolExecutor.execute(runnable);
+                };
+                break;
+            default:
+                handler = new ThreadPoolExecutor.CallerRunsPolicy();
+        }
+        return (runnable, threadPoolExecutor) -> {
+            // the policies of the ThreadPoolExecutor silently drop tasks after shutdown
+            if (threadPoolExecutor.isShutdown())
+            {
+                throw new RejectedExecutionException("Pool " + name + " is shut down");
+            }
+            rejected.increment();
+            handler.rejectedExecution(runnable, threadPoolExecutor);
+        };
+    }
+
+    /** starts a virtual thread for each task and limits the number of running tasks with a semaphore*/
+    private static final class VirtualThreadExecutor
+    {
+        private final ThreadFactory threadFactory;
+        private final int maxRunning;
+        private final Semaphore permits;
+        private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger largest = new AtomicInteger();
+        private final LongAdder completed = new LongAdder();
+        private volatile boolean shutdown;
+
+        private VirtualThreadExecutor(ThreadFactory threadFactory, int maxRunning)
+        {
+            this.threadFactory = threadFactory;
+            this.maxRunning = maxRunning;
+            this.permits = new Semaphore(maxRunning);
+        }
+
+        /** @return false if the maximum number of tasks is already running*/
+        private boolean tryExecute(Runnable command)
+        {
+            if (!permits.tryAcquire())
+            {
+                return false;
+            }
+            Thread thread = null;
+            try
+            {
+                thread = threadFactory.newThread(() -> {
+                    try
+                    {
+                        command.run();
+                    }
+                    finally
+                    {
+                        running.remove(Thread.currentThread());
+                        completed.increment();
+                        permits.release();
+                    }
+                });
+                running.add(thread);
+                largest.accumulateAndGet(running.size(), Math::max);
+                thread.start();
+            }
+            catch (RuntimeException | Error ex)
+            {
+                if (thread != null)
+                {
+                    running.remove(thread);
+                }
+                permits.release();
+                throw ex;
+            }
+            return true;
+        }
+
+        private boolean isShutdown()
+        {
+            return shutdown;
+        }
+
+        private void shutdown()
+        {
+            shutdown = true;
+            for (Thread thread : running)
+            {
+                thread.interrupt();
+            }
+        }
+    }
+
+    private static void drop(Runnable task, RejectedExecutionException ex)
+    {
+        if (task instanceof DroppableTask)
+        {
+            ((DroppableTask) task).dropped(ex);
+        }
+    }
+
+    private static ThreadFactory createThreadFactory(String prefix)
+    {
+        final AtomicInteger count = new AtomicInteger();
+        return (runnable) -> {
+            final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /** uses reflection because the code is compiled for java 8. Returns null if the runtime doesn't support virtual threads*/
+    private static ThreadFactory createVirtualThreadFactory(Logger logger, String name)
+    {
+        try
+        {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Object namedBuilder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "rapla-" + name + "-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(namedBuilder);
+        }
+        catch (ReflectiveOperationException ex)
+        {
+            logger.warn("Virtual threads are not supported by java " + System.getProperty("java.version") + ". Using platform threads for the " + name + " pool.");
+            return null;
+        }
+    }
+}
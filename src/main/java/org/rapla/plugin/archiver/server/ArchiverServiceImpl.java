@@ -1,5 +1,6 @@
 package org.rapla.plugin.archiver.server;
 
+import io.reactivex.rxjava3.functions.Action;
 import org.rapla.components.util.DateTools;
 import org.rapla.entities.User;
 import org.rapla.entities.domain.Appointment;
@@ -7,6 +8,7 @@ import org.rapla.entities.domain.Reservation;
 import org.rapla.facade.RaplaComponent;
 import org.rapla.facade.RaplaFacade;
 import org.rapla.framework.RaplaException;
+import org.rapla.framework.internal.DefaultScheduler;
 import org.rapla.inject.DefaultImplementation;
 import org.rapla.inject.InjectionContext;
 import org.rapla.logger.Logger;
@@ -81,7 +83,7 @@ public class ArchiverServiceImpl  implements ArchiverService
         {
             return new ResolvedPromise<>(e);
         }
-        return scheduler.run(() ->{
+        return runExport(() ->{
             if (!isExportEnabled())
             {
                 throw new RaplaException("Export not enabled");
@@ -99,7 +101,7 @@ public class ArchiverServiceImpl  implements ArchiverService
         {
             return new ResolvedPromise<>(e);
         }
-        return scheduler.run( ()-> {
+        return runExport( ()-> {
             if (!isExportEnabled())
             {
                 throw new RaplaException("Export not enabled");
@@ -109,6 +111,16 @@ public class ArchiverServiceImpl  implements ArchiverService
         });
 	}
 
+    /** exports and imports run in the export pool of the server scheduler, so they don't block request handling*/
+    private Promise<Void> runExport(Action action)
+    {
+        if (scheduler instanceof DefaultScheduler)
+        {
+            return ((DefaultScheduler) scheduler).run(DefaultScheduler.EXPORT_POOL, action);
+        }
+        return scheduler.run(action);
+    }
+
 	public Promise<Void> delete(Integer removeOlderInDays)  {
         try
         {
@@ -15,6 +15,8 @@ package org.rapla.server;
 import org.jboss.resteasy.plugins.server.servlet.HttpServletDispatcher;
 import org.rapla.components.util.IOUtil;
 import org.rapla.framework.RaplaException;
+import org.rapla.framework.internal.DefaultScheduler;
+import org.rapla.framework.internal.ExecutorPool;
 import org.rapla.inject.Injector;
 import org.rapla.logger.Logger;
 import org.rapla.logger.RaplaBootstrapLogger;
@@ -29,6 +31,9 @@ import org.rapla.storage.impl.RaplaLock;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -43,6 +48,7 @@ import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MainServlet extends HttpServlet
 {
@@ -53,6 +59,9 @@ public class MainServlet extends HttpServlet
     private HttpServletDispatcher dispatcher;
     private StandaloneStarter standaloneStarter = null;
     String startupMode;
+    /** maximum time in milliseconds a rest call that returns a promise may take, before it is answered with 503*/
+    static final long DEFAULT_ASYNC_TIMEOUT = 300000;
+    long asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
     public MainServlet()
     {
     }
@@ -141,6 +150,93 @@ public class MainServlet extends HttpServlet
                 backendContext.setPatchScript( patchScript );
             }
         }
+        {
+            String parallelism = jndi.lookupEnvString("rapla_conflict_parallelism", true);
+            if ( parallelism != null && !parallelism.trim().isEmpty())
+            {
+                try
+                {
+                    backendContext.setConflictInitParallelism(Integer.parseInt(parallelism.trim()));
+                }
+                catch (NumberFormatException ex)
+                {
+                    logger.warn("Ignoring rapla_conflict_parallelism " + parallelism + ". Not a number.");
+                }
+            }
+        }
+        {
+            String conflictSnapshot = jndi.lookupEnvString("rapla_conflict_snapshot", true);
+            if ( conflictSnapshot != null)
+            {
+                backendContext.setConflictSnapshot(Boolean.parseBoolean(conflictSnapshot.trim()));
+            }
+        }
+        {
+            String horizon = jndi.lookupEnvString("rapla_occurrence_horizon_weeks", true);
+            String cacheSize = jndi.lookupEnvString("rapla_occurrence_cache_size", true);
+            try
+            {
+                if ( horizon != null && !horizon.trim().isEmpty())
+                {
+                    final int weeks = Integer.parseInt(horizon.trim());
+                    if (weeks <= 0)
+                    {
+                        throw new IllegalArgumentException("rapla_occurrence_horizon_weeks must be positive");
+                    }
+                    backendContext.setOccurrenceHorizonWeeks(weeks);
+                }
+                if ( cacheSize != null && !cacheSize.trim().isEmpty())
+                {
+                    final long size = Long.parseLong(cacheSize.trim());
+                    if (size < 0)
+                    {
+                        throw new IllegalArgumentException("rapla_occurrence_cache_size must not be negative");
+                    }
+                    backendContext.setOccurrenceCacheSize(size);
+                }
+            }
+            catch (IllegalArgumentException ex)
+            {
+                logger.warn("Ignoring configuration of the occurrence cache. " + ex.getMessage());
+            }
+        }
+        for (String poolName : DefaultScheduler.POOL_NAMES)
+        {
+            final String prefix = "rapla_pool_" + poolName + "_";
+            String size = jndi.lookupEnvString(prefix + "size", false);
+            String queue = jndi.lookupEnvString(prefix + "queue", false);
+            String rejection = jndi.lookupEnvString(prefix + "rejection", false);
+            String virtual = jndi.lookupEnvString(prefix + "virtual", false);
+            if (size == null && queue == null && rejection == null && virtual == null)
+            {
+                continue;
+            }
+            ExecutorPool.Config config = DefaultScheduler.getDefaultConfig(poolName);
+            try
+            {
+                if (size != null && !size.trim().isEmpty())
+                {
+                    config = config.withSize(Integer.parseInt(size.trim()));
+                }
+                if (queue != null && !queue.trim().isEmpty())
+                {
+                    config = config.withQueueSize(Integer.parseInt(queue.trim()));
+                }
+                if (rejection != null && !rejection.trim().isEmpty())
+                {
+                    config = config.withRejection(ExecutorPool.Rejection.valueOf(rejection.trim()));
+                }
+                if (virtual != null)
+                {
+                    config = config.withVirtual(Boolean.parseBoolean(virtual.trim()));
+                }
+                backendContext.setExecutorPoolConfig(poolName, config);
+            }
+            catch (IllegalArgumentException ex)
+            {
+                logger.warn("Ignoring configuration of the " + poolName + " pool. " + ex.getMessage());
+            }
+        }
         env_raplamail = jndi.lookupResource("mail/Session", false);
         if (env_raplamail != null)
         {
@@ -290,6 +386,18 @@ public class MainServlet extends HttpServlet
         if (jndi.hasContext())
         {
             startupMode = jndi.lookupEnvString("rapla_startup_mode", false);
+            String timeout = jndi.lookupEnvString("rapla_async_timeout", false);
+            if (timeout != null && !timeout.trim().isEmpty())
+            {
+                try
+                {
+                    asyncTimeout = Long.parseLong(timeout.trim());
+                }
+                catch (NumberFormatException ex)
+                {
+                    logger.warn("Ignoring rapla_async_timeout " + timeout + ". Not a number.");
+                }
+            }
         }
         else
         {
@@ -348,6 +456,7 @@ public class MainServlet extends HttpServlet
     public void service(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
     {
         RaplaLock.ReadLock restartLock = null;
+        boolean async = false;
         try
         {
             try
@@ -440,6 +549,68 @@ public class MainServlet extends HttpServlet
                 }
             });
             dispatcher.service(request, response);
+            if (request.isAsyncStarted())
+            {
+                // rest calls that return a promise are suspended and the response is written when the promise completes
+                // a restart must wait until the suspended call is finished, so the restart lock is released when the call completes
+                final AsyncContext asyncContext = request.getAsyncContext();
+                final String requestURI = request.getRequestURI();
+                final RaplaLock.ReadLock asyncRestartLock = restartLock;
+                final AtomicBoolean restartLockReleased = new AtomicBoolean(asyncRestartLock == null);
+                asyncContext.setTimeout(asyncTimeout);
+                asyncContext.addListener(new AsyncListener()
+                {
+                    @Override
+                    public void onComplete(AsyncEvent event)
+                    {
+                        releaseRestartLock();
+                        requestFinished();
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event)
+                    {
+                        logger.warn("Request " + requestURI + " timed out after " + asyncTimeout + "ms");
+                        final AsyncContext context = event.getAsyncContext();
+                        try
+                        {
+                            final HttpServletResponse asyncResponse = (HttpServletResponse) context.getResponse();
+                            // resteasy may already have answered the timeout
+                            if (!asyncResponse.isCommitted())
+                            {
+                                asyncResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Request timed out");
+                            }
+                            context.complete();
+                        }
+                        catch (IOException | IllegalStateException ex)
+                        {
+                            logger.debug("Could not complete timed out request " + requestURI + ": " + ex.getMessage());
+                        }
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event)
+                    {
+                        releaseRestartLock();
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event)
+                    {
+                    }
+
+                    private void releaseRestartLock()
+                    {
+                        // onError is followed by onComplete, but the lock must only be released once
+                        if (restartLockReleased.compareAndSet(false, true))
+                        {
+                            serverStarter.freeRestartLock(asyncRestartLock);
+                        }
+                    }
+                });
+                restartLock = null;
+                async = true;
+            }
         }
         finally
         {
@@ -454,28 +625,36 @@ public class MainServlet extends HttpServlet
             {
                 // Released by the restarter
             }
-            try
-            {
-                ServletOutputStream outputStream = response.getOutputStream();
-                outputStream.close();
-            }
-            catch (Exception ex)
-            {
-
-            }
-            try
+            if (!async)
             {
-                if (standaloneStarter != null)
+                try
+                {
+                    ServletOutputStream outputStream = response.getOutputStream();
+                    outputStream.close();
+                }
+                catch (Exception ex)
                 {
-                    standaloneStarter.requestFinished();
+
                 }
+                requestFinished();
             }
-            catch (Exception ex)
-            {
+        }
 
+    }
+
+    private void requestFinished()
+    {
+        try
+        {
+            if (standaloneStarter != null)
+            {
+                standaloneStarter.requestFinished();
             }
         }
+        catch (Exception ex)
+        {
 
+        }
     }
 
     /**
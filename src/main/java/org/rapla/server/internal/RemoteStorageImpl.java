@@ -20,9 +20,11 @@ import org.rapla.entities.domain.internal.ReservationImpl;
 import org.rapla.entities.dynamictype.Classifiable;
 import org.rapla.entities.dynamictype.ClassificationFilter;
 import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.internal.ClassificationFilterImpl;
 import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
 import org.rapla.entities.storage.EntityReferencer;
 import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.entities.storage.UnresolvableReferenceExcpetion;
 import org.rapla.facade.internal.ConflictImpl;
 import org.rapla.framework.RaplaException;
 import org.rapla.framework.internal.AbstractRaplaLocale;
@@ -37,10 +39,15 @@ import org.rapla.server.AuthenticationStore;
 import org.rapla.server.PrePostDispatchProcessor;
 import org.rapla.server.RemoteSession;
 import org.rapla.storage.CachableStorageOperator;
+import org.rapla.storage.ConflictPage;
+import org.rapla.storage.ConflictQuery;
+import org.rapla.storage.FreeBusyMatrix;
 import org.rapla.storage.PermissionController;
 import org.rapla.storage.PreferencePatch;
 import org.rapla.storage.RaplaNewVersionException;
 import org.rapla.storage.RaplaSecurityException;
+import org.rapla.storage.SearchQuery;
+import org.rapla.storage.SearchResult;
 import org.rapla.storage.StorageOperator;
 import org.rapla.storage.UpdateEvent;
 import org.rapla.storage.dbrm.AppointmentMap;
@@ -229,13 +236,33 @@ import java.util.stream.Collectors;
             }
         }
         ClassificationFilter[] classificationFilters = null;
+        final List<ClassificationFilterImpl> reservationFilters = job.getReservationFilters();
+        if (reservationFilters != null)
+        {
+            // filter on the server, so that only the reservations that are displayed are sent to the client
+            for (ClassificationFilterImpl filter : reservationFilters)
+            {
+                filter.setResolver(operator);
+                try
+                {
+                    filter.getType();
+                }
+                catch (UnresolvableReferenceExcpetion ex)
+                {
+                    throw new EntityNotFoundException("Unknown type in reservation filter " + ex.getMessage());
+                }
+            }
+            classificationFilters = reservationFilters.toArray(ClassificationFilter.CLASSIFICATIONFILTER_ARRAY);
+        }
         boolean requestsOnly = job.isRequestsOnly();
         final Promise<AppointmentMapping> mapFutureResult = operator
                 .queryAppointments(user, allocatables,owners, start, end, classificationFilters, annotationQuery, requestsOnly);
-        AppointmentMapping reservations = operator.waitForWithRaplaException(mapFutureResult, 50000);
-        AppointmentMap list = new AppointmentMap(reservations);
-        getLogger().debug("Get reservations " + start + " " + end + ": " + "," + list);
-        return new ResolvedPromise<>(list);
+        // the request thread is not blocked, the response is written when the query is finished
+        return mapFutureResult.thenApply((reservations) -> {
+            AppointmentMap list = new AppointmentMap(reservations);
+            getLogger().debug("Get reservations " + start + " " + end + ": " + "," + list);
+            return list;
+        });
     }
 
     private ReservationImpl checkAndMakeReservationsAnonymous(User sessionUser, Entity entity)
@@ -565,6 +592,48 @@ import java.util.stream.Collectors;
         return operator.getConflicts(sessionUser).thenApply((conflicts) -> conflicts.stream().map(conflict -> (ConflictImpl) conflict).collect(Collectors.toList()));
     }
 
+    @Override public Promise<ConflictPage> queryConflicts(ConflictQuery query)
+    {
+        User sessionUser;
+        try {
+            sessionUser = checkSessionUser();
+        } catch (RaplaException e) {
+            return new ResolvedPromise<>(e);
+        }
+        return operator.queryConflicts(sessionUser, query);
+    }
+
+    @Override public Promise<SearchResult> search(SearchQuery query)
+    {
+        User sessionUser;
+        try {
+            sessionUser = checkSessionUser();
+        } catch (RaplaException e) {
+            return new ResolvedPromise<>(e);
+        }
+        return operator.search(sessionUser, query);
+    }
+
+    @Override public Promise<List<ConflictImpl>> getConflictsForReservations(ConflictCheckRequest job)
+    {
+        final List<ReservationImpl> reservations = job.getReservations();
+        try {
+            checkSessionUser();
+        } catch (RaplaException e) {
+            return new ResolvedPromise<>(e);
+        }
+        // the reservations can be new or changed, so they are resolved against themselves first
+        EntityStore store = new EntityStore(operator);
+        store.addAll(reservations);
+        for (ReservationImpl reservation : reservations)
+        {
+            reservation.setResolver(store);
+        }
+        Collection<Reservation> ignoreList = resolveReservations(job.getIgnoreReservationIds());
+        return operator.getConflictsForReservations(new ArrayList<>(reservations), ignoreList)
+                .thenApply((conflicts) -> conflicts.stream().map(conflict -> (ConflictImpl) conflict).collect(Collectors.toList()));
+    }
+
     @Override public Promise<Date> getNextAllocatableDate(NextAllocatableDateRequest job)
     {
         String[] allocatableIds = job.getAllocatableIds();
@@ -591,6 +660,22 @@ import java.util.stream.Collectors;
 
     }
 
+    @Override public Promise<FreeBusyMatrix> getFreeBusy(FreeBusyRequest job)
+    {
+        List<Allocatable> allocatables;
+        try
+        {
+            checkSessionUser();
+            allocatables = resolveAllocatables(job.getAllocatableIds());
+        }
+        catch ( RaplaException ex)
+        {
+            return new ResolvedPromise<>(ex);
+        }
+        Collection<Reservation> ignoreList = resolveReservations(job.getReservationIds());
+        return operator.getFreeBusy(allocatables, job.getStart(), job.getEnd(), job.getSlotMinutes(), ignoreList);
+    }
+
     @Override public Promise<BindingMap> getFirstAllocatableBindings(AllocatableBindingsRequest job)
     {
         String[] allocatableIds = job.getAllocatableIds();
@@ -1,5 +1,7 @@
 package org.rapla.server.internal;
 
+import org.rapla.framework.internal.ExecutorPool;
+
 import javax.sql.DataSource;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -12,6 +14,11 @@ public class ServerContainerContext
     private Object mailSession;
     Runnable shutdownCommand;
     String patchScript;
+    Integer conflictInitParallelism;
+    boolean conflictSnapshot;
+    Integer occurrenceHorizonWeeks;
+    Long occurrenceCacheSize;
+    private final Map<String,ExecutorPool.Config> executorPoolConfigs = new LinkedHashMap<>();
 
     private ShutdownService shutdownService = new ShutdownService()
     {
@@ -114,5 +121,58 @@ public class ServerContainerContext
         this.patchScript = patchScript;
     }
 
+    /** @return the number of threads for the conflict calculation on startup or null for the default*/
+    public Integer getConflictInitParallelism()
+    {
+        return conflictInitParallelism;
+    }
+
+    public void setConflictInitParallelism(Integer conflictInitParallelism)
+    {
+        this.conflictInitParallelism = conflictInitParallelism;
+    }
+
+    /** @return true if the conflicts should be stored with the data to speed up the next start*/
+    public boolean isConflictSnapshot()
+    {
+        return conflictSnapshot;
+    }
+
+    public void setConflictSnapshot(boolean conflictSnapshot)
+    {
+        this.conflictSnapshot = conflictSnapshot;
+    }
+
+    /** @return the number of weeks for which the repetitions of appointments are cached or null for the default*/
+    public Integer getOccurrenceHorizonWeeks()
+    {
+        return occurrenceHorizonWeeks;
+    }
 
+    public void setOccurrenceHorizonWeeks(Integer occurrenceHorizonWeeks)
+    {
+        this.occurrenceHorizonWeeks = occurrenceHorizonWeeks;
+    }
+
+    /** @return the maximum number of cached repetitions of all appointments or null for the default*/
+    public Long getOccurrenceCacheSize()
+    {
+        return occurrenceCacheSize;
+    }
+
+    public void setOccurrenceCacheSize(Long occurrenceCacheSize)
+    {
+        this.occurrenceCacheSize = occurrenceCacheSize;
+    }
+
+    /** @return the configured pools of the scheduler by name, pools that are not configured use the default configuration*/
+    public Map<String, ExecutorPool.Config> getExecutorPoolConfigs()
+    {
+        return executorPoolConfigs;
+    }
+
+    public void setExecutorPoolConfig(String name, ExecutorPool.Config config)
+    {
+        executorPoolConfigs.put(name, config);
+    }
 }
@@ -12,6 +12,7 @@ import org.rapla.storage.impl.RaplaLock;
 
 import javax.servlet.ServletException;
 import java.util.Collection;
+import java.util.concurrent.locks.StampedLock;
 
 public class ServerStarter
 {
@@ -26,7 +27,8 @@ public class ServerStarter
     public ServerStarter(Logger logger, ServerContainerContext backendContext)
     {
         this.logger = logger;
-        this.restartLock = new DefaultRaplaLock(logger);
+        // the read lock of an asynchronous request is released by the thread that completes the request
+        this.restartLock = new DefaultRaplaLock(logger, new StampedLock().asReadWriteLock());
         this.backendContext =  backendContext;
     }
 
@@ -2,6 +2,8 @@ package org.rapla.server.internal;
 
 import org.jetbrains.annotations.NotNull;
 import org.rapla.RaplaResources;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.domain.internal.AppointmentOccurrenceCache;
 import org.rapla.entities.domain.permission.PermissionExtension;
 import org.rapla.entities.extensionpoints.FunctionFactory;
 import org.rapla.framework.RaplaLocale;
@@ -13,6 +15,7 @@ import org.rapla.storage.ImportExportManager;
 import org.rapla.storage.dbfile.FileOperator;
 import org.rapla.storage.dbsql.DBOperator;
 import org.rapla.storage.impl.server.ImportExportManagerImpl;
+import org.rapla.storage.impl.server.LocalAbstractCachableOperator;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -56,7 +59,9 @@ public class ServerStorageSelector implements Provider<CachableStorageOperator>
     {
         final String raplafile = containerContext.getMainFilesource();
         final String fileDatasource = raplafile != null ? raplafile : "data/data.xml";
-        return new FileOperator(logger, promiseWait,i18n, raplaLocale, scheduler, functionFactoryMap, fileDatasource, permissionExtensions);
+        final FileOperator operator = new FileOperator(logger, promiseWait, i18n, raplaLocale, scheduler, functionFactoryMap, fileDatasource, permissionExtensions);
+        configure(operator);
+        return operator;
     }
 
     synchronized private ImportExportManager getImportExport()
@@ -77,7 +82,29 @@ public class ServerStorageSelector implements Provider<CachableStorageOperator>
     {
         Provider<ImportExportManager> importExportMananger = getImportExportManager();
         final DataSource dbDatasource = containerContext.getMainDbDatasource();
-        return new DBOperator(logger, promiseWait,i18n, raplaLocale, scheduler, functionFactoryMap, importExportMananger, dbDatasource, permissionExtensions);
+        final DBOperator operator = new DBOperator(logger, promiseWait, i18n, raplaLocale, scheduler, functionFactoryMap, importExportMananger, dbDatasource, permissionExtensions);
+        configure(operator);
+        return operator;
+    }
+
+    private void configure(LocalAbstractCachableOperator operator)
+    {
+        final Integer conflictInitParallelism = containerContext.getConflictInitParallelism();
+        if (conflictInitParallelism != null)
+        {
+            operator.setConflictInitParallelism(conflictInitParallelism);
+        }
+        operator.setConflictSnapshotEnabled(containerContext.isConflictSnapshot());
+        final Integer occurrenceHorizonWeeks = containerContext.getOccurrenceHorizonWeeks();
+        if (occurrenceHorizonWeeks != null)
+        {
+            AppointmentOccurrenceCache.setHorizon(DateTools.MILLISECONDS_PER_WEEK * occurrenceHorizonWeeks);
+        }
+        final Long occurrenceCacheSize = containerContext.getOccurrenceCacheSize();
+        if (occurrenceCacheSize != null)
+        {
+            AppointmentOccurrenceCache.setMaxCachedOccurrences(occurrenceCacheSize);
+        }
     }
 
 
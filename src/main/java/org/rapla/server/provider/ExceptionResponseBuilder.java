@@ -10,6 +10,7 @@ import org.rapla.storage.RaplaSecurityException;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.core.Response;
+import java.util.concurrent.RejectedExecutionException;
 
 public class ExceptionResponseBuilder
 {
@@ -76,6 +77,14 @@ public class ExceptionResponseBuilder
             raplaLogger.warn( cause.getMessage());
             return build;
         }
+        if (cause instanceof RejectedExecutionException)
+        {
+            // the request pool is full
+            final Response.ResponseBuilder entity = Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(cause);
+            final Response build = entity.build();
+            raplaLogger.warn( cause.getMessage());
+            return build;
+        }
         final String message = cause.getMessage();
         raplaLogger.error(message, cause);
         final Response.ResponseBuilder entity = Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(cause);
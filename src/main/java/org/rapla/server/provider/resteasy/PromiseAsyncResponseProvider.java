@@ -0,0 +1,56 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.server.provider.resteasy;
+
+import org.jboss.resteasy.spi.ApplicationException;
+import org.jboss.resteasy.spi.AsyncResponseProvider;
+import org.rapla.scheduler.Promise;
+
+import javax.ws.rs.ext.Provider;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Lets resteasy process rest methods that return a {@link Promise} asynchronously.
+ * The request thread is released when the method returns and the response is written when the promise completes.
+ * Errors are wrapped in an ApplicationException, so they are mapped by the {@link ResteasyExceptionMapper} like errors thrown by the method.
+ */
+@Provider
+public class PromiseAsyncResponseProvider implements AsyncResponseProvider<Promise>
+{
+    @Override
+    public CompletionStage toCompletionStage(Promise promise)
+    {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        @SuppressWarnings("unchecked")
+        final Promise<Object> objectPromise = promise;
+        objectPromise.handle((result, ex) -> {
+            if (ex != null)
+            {
+                Throwable cause = ex;
+                if (cause instanceof CompletionException && cause.getCause() != null)
+                {
+                    cause = cause.getCause();
+                }
+                future.completeExceptionally(new ApplicationException(cause));
+            }
+            else
+            {
+                future.complete(result);
+            }
+            return result;
+        });
+        return future;
+    }
+}
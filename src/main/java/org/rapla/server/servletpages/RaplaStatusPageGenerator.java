@@ -4,8 +4,15 @@
 package org.rapla.server.servletpages;
 
 import org.rapla.RaplaSystemInfo;
+import org.rapla.components.util.xml.XMLWriter;
+import org.rapla.framework.internal.DefaultScheduler;
+import org.rapla.framework.internal.ExecutorPool;
+import org.rapla.scheduler.CommandScheduler;
 import org.rapla.server.internal.RaplaStatusEntry;
 import org.rapla.server.internal.ServerContainerContext;
+import org.rapla.storage.CachableStorageOperator;
+import org.rapla.storage.impl.LockStatistics;
+import org.rapla.storage.impl.server.LocalAbstractCachableOperator;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -23,6 +30,8 @@ import java.io.IOException;
 public class RaplaStatusPageGenerator  {
     @Inject RaplaSystemInfo m_i18n;
     @Inject ServerContainerContext serverContainerContext;
+    @Inject CachableStorageOperator operator;
+    @Inject CommandScheduler scheduler;
     @Inject
     public RaplaStatusPageGenerator()
     {
@@ -52,9 +61,67 @@ public class RaplaStatusPageGenerator  {
         String javaversion = System.getProperty("java.version");
      	out.println( "<p>Server running </p>" +  m_i18n.infoText( javaversion));
         out.println( "<hr>" );
+        final LockStatistics lockStatistics = operator instanceof LocalAbstractCachableOperator ? ((LocalAbstractCachableOperator) operator).getLockStatistics() : null;
+        if ( lockStatistics != null)
+        {
+            printLockStatistics(out, lockStatistics);
+        }
+        if ( scheduler instanceof DefaultScheduler)
+        {
+            printPools(out, (DefaultScheduler) scheduler);
+        }
         out.println( "</body>" );
         out.println( "</html>" );
         out.close();
     }
 
-}
\ No newline at end of file
+    private void printLockStatistics(java.io.PrintWriter out, LockStatistics statistics)
+    {
+        out.println( "<h3>Storage lock</h3>" );
+        out.println( "<p>Timeouts read: " + statistics.getReadLockTimeouts() + " write: " + statistics.getWriteLockTimeouts() + " slow holds: " + statistics.getSlowHolds() + "</p>" );
+        out.println( "<table border=\"1\">" );
+        out.print( "<tr><th>Mode</th><th>Caller</th><th>Count</th><th>Timeouts</th><th>Max wait ms</th><th>Max hold ms</th>" );
+        for (String bucket : LockStatistics.getBucketNames())
+        {
+            out.print( "<th>wait " + XMLWriter.encode(bucket) + "</th>" );
+        }
+        for (String bucket : LockStatistics.getBucketNames())
+        {
+            out.print( "<th>hold " + XMLWriter.encode(bucket) + "</th>" );
+        }
+        out.println( "</tr>" );
+        for (LockStatistics.CallerStatistics caller : statistics.getCallers())
+        {
+            out.print( "<tr><td>" + caller.getMode() + "</td><td>" + XMLWriter.encode(caller.getCaller()) + "</td><td>" + caller.getHolds().getCount() + "</td><td>"
+                    + caller.getTimeouts() + "</td><td>" + caller.getWaits().getMaxMillis() + "</td><td>" + caller.getHolds().getMaxMillis() + "</td>" );
+            for (long count : caller.getWaits().getBuckets())
+            {
+                out.print( "<td>" + count + "</td>" );
+            }
+            for (long count : caller.getHolds().getBuckets())
+            {
+                out.print( "<td>" + count + "</td>" );
+            }
+            out.println( "</tr>" );
+        }
+        out.println( "</table>" );
+        out.println( "<hr>" );
+    }
+
+    private void printPools(java.io.PrintWriter out, DefaultScheduler scheduler)
+    {
+        out.println( "<h3>Executor pools</h3>" );
+        out.println( "<table border=\"1\">" );
+        out.println( "<tr><th>Pool</th><th>Size</th><th>Queue size</th><th>Rejection</th><th>Virtual threads</th><th>Active</th><th>Queued</th><th>Threads</th><th>Largest</th><th>Completed</th><th>Rejected</th></tr>" );
+        for (ExecutorPool pool : scheduler.getPools())
+        {
+            final ExecutorPool.Config config = pool.getConfig();
+            out.println( "<tr><td>" + XMLWriter.encode(pool.getName()) + "</td><td>" + config.getSize() + "</td><td>" + config.getQueueSize() + "</td><td>" + config.getRejection()
+                    + "</td><td>" + pool.isVirtualThreads() + "</td><td>" + pool.getActiveCount() + "</td><td>" + pool.getQueueDepth() + "</td><td>" + pool.getPoolSize()
+                    + "</td><td>" + pool.getLargestPoolSize() + "</td><td>" + pool.getCompletedTaskCount() + "</td><td>" + pool.getRejectedCount() + "</td></tr>" );
+        }
+        out.println( "</table>" );
+        out.println( "<hr>" );
+    }
+
+}
@@ -0,0 +1,151 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage;
+
+import org.rapla.entities.Category;
+import org.rapla.entities.storage.CategoryHierarchy;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Numbers the stored category tree in pre and post order, so that a category is an ancestor of another category
+ * if its interval contains the interval of the other category.
+ * <p>
+ * The numbering is rebuilt on the first check after a category changed. Only the stored versions of the categories are answered,
+ * for other versions (e.g. editable copies) the check returns null and the caller has to walk the parent chain.
+ * </p>
+ */
+public class CategoryTreeIndex implements CategoryHierarchy
+{
+    private final Supplier<Category> superCategorySupplier;
+    private volatile Numbering numbering;
+    private volatile int modCount;
+
+    private static final class Node
+    {
+        private final Category category;
+        private final int pre;
+        private int post;
+
+        private Node(Category category, int pre)
+        {
+            this.category = category;
+            this.pre = pre;
+        }
+    }
+
+    private static final class Numbering
+    {
+        private final Map<String, Node> nodes = new HashMap<>();
+    }
+
+    public CategoryTreeIndex(Supplier<Category> superCategorySupplier)
+    {
+        this.superCategorySupplier = superCategorySupplier;
+    }
+
+    /** called when a category is stored or removed*/
+    public void invalidate()
+    {
+        modCount++;
+        numbering = null;
+    }
+
+    @Override
+    public Boolean isAncestorOf(Category ancestor, Category category)
+    {
+        if (ancestor == null || category == null)
+        {
+            return null;
+        }
+        final Numbering numbering = getNumbering();
+        final Node ancestorNode = numbering.nodes.get(ancestor.getId());
+        final Node node = numbering.nodes.get(category.getId());
+        if (ancestorNode == null || node == null || ancestorNode.category != ancestor || node.category != category)
+        {
+            return null;
+        }
+        return ancestorNode.pre < node.pre && node.post < ancestorNode.post;
+    }
+
+    private Numbering getNumbering()
+    {
+        Numbering result = numbering;
+        if (result != null)
+        {
+            return result;
+        }
+        synchronized (this)
+        {
+            result = numbering;
+            if (result != null)
+            {
+                return result;
+            }
+            final int count = modCount;
+            result = createNumbering();
+            // a category changed while numbering, so the next check numbers again
+            if (count == modCount)
+            {
+                numbering = result;
+            }
+            return result;
+        }
+    }
+
+    private Numbering createNumbering()
+    {
+        final Numbering result = new Numbering();
+        final Category superCategory = superCategorySupplier.get();
+        if (superCategory == null)
+        {
+            return result;
+        }
+        int counter = 0;
+        // iterative depth first traversal, because the tree can be deep
+        final Deque<Iterator<Category>> children = new ArrayDeque<>();
+        final Deque<Node> path = new ArrayDeque<>();
+        Node root = new Node(superCategory, counter++);
+        result.nodes.put(superCategory.getId(), root);
+        path.push(root);
+        children.push(superCategory.getCategoryList().iterator());
+        while (!children.isEmpty())
+        {
+            final Iterator<Category> it = children.peek();
+            if (it.hasNext())
+            {
+                final Category child = it.next();
+                // a category cycle would loop forever, so the category is only numbered once
+                if (child == null || result.nodes.containsKey(child.getId()))
+                {
+                    continue;
+                }
+                final Node node = new Node(child, counter++);
+                result.nodes.put(child.getId(), node);
+                path.push(node);
+                children.push(child.getCategoryList().iterator());
+            }
+            else
+            {
+                children.pop();
+                path.pop().post = counter++;
+            }
+        }
+        return result;
+    }
+}
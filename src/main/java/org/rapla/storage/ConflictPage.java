@@ -0,0 +1,57 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage;
+
+import org.rapla.facade.Conflict;
+import org.rapla.facade.internal.ConflictImpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** One page of conflicts returned for a {@link ConflictQuery}*/
+public class ConflictPage
+{
+    private List<ConflictImpl> conflicts = new ArrayList<>();
+    private String nextCursor;
+    private int totalCount;
+
+    public ConflictPage()
+    {
+    }
+
+    public ConflictPage(List<ConflictImpl> conflicts, String nextCursor, int totalCount)
+    {
+        this.conflicts = conflicts;
+        this.nextCursor = nextCursor;
+        this.totalCount = totalCount;
+    }
+
+    /** @return the conflicts of the page, empty if only the count was requested*/
+    public List<Conflict> getConflicts()
+    {
+        return Collections.unmodifiableList(conflicts);
+    }
+
+    /** @return the cursor for the next page or null if this is the last page*/
+    public String getNextCursor()
+    {
+        return nextCursor;
+    }
+
+    /** @return the number of conflicts matching the query on all pages*/
+    public int getTotalCount()
+    {
+        return totalCount;
+    }
+}
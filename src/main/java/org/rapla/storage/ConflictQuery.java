@@ -0,0 +1,121 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage;
+
+import java.util.Date;
+
+/**
+ * Restricts the conflicts returned by {@link StorageOperator#queryConflicts(org.rapla.entities.User, ConflictQuery)}.
+ * <p>
+ * All criteria are optional. Conflicts are returned ordered by start date and id, at most <code>limit</code> per page.
+ * The cursor of the returned {@link ConflictPage} is passed in the next query to get the following page.
+ * With countOnly only the number of matching conflicts is returned.
+ * </p>
+ */
+public class ConflictQuery
+{
+    public static final int DEFAULT_LIMIT = 500;
+
+    private Date start;
+    private Date end;
+    private String[] allocatableIds;
+    private String[] reservationTypes;
+    private String cursor;
+    private int limit = DEFAULT_LIMIT;
+    private boolean countOnly;
+
+    public ConflictQuery()
+    {
+    }
+
+    public ConflictQuery(Date start, Date end)
+    {
+        this.start = start;
+        this.end = end;
+    }
+
+    /** only conflicts with an overlap after start are returned. Can be null*/
+    public Date getStart()
+    {
+        return start;
+    }
+
+    public void setStart(Date start)
+    {
+        this.start = start;
+    }
+
+    /** only conflicts with an overlap before end are returned. Can be null*/
+    public Date getEnd()
+    {
+        return end;
+    }
+
+    public void setEnd(Date end)
+    {
+        this.end = end;
+    }
+
+    /** only conflicts on the passed allocatables are returned. Null for all allocatables*/
+    public String[] getAllocatableIds()
+    {
+        return allocatableIds;
+    }
+
+    public void setAllocatableIds(String[] allocatableIds)
+    {
+        this.allocatableIds = allocatableIds;
+    }
+
+    /** only conflicts where one of the reservations has one of the passed dynamic type keys are returned. Null for all types*/
+    public String[] getReservationTypes()
+    {
+        return reservationTypes;
+    }
+
+    public void setReservationTypes(String[] reservationTypes)
+    {
+        this.reservationTypes = reservationTypes;
+    }
+
+    /** the cursor of the previous page or null for the first page*/
+    public String getCursor()
+    {
+        return cursor;
+    }
+
+    public void setCursor(String cursor)
+    {
+        this.cursor = cursor;
+    }
+
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    public void setLimit(int limit)
+    {
+        this.limit = limit;
+    }
+
+    public boolean isCountOnly()
+    {
+        return countOnly;
+    }
+
+    public void setCountOnly(boolean countOnly)
+    {
+        this.countOnly = countOnly;
+    }
+}
@@ -0,0 +1,180 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage;
+
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.storage.ReferenceInfo;
+
+import java.util.BitSet;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Free/busy information for a set of allocatables over a time range with a fixed slot length.
+ * <p>
+ * A slot is busy if a block of a conflicting appointment touches it, so a free slot is guaranteed to be free
+ * while a busy slot may be only partially occupied. The slots of each allocatable are run length encoded:
+ * the array contains the lengths of alternating runs starting with a run of free slots (which may have length 0).
+ * Allocatables without an entry are free for the whole range.
+ * </p>
+ */
+public class FreeBusyMatrix
+{
+    /** upper bound for the number of slots of one request, e.g. a year in 15 minute slots*/
+    public static final int MAX_SLOT_COUNT = 366 * 24 * 4;
+
+    private Date start;
+    private int slotMinutes;
+    private int slotCount;
+    private Map<String, int[]> runs = new LinkedHashMap<>();
+    private transient Map<String, BitSet> decoded;
+
+    public FreeBusyMatrix()
+    {
+    }
+
+    public FreeBusyMatrix(Date start, int slotMinutes, int slotCount)
+    {
+        this.start = start;
+        this.slotMinutes = slotMinutes;
+        this.slotCount = slotCount;
+    }
+
+    public Date getStart()
+    {
+        return start;
+    }
+
+    public int getSlotMinutes()
+    {
+        return slotMinutes;
+    }
+
+    public long getSlotLength()
+    {
+        return slotMinutes * DateTools.MILLISECONDS_PER_MINUTE;
+    }
+
+    public int getSlotCount()
+    {
+        return slotCount;
+    }
+
+    public Date getEnd()
+    {
+        return new Date(start.getTime() + getSlotLength() * slotCount);
+    }
+
+    /** @return the run length encoded slots for the allocatable or null if the allocatable is free for the whole range*/
+    public int[] getRuns(ReferenceInfo<Allocatable> allocatable)
+    {
+        return runs.get(allocatable.getId());
+    }
+
+    public void putBusySlots(ReferenceInfo<Allocatable> allocatable, BitSet busySlots)
+    {
+        if (busySlots.isEmpty())
+        {
+            runs.remove(allocatable.getId());
+        }
+        else
+        {
+            runs.put(allocatable.getId(), encode(busySlots, slotCount));
+        }
+        decoded = null;
+    }
+
+    /** @return the index of the slot that contains the time*/
+    public int getSlot(long time)
+    {
+        return (int) Math.floorDiv(time - start.getTime(), getSlotLength());
+    }
+
+    /**
+     * @return true if one of the slots touched by [start,end) is busy. Times outside of the range of the matrix are treated as busy,
+     * because no information is available for them.
+     */
+    public boolean isBusy(ReferenceInfo<Allocatable> allocatable, long start, long end)
+    {
+        final int firstSlot = getSlot(start);
+        final int lastSlot = end > start ? getSlot(end - 1) : firstSlot;
+        if (firstSlot < 0 || lastSlot >= slotCount)
+        {
+            return true;
+        }
+        final BitSet busySlots = getBusySlots(allocatable);
+        if (busySlots == null)
+        {
+            return false;
+        }
+        final int nextBusy = busySlots.nextSetBit(firstSlot);
+        return nextBusy >= 0 && nextBusy <= lastSlot;
+    }
+
+    /** @return the busy slots of the allocatable or null if it is free for the whole range*/
+    public BitSet getBusySlots(ReferenceInfo<Allocatable> allocatable)
+    {
+        Map<String, BitSet> decoded = this.decoded;
+        if (decoded == null)
+        {
+            decoded = new LinkedHashMap<>();
+            for (Map.Entry<String, int[]> entry : runs.entrySet())
+            {
+                decoded.put(entry.getKey(), decode(entry.getValue()));
+            }
+            this.decoded = decoded;
+        }
+        return decoded.get(allocatable.getId());
+    }
+
+    static int[] encode(BitSet busySlots, int slotCount)
+    {
+        // worst case is alternating free and busy slots
+        final int[] result = new int[Math.min(slotCount, 2 * busySlots.cardinality()) + 1];
+        int size = 0;
+        int pos = 0;
+        while (pos < slotCount)
+        {
+            int nextBusy = busySlots.nextSetBit(pos);
+            if (nextBusy < 0 || nextBusy >= slotCount)
+            {
+                break;
+            }
+            int nextFree = Math.min(busySlots.nextClearBit(nextBusy), slotCount);
+            result[size++] = nextBusy - pos;
+            result[size++] = nextFree - nextBusy;
+            pos = nextFree;
+        }
+        final int[] trimmed = new int[size];
+        System.arraycopy(result, 0, trimmed, 0, size);
+        return trimmed;
+    }
+
+    static BitSet decode(int[] runs)
+    {
+        final BitSet result = new BitSet();
+        int pos = 0;
+        for (int i = 0; i < runs.length; i++)
+        {
+            final int length = runs[i];
+            if (i % 2 == 1)
+            {
+                result.set(pos, pos + length);
+            }
+            pos += length;
+        }
+        return result;
+    }
+}
@@ -56,6 +56,12 @@ public class LocalCache implements EntityResolver
     Map<String, ReservationImpl> reservations;
     Map<ReferenceInfo<Allocatable>, GraphNode> graph = new ConcurrentHashMap<>();
 
+    // secondary indexes on the natural keys, maintained in put and remove
+    private final Map<String, UserImpl> usersByName = new ConcurrentHashMap<>();
+    private final Map<String, UserImpl> usersByLowerCaseName = new ConcurrentHashMap<>();
+    private final Map<String, DynamicTypeImpl> dynamicTypesByKey = new ConcurrentHashMap<>();
+    private final CategoryTreeIndex categoryTreeIndex = new CategoryTreeIndex(this::getSuperCategory);
+
     private String clientUserId;
     private final PermissionController permissionController;
 
@@ -108,13 +114,19 @@ public class LocalCache implements EntityResolver
         {
             if (entityId == null)
                 return false;
-            entitySet.remove(entityId);
+            final Entity removed = entitySet.remove(entityId);
+            removeFromKeyIndex(removed, null);
+            permissionController.removeFromPermissionCache(info);
         }
         else if (typeClass == Conflict.class)
         {
             disabledConflictApp1.remove(entityId);
             disabledConflictApp2.remove(entityId);
         }
+        else if (typeClass == Category.class)
+        {
+            categoryTreeIndex.invalidate();
+        }
         if (typeClass == Allocatable.class)
         {
             GraphNode oldNode = graph.get(info);
@@ -128,6 +140,81 @@ public class LocalCache implements EntityResolver
         return bResult;
     }
 
+    private void addToKeyIndex(Entity entity)
+    {
+        if (entity instanceof UserImpl)
+        {
+            final UserImpl user = (UserImpl) entity;
+            final String username = user.getUsername();
+            if (username != null)
+            {
+                usersByName.put(username, user);
+                usersByLowerCaseName.put(toLowerCase(username), user);
+            }
+        }
+        else if (entity instanceof DynamicTypeImpl)
+        {
+            final DynamicTypeImpl type = (DynamicTypeImpl) entity;
+            final String key = type.getKey();
+            if (key != null)
+            {
+                dynamicTypesByKey.put(key, type);
+            }
+        }
+    }
+
+    /** removes the keys of the entity that are not used by its replacement. Pass null as replacement if the entity is removed */
+    private void removeFromKeyIndex(Entity entity, Entity replacement)
+    {
+        if (entity instanceof UserImpl)
+        {
+            final UserImpl user = (UserImpl) entity;
+            final String username = user.getUsername();
+            final String newUsername = replacement != null ? ((UserImpl) replacement).getUsername() : null;
+            if (username != null && !username.equals(newUsername))
+            {
+                usersByName.remove(username, user);
+                final String lowerCaseName = toLowerCase(username);
+                if (newUsername == null || !toLowerCase(newUsername).equals(lowerCaseName))
+                {
+                    removeLowerCaseName(lowerCaseName, user);
+                }
+            }
+        }
+        else if (entity instanceof DynamicTypeImpl)
+        {
+            final DynamicTypeImpl type = (DynamicTypeImpl) entity;
+            final String key = type.getKey();
+            final String newKey = replacement != null ? ((DynamicTypeImpl) replacement).getKey() : null;
+            if (key != null && !key.equals(newKey))
+            {
+                dynamicTypesByKey.remove(key, type);
+            }
+        }
+    }
+
+    private void removeLowerCaseName(String lowerCaseName, UserImpl user)
+    {
+        if (usersByLowerCaseName.remove(lowerCaseName, user))
+        {
+            // another user can have the same name in a different case
+            for (UserImpl other : users.values())
+            {
+                final String otherName = other.getUsername();
+                if (otherName != null && toLowerCase(otherName).equals(lowerCaseName))
+                {
+                    usersByLowerCaseName.putIfAbsent(lowerCaseName, other);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static String toLowerCase(String username)
+    {
+        return username.toLowerCase(Locale.ENGLISH);
+    }
+
     @SuppressWarnings("unchecked") private Map<String, Entity> getMap(Class<? extends Entity> type)
     {
         if (type == Reservation.class)
@@ -185,6 +272,12 @@ public class LocalCache implements EntityResolver
         {
             updateDependencies(entity);
         }
+        else if (typeClass == Category.class)
+        {
+            categoryTreeIndex.invalidate();
+            // the group hierarchy can change the permissions of all users
+            permissionController.clearPermissionCache();
+        }
         // first remove the old children from the map
         Entity oldEntity = entities.get(entity);
         if (oldEntity != null && oldEntity instanceof ParentEntity)
@@ -200,7 +293,9 @@ public class LocalCache implements EntityResolver
         Map<String, Entity> entitySet = getMap(typeClass);
         if (entitySet != null)
         {
-            entitySet.put(entityId, entity);
+            final Entity replaced = entitySet.put(entityId, entity);
+            addToKeyIndex(entity);
+            removeFromKeyIndex(replaced, entity);
         }
         else if (entity instanceof Conflict)
         {
@@ -276,11 +371,59 @@ public class LocalCache implements EntityResolver
         users.clear();
         resources.clear();
         dynamicTypes.clear();
+        usersByName.clear();
+        usersByLowerCaseName.clear();
+        dynamicTypesByKey.clear();
         entities.clear();
         disabledConflictApp1.clear();
         disabledConflictApp2.clear();
         conflictLastChanged.clear();
         graph.clear();
+        categoryTreeIndex.invalidate();
+        permissionController.clearPermissionCache();
+    }
+
+    /**
+     * Creates a copy of the cache with the current state, that doesn't see later changes.
+     * The stored entities are read only and replaced on changes, so only the maps are copied and the entities are shared.
+     * The caller must make sure that no update is running while the snapshot is created. The snapshot must not be modified.
+     */
+    public LocalCache createSnapshot()
+    {
+        final LocalCache snapshot = new LocalCache(permissionController);
+        snapshot.clientUserId = clientUserId;
+        // the maps are filled entry by entry, so that the snapshot iterates in the same order as the cache
+        copy(passwords, snapshot.passwords);
+        copy(entities, snapshot.entities);
+        copy(reservations, snapshot.reservations);
+        copy(users, snapshot.users);
+        copy(resources, snapshot.resources);
+        copy(dynamicTypes, snapshot.dynamicTypes);
+        copy(usersByName, snapshot.usersByName);
+        copy(usersByLowerCaseName, snapshot.usersByLowerCaseName);
+        copy(dynamicTypesByKey, snapshot.dynamicTypesByKey);
+        copy(disabledConflictApp1, snapshot.disabledConflictApp1);
+        copy(disabledConflictApp2, snapshot.disabledConflictApp2);
+        copy(conflictLastChanged, snapshot.conflictLastChanged);
+        // the graph nodes are changed in place, so the snapshot builds its own graph
+        for (AllocatableImpl allocatable : resources.values())
+        {
+            snapshot.updateDependencies(allocatable);
+        }
+        return snapshot;
+    }
+
+    private static <K, V> void copy(Map<K, V> source, Map<K, V> target)
+    {
+        for (Map.Entry<K, V> entry : source.entrySet())
+        {
+            target.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public CategoryTreeIndex getCategoryTreeIndex()
+    {
+        return categoryTreeIndex;
     }
 
     public CategoryImpl getSuperCategory()
@@ -288,19 +431,19 @@ public class LocalCache implements EntityResolver
         return (CategoryImpl) get(Category.SUPER_CATEGORY_REF.getId());
     }
 
+    /** @return the user with the username or, if there is none, a user with the username in a different case */
     public UserImpl getUser(String username)
     {
-        for (UserImpl user : users.values())
+        if (username == null)
         {
-            if (user.getUsername().equals(username))
-                return user;
+            return null;
         }
-        for (UserImpl user : users.values())
+        final UserImpl user = usersByName.get(username);
+        if (user != null)
         {
-            if (user.getUsername().equalsIgnoreCase(username))
-                return user;
+            return user;
         }
-        return null;
+        return usersByLowerCaseName.get(toLowerCase(username));
     }
 
     public PreferencesImpl getPreferencesForUserId(String userId)
@@ -312,12 +455,11 @@ public class LocalCache implements EntityResolver
 
     public DynamicType getDynamicType(String elementKey)
     {
-        for (DynamicType dt : dynamicTypes.values())
+        if (elementKey == null)
         {
-            if (dt.getKey().equals(elementKey))
-                return dt;
+            return null;
         }
-        return null;
+        return dynamicTypesByKey.get(elementKey);
     }
 
     public List<Entity> getVisibleEntities(final User forUser)
@@ -30,10 +30,15 @@ import org.rapla.framework.RaplaException;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
 
 
 @Singleton
@@ -41,6 +46,39 @@ public class PermissionController
 {
     private final Set<PermissionExtension> permissionExtensions;
     StorageOperator operator;
+    /** the maximum number of users with cached checks*/
+    static final int MAX_CACHED_USERS = 200;
+    /** the maximum number of entities with cached checks per user*/
+    static final int MAX_CACHED_ENTITIES_PER_USER = 10000;
+    // user id -> results of the time independent permission checks of that user
+    private final Map<String, UserPermissions> permissionCache = new ConcurrentHashMap<>();
+
+    /**
+     * The cached checks of one version of a user. Each entry belongs to one version of the checked entity,
+     * so a changed user, entity or dynamic type is recomputed on the next check, because the storage replaces the instances of changed entities.
+     * The entity is only weakly referenced, so the cache doesn't keep superseded versions in memory.
+     */
+    private static final class UserPermissions
+    {
+        private final User user;
+        private final Map<String, EntityPermissions> entities = new ConcurrentHashMap<>();
+
+        private UserPermissions(User user)
+        {
+            this.user = user;
+        }
+    }
+
+    private static final class EntityPermissions
+    {
+        private final WeakReference<Entity> entity;
+        private final Map<String, Boolean> checks = new ConcurrentHashMap<>();
+
+        private EntityPermissions(Entity entity)
+        {
+            this.entity = new WeakReference<>(entity);
+        }
+    }
 
     @Inject
     public PermissionController(Set<PermissionExtension> permissionExtensions, StorageOperator operator)
@@ -110,10 +148,105 @@ public class PermissionController
         return false;
     }
 
+    /**
+     * Removes all cached permission checks. Called when the storage is reloaded or when categories change,
+     * because the group hierarchy can change the permissions of all users.
+     */
+    public void clearPermissionCache()
+    {
+        permissionCache.clear();
+    }
+
+    /** removes the cached permission checks of and for the removed entity*/
+    public void removeFromPermissionCache(ReferenceInfo reference)
+    {
+        final String id = reference.getId();
+        if (reference.getType() == User.class)
+        {
+            permissionCache.remove(id);
+        }
+        for (UserPermissions userPermissions : permissionCache.values())
+        {
+            userPermissions.entities.remove(id);
+        }
+    }
+
+    /**
+     * Returns the cached result of a check that only depends on the user and on the entity, or evaluates and caches it.
+     * Only stored (read only) versions are cached, for editable copies the check is always evaluated.
+     */
+    private boolean getCached(Entity entity, User user, String check, BooleanSupplier evaluation)
+    {
+        if (user == null || entity == null || !user.isReadOnly() || !entity.isReadOnly() || entity.getId() == null)
+        {
+            return evaluation.getAsBoolean();
+        }
+        UserPermissions userPermissions = permissionCache.get(user.getId());
+        if (userPermissions == null || userPermissions.user != user)
+        {
+            userPermissions = new UserPermissions(user);
+            permissionCache.put(user.getId(), userPermissions);
+            if (permissionCache.size() > MAX_CACHED_USERS)
+            {
+                evictUsers(user.getId());
+            }
+        }
+        EntityPermissions entityPermissions = userPermissions.entities.get(entity.getId());
+        if (entityPermissions == null || entityPermissions.entity.get() != entity)
+        {
+            entityPermissions = new EntityPermissions(entity);
+            userPermissions.entities.put(entity.getId(), entityPermissions);
+            if (userPermissions.entities.size() > MAX_CACHED_ENTITIES_PER_USER)
+            {
+                evictEntities(userPermissions.entities, entity.getId());
+            }
+        }
+        final Boolean cached = entityPermissions.checks.get(check);
+        if (cached != null)
+        {
+            return cached;
+        }
+        final boolean result = evaluation.getAsBoolean();
+        entityPermissions.checks.put(check, result);
+        return result;
+    }
+
+    /** removes other users until only three quarters of the maximum are cached. The eviction is not in least recently used order, but it takes no lock*/
+    private void evictUsers(String keep)
+    {
+        final Iterator<String> it = permissionCache.keySet().iterator();
+        while (permissionCache.size() > MAX_CACHED_USERS * 3 / 4 && it.hasNext())
+        {
+            if (!it.next().equals(keep))
+            {
+                it.remove();
+            }
+        }
+    }
+
+    /** removes the entries of collected entities first and then other entries until only three quarters of the maximum are cached*/
+    private static void evictEntities(Map<String, EntityPermissions> entities, String keep)
+    {
+        entities.values().removeIf((entityPermissions) -> entityPermissions.entity.get() == null);
+        final Iterator<String> it = entities.keySet().iterator();
+        while (entities.size() > MAX_CACHED_ENTITIES_PER_USER * 3 / 4 && it.hasNext())
+        {
+            if (!it.next().equals(keep))
+            {
+                it.remove();
+            }
+        }
+    }
+
     /**
      * Access method
      */
     private boolean hasAccess(Entity entity, User user, Permission.AccessLevel accessLevel)
+    {
+        return getCached(entity, user, accessLevel.name(), () -> hasAccessUncached(entity, user, accessLevel));
+    }
+
+    private boolean hasAccessUncached(Entity entity, User user, Permission.AccessLevel accessLevel)
     {
         for (PermissionExtension permissionExtension : permissionExtensions)
         {
@@ -257,7 +390,7 @@ public class PermissionController
         if (container instanceof DynamicType)
         {
             Collection<Permission> permissionList = ((DynamicType)container).getPermissionList();
-            boolean result = matchesAccessLevel(permissionList, user, Permission.READ_TYPE, Permission.CREATE, Permission.ADMIN);
+            boolean result = getCached(container, user, "readType", () -> matchesAccessLevel(permissionList, user, Permission.READ_TYPE, Permission.CREATE, Permission.ADMIN));
             return result;
         }
         else
@@ -275,7 +408,7 @@ public class PermissionController
     public boolean canCreate(DynamicType type, User user)
     {
         Collection<Permission> permissionList = type.getPermissionList();
-        boolean result = matchesAccessLevel(permissionList, user, Permission.CREATE, Permission.ADMIN);
+        boolean result = getCached(type, user, "createType", () -> matchesAccessLevel(permissionList, user, Permission.CREATE, Permission.ADMIN));
         return result;
     }
 
@@ -299,6 +432,11 @@ public class PermissionController
     }
 
     public boolean hasPermissionToAllocate(User user, Allocatable a)
+    {
+        return getCached(a, user, "allocate", () -> hasPermissionToAllocateUncached(user, a));
+    }
+
+    private boolean hasPermissionToAllocateUncached(User user, Allocatable a)
     {
         Collection<String> groups = UserImpl.getGroupsIncludingParents(user);
         final ReferenceInfo<User> ownerRef = a.getOwnerRef();
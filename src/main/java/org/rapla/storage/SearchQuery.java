@@ -0,0 +1,82 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage;
+
+/**
+ * A full text search for {@link StorageOperator#search(org.rapla.entities.User, SearchQuery)}.
+ * <p>
+ * The text is split into words. A resource or event is found if each word is the start of a word in its name or in one of its text attributes.
+ * Results are ranked, matches in the name before matches in attributes and whole words before prefixes.
+ * At most <code>limit</code> results are returned.
+ * </p>
+ */
+public class SearchQuery
+{
+    public static final int DEFAULT_LIMIT = 50;
+
+    private String text;
+    private boolean allocatables = true;
+    private boolean reservations = true;
+    private int limit = DEFAULT_LIMIT;
+
+    public SearchQuery()
+    {
+    }
+
+    public SearchQuery(String text)
+    {
+        this.text = text;
+    }
+
+    public String getText()
+    {
+        return text;
+    }
+
+    public void setText(String text)
+    {
+        this.text = text;
+    }
+
+    /** @return true if resources and persons are searched*/
+    public boolean isAllocatables()
+    {
+        return allocatables;
+    }
+
+    public void setAllocatables(boolean allocatables)
+    {
+        this.allocatables = allocatables;
+    }
+
+    /** @return true if events are searched*/
+    public boolean isReservations()
+    {
+        return reservations;
+    }
+
+    public void setReservations(boolean reservations)
+    {
+        this.reservations = reservations;
+    }
+
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    public void setLimit(int limit)
+    {
+        this.limit = limit;
+    }
+}
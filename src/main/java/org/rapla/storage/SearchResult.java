@@ -0,0 +1,86 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage;
+
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.domain.internal.AllocatableImpl;
+import org.rapla.entities.domain.internal.ReservationImpl;
+import org.rapla.entities.dynamictype.Classifiable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The resources and events found for a {@link SearchQuery}*/
+public class SearchResult
+{
+    private List<AllocatableImpl> allocatables = new ArrayList<>();
+    private List<ReservationImpl> reservations = new ArrayList<>();
+    private List<String> rankedIds = new ArrayList<>();
+    private int totalCount;
+
+    public SearchResult()
+    {
+    }
+
+    public SearchResult(List<AllocatableImpl> allocatables, List<ReservationImpl> reservations, List<String> rankedIds, int totalCount)
+    {
+        this.allocatables = allocatables;
+        this.reservations = reservations;
+        this.rankedIds = rankedIds;
+        this.totalCount = totalCount;
+    }
+
+    public List<Allocatable> getAllocatables()
+    {
+        return Collections.unmodifiableList(allocatables);
+    }
+
+    public List<Reservation> getReservations()
+    {
+        return Collections.unmodifiableList(reservations);
+    }
+
+    /** @return the found resources and events, the best matches first*/
+    public List<Classifiable> getResults()
+    {
+        final Map<String, Classifiable> byId = new HashMap<>();
+        for (AllocatableImpl allocatable : allocatables)
+        {
+            byId.put(allocatable.getId(), allocatable);
+        }
+        for (ReservationImpl reservation : reservations)
+        {
+            byId.put(reservation.getId(), reservation);
+        }
+        final List<Classifiable> result = new ArrayList<>();
+        for (String id : rankedIds)
+        {
+            final Classifiable classifiable = byId.get(id);
+            if (classifiable != null)
+            {
+                result.add(classifiable);
+            }
+        }
+        return result;
+    }
+
+    /** @return the number of readable matches, can be greater than the number of returned results*/
+    public int getTotalCount()
+    {
+        return totalCount;
+    }
+}
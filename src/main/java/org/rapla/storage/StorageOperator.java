@@ -139,12 +139,28 @@ public interface StorageOperator extends EntityResolver {
     
     Promise<Map<ReferenceInfo<Allocatable>, Map<Appointment,Collection<Appointment>>>> getAllAllocatableBindings(Collection<Allocatable> allocatables, Collection<Appointment> appointments, Collection<Reservation> ignoreList);
 
+    /** returns the free and busy slots of the allocatables between start and end. Reservations in the ignoreList are not counted as busy.
+     * @see FreeBusyMatrix*/
+    Promise<FreeBusyMatrix> getFreeBusy(Collection<Allocatable> allocatables, Date start, Date end, int slotMinutes, Collection<Reservation> ignoreList);
+
     Promise<Date> getNextAllocatableDate(Collection<Allocatable> allocatables,Appointment appointment, Collection<Reservation> ignoreList, Integer worktimeStartMinutes,Integer worktimeEndMinutes, Integer[] excludedDays, Integer rowsPerHour);
     
     Promise<Collection<Conflict>> getConflicts(User user);
 
+    /** returns one page of the conflicts matching the query, that the user can modify. If no user is passed all matching conflicts are returned
+     * @see ConflictQuery*/
+    Promise<ConflictPage> queryConflicts(User user, ConflictQuery query);
+
+    /** returns the resources and events matching the search text, that the user can read. If no user is passed all matches are returned
+     * @see SearchQuery*/
+    Promise<SearchResult> search(User user, SearchQuery query);
+
     Promise<Collection<Conflict>> getConflicts(Reservation reservation);
 
+    /** returns the conflicts of all passed reservations with the stored reservations. Each reservation is checked on its own and ignores itself
+     * and the reservations in the ignoreList, e.g. the stored versions of reservations that are saved together. */
+    Promise<Collection<Conflict>> getConflictsForReservations(Collection<Reservation> reservations, Collection<Reservation> ignoreList);
+
     PermissionController getPermissionController();
 
     Map<String,Object> getThreadContextMap();
@@ -56,6 +56,7 @@ import org.rapla.storage.UpdateEvent;
 import org.rapla.storage.impl.AbstractCachableOperator;
 import org.rapla.storage.impl.EntityStore;
 import org.rapla.storage.impl.RaplaLock;
+import org.rapla.storage.impl.server.ConflictSnapshot;
 import org.rapla.storage.impl.server.EntityHistory;
 import org.rapla.storage.impl.server.LocalAbstractCachableOperator;
 import org.rapla.storage.xml.IOContext;
@@ -75,8 +76,11 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.URI;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -201,6 +205,7 @@ final public class FileOperator extends LocalAbstractCachableOperator
             loadData(cache);
             changeStatus(InitStatus.Loaded);
             initIndizes();
+            saveConflictSnapshot();
             changeStatus(InitStatus.Connected);
 
         }
@@ -481,6 +486,7 @@ final public class FileOperator extends LocalAbstractCachableOperator
             refresh(since, until, storeObjects, preferencePatches, removeIds);
             List<ExternalSyncEntity> externalSyncEntityList = getAllExternalSyncEntities();
             saveData(cache, externalSyncEntityList,null, includeIds);
+            saveConflictSnapshot();
         }
         finally
         {
@@ -638,6 +644,7 @@ final public class FileOperator extends LocalAbstractCachableOperator
         {
             List<ExternalSyncEntity> syncEntities = getAllExternalSyncEntities();
             saveData(cache, syncEntities,null, includeIds);
+            saveConflictSnapshot();
         }
         finally
         {
@@ -674,6 +681,79 @@ final public class FileOperator extends LocalAbstractCachableOperator
         }
     }
 
+    /** the conflict snapshot is stored next to the data file. Returns null if the data is not stored in a local file*/
+    private File getConflictSnapshotFile()
+    {
+        if (!"file".equals(storageURL.getScheme()))
+        {
+            return null;
+        }
+        return new File(new File(storageURL).getPath() + ".conflicts");
+    }
+
+    /** the version of the data file, so that snapshots of replaced or manually edited files are ignored*/
+    private String getDataVersion()
+    {
+        File storageFile = new File(storageURL);
+        return storageFile.length() + "-" + storageFile.lastModified();
+    }
+
+    @Override
+    protected ConflictSnapshot loadConflictSnapshot()
+    {
+        File snapshotFile = getConflictSnapshotFile();
+        if (snapshotFile == null || !snapshotFile.exists())
+        {
+            return null;
+        }
+        final ConflictSnapshot snapshot;
+        try (Reader reader = new InputStreamReader(new FileInputStream(snapshotFile), "utf-8"))
+        {
+            snapshot = ConflictSnapshot.read(reader);
+        }
+        catch (IOException ex)
+        {
+            getLogger().warn("Can't read conflict snapshot " + snapshotFile + ": " + ex.getMessage());
+            return null;
+        }
+        if (!getDataVersion().equals(snapshot.getDataVersion()))
+        {
+            getLogger().info("Ignoring conflict snapshot " + snapshotFile + ", because the data file changed.");
+            return null;
+        }
+        return snapshot;
+    }
+
+    /** stores the current conflicts next to the data file, if conflict snapshots are enabled. Must be called after the data is saved*/
+    private void saveConflictSnapshot()
+    {
+        File snapshotFile = getConflictSnapshotFile();
+        if (!isConflictSnapshotEnabled() || snapshotFile == null)
+        {
+            return;
+        }
+        final ConflictSnapshot snapshot = createConflictSnapshot(getDataVersion());
+        final File newFile = new File(snapshotFile.getPath() + ".new");
+        try
+        {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(newFile), "utf-8")))
+            {
+                snapshot.write(writer);
+            }
+            snapshotFile.delete();
+            if (!newFile.renameTo(snapshotFile))
+            {
+                throw new IOException("Can't rename " + newFile + " to " + snapshotFile);
+            }
+        }
+        catch (IOException ex)
+        {
+            // the snapshot is only an optimization for the next start, so the data is saved anyway
+            getLogger().warn("Can't write conflict snapshot " + snapshotFile + ": " + ex.getMessage());
+            snapshotFile.delete();
+        }
+    }
+
     /**
      * Override for custom read
      */
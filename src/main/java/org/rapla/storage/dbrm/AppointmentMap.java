@@ -9,6 +9,7 @@ import org.rapla.entities.domain.AppointmentMapping;
 import org.rapla.entities.domain.Reservation;
 import org.rapla.entities.domain.internal.ReservationImpl;
 import org.rapla.entities.dynamictype.ClassificationFilter;
+import org.rapla.entities.dynamictype.internal.ClassificationFilterPredicate;
 import org.rapla.entities.storage.EntityResolver;
 import org.rapla.entities.storage.ReferenceInfo;
 
@@ -81,6 +82,7 @@ public class AppointmentMap
             }
         }
         Map<Entity, Collection<Appointment>> appointmentMap = new LinkedHashMap<>();
+        final ClassificationFilterPredicate filterPredicate = filters != null ? ClassificationFilterPredicate.compile(filters) : null;
 
         for (Map.Entry<String, Set<String>> entry : entityIdToAppointmentIds.entrySet())
         {
@@ -107,7 +109,7 @@ public class AppointmentMap
                         Assert.notNull(app);
                         Reservation reservation = app.getReservation();
                         Assert.notNull(reservation);
-                        if (filters != null && !ClassificationFilter.Util.matches(filters, reservation))
+                        if (filterPredicate != null && !filterPredicate.test(reservation))
                         {
                             continue;
                         }
@@ -30,6 +30,7 @@ import org.rapla.entities.domain.internal.ReservationImpl;
 import org.rapla.entities.domain.permission.PermissionExtension;
 import org.rapla.entities.dynamictype.ClassificationFilter;
 import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.internal.ClassificationFilterImpl;
 import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
 import org.rapla.entities.extensionpoints.FunctionFactory;
 import org.rapla.entities.storage.EntityReferencer;
@@ -38,7 +39,9 @@ import org.rapla.entities.storage.RefEntity;
 import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.entities.storage.internal.ReferenceHandler;
 import org.rapla.facade.Conflict;
+import org.rapla.facade.RaplaComponent;
 import org.rapla.facade.client.ClientFacade;
+import org.rapla.facade.internal.ConflictImpl;
 import org.rapla.facade.internal.ModificationEventImpl;
 import org.rapla.framework.Disposable;
 import org.rapla.framework.RaplaException;
@@ -49,14 +52,21 @@ import org.rapla.logger.Logger;
 import org.rapla.scheduler.CommandScheduler;
 import org.rapla.scheduler.Promise;
 import org.rapla.scheduler.ResolvedPromise;
+import org.rapla.storage.ConflictPage;
+import org.rapla.storage.ConflictQuery;
+import org.rapla.storage.FreeBusyMatrix;
 import org.rapla.storage.PreferencePatch;
 import org.rapla.storage.RaplaSecurityException;
+import org.rapla.storage.SearchQuery;
+import org.rapla.storage.SearchResult;
 import org.rapla.storage.StorageOperator;
 import org.rapla.storage.StorageUpdateListener;
 import org.rapla.storage.UpdateEvent;
 import org.rapla.storage.UpdateResult;
 import org.rapla.storage.dbrm.RemoteStorage.AllocatableBindingsRequest;
 import org.rapla.storage.dbrm.RemoteStorage.BindingMap;
+import org.rapla.storage.dbrm.RemoteStorage.ConflictCheckRequest;
+import org.rapla.storage.dbrm.RemoteStorage.FreeBusyRequest;
 import org.rapla.storage.dbrm.RemoteStorage.MergeRequest;
 import org.rapla.storage.dbrm.RemoteStorage.NextAllocatableDateRequest;
 import org.rapla.storage.dbrm.RemoteStorage.PasswordPost;
@@ -707,7 +717,16 @@ public class RemoteOperator
         final RemoteStorage serv = getRemoteStorage();
         Promise<AppointmentMapping> result = refreshIfIdle().thenCompose((refreshed) -> {String[] allocatableId = getIdList(allocatables);
             String[] ownerIds = getIdList( owners);
-            return serv.queryAppointments(new QueryAppointments(ownerIds,allocatableId, start, end, annotationQuery, requestsOnly)).thenApply(list -> {
+            final QueryAppointments query = new QueryAppointments(ownerIds, allocatableId, start, end, annotationQuery, requestsOnly);
+            if (filters != null) {
+                // the filters are evaluated on the server, so only matching reservations are transferred
+                final List<ClassificationFilterImpl> reservationFilters = new ArrayList<>();
+                for (ClassificationFilter filter : filters) {
+                    reservationFilters.add((ClassificationFilterImpl) filter);
+                }
+                query.setReservationFilters(reservationFilters);
+            }
+            return serv.queryAppointments(query).thenApply(list -> {
                 AppointmentMapping filtered;
                 {
                     long time = System.currentTimeMillis();
@@ -715,7 +734,7 @@ public class RemoteOperator
                 }
                 {
                     long time = System.currentTimeMillis();
-                    filtered = processReservationResult(list, filters);
+                    filtered = processReservationResult(list);
                     logger.debug("event post processing took  " + (System.currentTimeMillis() - time) + " ms");
                 }
 
@@ -737,9 +756,11 @@ public class RemoteOperator
         });
     }
 
-    private AppointmentMapping processReservationResult(AppointmentMap appointmentMap, ClassificationFilter[] filters) {
+    private AppointmentMapping processReservationResult(AppointmentMap appointmentMap) {
         final RemoteOperator resolver = this;
         appointmentMap.init(resolver);
+        // the reservation filters are already applied on the server
+        final ClassificationFilter[] filters = null;
         return appointmentMap.getResult(filters);
     }
 
@@ -1013,6 +1034,14 @@ public class RemoteOperator
         return nextAllocatableDate;
     }
 
+    @Override
+    public Promise<FreeBusyMatrix> getFreeBusy(Collection<Allocatable> allocatables, Date start, Date end, int slotMinutes, Collection<Reservation> ignoreList) {
+        RemoteStorage serv = getRemoteStorage();
+        String[] allocatableIds = getIdList(removeUnresolvedAllocatables(allocatables));
+        String[] reservationIds = getIdList(ignoreList);
+        return serv.getFreeBusy(new FreeBusyRequest(allocatableIds, start, end, slotMinutes, reservationIds));
+    }
+
     static private SortedSet<Appointment> getAppointments(ReferenceInfo<Allocatable> allocRef, SortedSet<Appointment> allAppointments) {
         SortedSet<Appointment> result = new TreeSet<>(new AppointmentStartComparator());
         for (Appointment appointment : allAppointments) {
@@ -1044,6 +1073,65 @@ public class RemoteOperator
         });
     }
 
+    @Override
+    public Promise<ConflictPage> queryConflicts(User user, ConflictQuery query) {
+        RemoteStorage serv = getRemoteStorage();
+        return serv.queryConflicts(query).thenApply( page->
+        {
+            final List<Conflict> conflicts = page.getConflicts();
+            testResolve(conflicts);
+            setResolver(conflicts);
+            return page;
+        });
+    }
+
+    @Override
+    public Promise<SearchResult> search(User user, SearchQuery query) {
+        RemoteStorage serv = getRemoteStorage();
+        return serv.search(query).thenApply( result->
+        {
+            for (Allocatable allocatable : result.getAllocatables()) {
+                ((AllocatableImpl) allocatable).setResolver(this);
+                ((AllocatableImpl) allocatable).setReadOnly();
+            }
+            for (Reservation reservation : result.getReservations()) {
+                ((ReservationImpl) reservation).setResolver(this);
+                ((ReservationImpl) reservation).setReadOnly();
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public Promise<Collection<Conflict>> getConflictsForReservations(Collection<Reservation> reservations, Collection<Reservation> ignoreList) {
+        final List<ReservationImpl> reservationList = new ArrayList<>();
+        for (Reservation reservation : reservations) {
+            if (!RaplaComponent.isTemplate(reservation)) {
+                reservationList.add((ReservationImpl) reservation);
+            }
+        }
+        if (reservationList.isEmpty()) {
+            return new ResolvedPromise<>(Collections.emptyList());
+        }
+        RemoteStorage serv = getRemoteStorage();
+        final ConflictCheckRequest job = new ConflictCheckRequest(reservationList, getIdList(ignoreList));
+        return serv.getConflictsForReservations(job).thenApply((conflicts) ->
+        {
+            // the conflicts can reference appointments of reservations that are not stored yet
+            EntityStore store = new EntityStore(this);
+            for (ReservationImpl reservation : reservationList) {
+                store.put(reservation);
+                for (Appointment appointment : reservation.getAppointments()) {
+                    store.put(appointment);
+                }
+            }
+            for (ConflictImpl conflict : conflicts) {
+                conflict.setResolver(store);
+            }
+            return new ArrayList<>(conflicts);
+        });
+    }
+
     @Override
     public Promise<Allocatable> doMerge(Allocatable selectedObject, Set<ReferenceInfo<Allocatable>> allocatableIds, User user) {
         String lastSyncedTime = getLastValidatedTimeServer();
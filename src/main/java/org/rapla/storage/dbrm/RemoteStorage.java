@@ -16,9 +16,15 @@ import org.jboss.resteasy.annotations.GZIP;
 import org.rapla.entities.domain.internal.AllocatableImpl;
 import org.rapla.entities.domain.internal.AppointmentImpl;
 import org.rapla.entities.domain.internal.ReservationImpl;
+import org.rapla.entities.dynamictype.internal.ClassificationFilterImpl;
 import org.rapla.facade.internal.ConflictImpl;
 import org.rapla.framework.RaplaException;
 import org.rapla.scheduler.Promise;
+import org.rapla.storage.ConflictPage;
+import org.rapla.storage.ConflictQuery;
+import org.rapla.storage.FreeBusyMatrix;
+import org.rapla.storage.SearchQuery;
+import org.rapla.storage.SearchResult;
 import org.rapla.storage.UpdateEvent;
 
 import javax.ws.rs.Consumes;
@@ -119,6 +125,7 @@ public interface RemoteStorage
         private Date end;
         private Map<String, String> annotations;
         private boolean requestsOnly = false;
+        private List<ClassificationFilterImpl> reservationFilters;
 
         public QueryAppointments(String[] ownerIds, String[] resources, Date start, Date end, Map<String, String> annotations, boolean requestsOnly)
         {
@@ -167,6 +174,17 @@ public interface RemoteStorage
         {
             return annotations;
         }
+
+        /** @return the filters the reservations must match or null if all reservations should be returned*/
+        public List<ClassificationFilterImpl> getReservationFilters()
+        {
+            return reservationFilters;
+        }
+
+        public void setReservationFilters(List<ClassificationFilterImpl> reservationFilters)
+        {
+            this.reservationFilters = reservationFilters;
+        }
     }
 
     @POST
@@ -228,6 +246,54 @@ public interface RemoteStorage
     @GZIP
     Promise<List<ConflictImpl>> getConflicts() ;
 
+    @POST
+    @Path("conflicts/query")
+    @Consumes({ MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_JSON })
+    @GZIP
+    Promise<ConflictPage> queryConflicts(ConflictQuery query);
+
+    @POST
+    @Path("search")
+    @Consumes({ MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_JSON })
+    @GZIP
+    Promise<SearchResult> search(SearchQuery query);
+
+    @POST
+    @Path("conflicts/reservations")
+    @Consumes({ MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_JSON })
+    @GZIP
+    Promise<List<ConflictImpl>> getConflictsForReservations(ConflictCheckRequest job);
+
+    class ConflictCheckRequest
+    {
+        private List<ReservationImpl> reservations;
+        private String[] ignoreReservationIds;
+
+        public ConflictCheckRequest()
+        {
+        }
+
+        public ConflictCheckRequest(List<ReservationImpl> reservations, String[] ignoreReservationIds)
+        {
+            super();
+            this.reservations = reservations;
+            this.ignoreReservationIds = ignoreReservationIds;
+        }
+
+        public List<ReservationImpl> getReservations()
+        {
+            return reservations;
+        }
+
+        public String[] getIgnoreReservationIds()
+        {
+            return ignoreReservationIds;
+        }
+    }
+
     @POST
     @Path("allocatable/bindings/first")
     @Consumes({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
@@ -276,6 +342,60 @@ public interface RemoteStorage
     @GZIP
     Promise<List<ReservationImpl>> getAllAllocatableBindings(AllocatableBindingsRequest job);
 
+    @POST
+    @Path("allocatable/freebusy")
+    @Consumes({ MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_JSON })
+    @GZIP
+    Promise<FreeBusyMatrix> getFreeBusy(FreeBusyRequest job);
+
+    class FreeBusyRequest
+    {
+        private String[] allocatableIds;
+        private Date start;
+        private Date end;
+        private int slotMinutes;
+        private String[] reservationIds;
+
+        public FreeBusyRequest()
+        {
+        }
+
+        public FreeBusyRequest(String[] allocatableIds, Date start, Date end, int slotMinutes, String[] reservationIds)
+        {
+            this.allocatableIds = allocatableIds;
+            this.start = start;
+            this.end = end;
+            this.slotMinutes = slotMinutes;
+            this.reservationIds = reservationIds;
+        }
+
+        public String[] getAllocatableIds()
+        {
+            return allocatableIds;
+        }
+
+        public Date getStart()
+        {
+            return start;
+        }
+
+        public Date getEnd()
+        {
+            return end;
+        }
+
+        public int getSlotMinutes()
+        {
+            return slotMinutes;
+        }
+
+        public String[] getReservationIds()
+        {
+            return reservationIds;
+        }
+    }
+
     @POST
     @Path("allocatable/date/next")
     @Consumes({ MediaType.APPLICATION_JSON })
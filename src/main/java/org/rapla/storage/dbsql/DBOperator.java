@@ -20,6 +20,7 @@ import org.rapla.entities.Category;
 import org.rapla.entities.Entity;
 import org.rapla.entities.Timestamp;
 import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.domain.permission.PermissionExtension;
 import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
@@ -58,11 +59,14 @@ import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -87,6 +91,11 @@ import java.util.Set;
     private String connectionName;
     Provider<ImportExportManager> importExportManager;
 
+    /** maximum number of dispatches that are stored together in one transaction*/
+    static final int MAX_GROUP_COMMIT_SIZE = 50;
+    // dispatches waiting for the write lock, the dispatch that gets the lock stores the waiting ones with its own
+    private final Deque<StoreRequest> pendingDispatches = new ArrayDeque<>();
+
     public DBOperator(Logger logger, PromiseWait promiseWait,RaplaResources i18n, RaplaLocale locale, final CommandScheduler scheduler, Map<String, FunctionFactory> functionFactoryMap,
             Provider<ImportExportManager> importExportManager, DataSource dataSource, Set<PermissionExtension> permissionExtensions)
     {
@@ -682,108 +691,240 @@ import java.util.Set;
 
     public void dispatch(UpdateEvent evt) throws RaplaException
     {
-        RaplaLock.WriteLock writeLock = writeLockIfLoaded("Dispatching " + evt.toString());
+        final StoreRequest request = new StoreRequest(evt);
+        synchronized (pendingDispatches)
+        {
+            pendingDispatches.add(request);
+        }
+        RaplaLock.WriteLock writeLock;
+        try
+        {
+            writeLock = writeLockIfLoaded("Dispatching " + evt.toString());
+        }
+        catch (RaplaException ex)
+        {
+            if (removePending(request))
+            {
+                throw ex;
+            }
+            // another dispatch already stores the request
+            request.await();
+            request.throwError();
+            return;
+        }
+        try
+        {
+            // the dispatches that waited for the lock are stored together, so the request can be done already
+            while (!request.isDone())
+            {
+                storeNextGroup();
+            }
+        }
+        catch (RaplaException ex)
+        {
+            removePending(request);
+            throw ex;
+        }
+        finally
+        {
+            lockManager.unlock(writeLock);
+        }
+        request.throwError();
+        // TODO check if still needed
+        //fireStorageUpdated(result);
+    }
+
+    private boolean removePending(StoreRequest request)
+    {
+        synchronized (pendingDispatches)
+        {
+            return pendingDispatches.remove(request);
+        }
+    }
+
+    /**
+     * Stores the next pending dispatches in one transaction. Dispatches are grouped in the order of their arrival until a dispatch changes
+     * an entity that is already in the group or needs its own group, because it can change the result of the checks of other dispatches.
+     * Each dispatch is checked one by one and gets its own savepoint, so a failing dispatch doesn't fail the others.
+     */
+    private void storeNextGroup() throws RaplaException
+    {
+        final List<StoreRequest> polled = new ArrayList<>();
+        final List<StoreRequest> group = new ArrayList<>();
+        final Connection connection = createConnection();
         try
         {
-            //Date since = lastUpdated;
-            preprocessEventStorage(evt);
-            Collection<Entity> storeObjects = evt.getStoreObjects();
-            List<PreferencePatch> preferencePatches = evt.getPreferencePatches();
-            Collection<ReferenceInfo> removeObjects = evt.getRemoveIds();
-            if (storeObjects.isEmpty() && preferencePatches.isEmpty() && removeObjects.isEmpty())
+            final int maxGroupSize = supportsSavepoints(connection) ? MAX_GROUP_COMMIT_SIZE : 1;
+            final Set<ReferenceInfo> groupIds = new HashSet<>();
+            boolean groupClosed = false;
+            while (!groupClosed && group.size() < maxGroupSize)
+            {
+                final StoreRequest request;
+                synchronized (pendingDispatches)
+                {
+                    request = pendingDispatches.peek();
+                    if (request == null)
+                    {
+                        break;
+                    }
+                    final Set<ReferenceInfo> ids = request.getEventIds();
+                    groupClosed = request.needsOwnGroup();
+                    if (!group.isEmpty() && (groupClosed || !Collections.disjoint(groupIds, ids)))
+                    {
+                        break;
+                    }
+                    pendingDispatches.poll();
+                    polled.add(request);
+                    groupIds.addAll(ids);
+                }
+                try
+                {
+                    preprocessEventStorage(request.evt);
+                    request.readEvent();
+                }
+                catch (RaplaException | RuntimeException ex)
+                {
+                    request.error = ex;
+                    continue;
+                }
+                if (!request.isEmpty())
+                {
+                    group.add(request);
+                }
+            }
+            if (group.isEmpty())
             {
                 return;
             }
-            Connection connection = createConnection();
             try
             {
-                dbStore(storeObjects, preferencePatches, removeObjects, connection, evt.getUserId());
-                try
+                dbStore(group, connection);
+            }
+            catch (RaplaException ex)
+            {
+                if (group.size() == 1)
+                {
+                    group.get(0).error = ex;
+                }
+                else
                 {
-                    RefreshObject refreshObject = readRefreshInfoFromDb(connection);
-                    if (refreshObject != null)
+                    // the group was rolled back, so each dispatch is stored on its own
+                    getLogger().warn("Could not store " + group.size() + " dispatches together, storing them one by one. " + ex.getMessage());
+                    for (StoreRequest request : group)
                     {
-                        refreshWithoutLock(refreshObject);
+                        if (request.error != null)
+                        {
+                            continue;
+                        }
+                        try
+                        {
+                            dbStore(Collections.singletonList(request), connection);
+                        }
+                        catch (RaplaException e)
+                        {
+                            request.error = e;
+                        }
                     }
                 }
-                catch (SQLException e)
+            }
+            try
+            {
+                RefreshObject refreshObject = readRefreshInfoFromDb(connection);
+                if (refreshObject != null)
                 {
-                    getLogger().error("Could not load update from db. Will be loaded afterwards", e);
+                    refreshWithoutLock(refreshObject);
                 }
             }
-            finally
+            catch (SQLException e)
             {
-                close(connection);
+                getLogger().error("Could not load update from db. Will be loaded afterwards", e);
             }
         }
+        catch (RuntimeException ex)
+        {
+            for (StoreRequest request : polled)
+            {
+                if (request.error == null)
+                {
+                    request.error = ex;
+                }
+            }
+            throw ex;
+        }
         finally
         {
-            lockManager.unlock(writeLock);
+            close(connection);
+            for (StoreRequest request : polled)
+            {
+                request.finish();
+            }
+        }
+    }
+
+    private boolean supportsSavepoints(Connection connection)
+    {
+        if (!bSupportsTransactions)
+        {
+            return false;
+        }
+        try
+        {
+            return connection.getMetaData().supportsSavepoints();
+        }
+        catch (SQLException ex)
+        {
+            return false;
         }
-        // TODO check if still needed
-        //fireStorageUpdated(result);
     }
 
     private void dbStore(Collection<Entity> storeObjects, List<PreferencePatch> preferencePatches, Collection<ReferenceInfo> removeObjects,
             Connection connection, String userId) throws RaplaException
     {
-        if (( storeObjects == null || storeObjects.isEmpty()) && (preferencePatches == null || preferencePatches.isEmpty())
-                && (removeObjects == null || removeObjects.isEmpty()))
+        final StoreRequest request = new StoreRequest(storeObjects, preferencePatches, removeObjects, userId);
+        if (request.isEmpty())
         {
             return;
         }
+        dbStore(Collections.singletonList(request), connection);
+        request.throwError();
+    }
+
+    /** stores the requests in one transaction. If a request of a group with more than one request fails, only its changes are rolled back and the error is set in the request*/
+    private void dbStore(List<StoreRequest> group, Connection connection) throws RaplaException
+    {
         final LinkedHashSet<ReferenceInfo> ids = new LinkedHashSet<>();
-        if ( storeObjects != null ) {
-            for (Entity entity : storeObjects) {
-                ids.add(entity.getReference());
-            }
-        }
-        if ( removeObjects != null ) {
-            for (ReferenceInfo referenceInfo : removeObjects) {
-                ids.add(referenceInfo);
-            }
-        }
-        if ( preferencePatches != null ) {
-            for (PreferencePatch patch : preferencePatches) {
-                ids.add(patch.getReference());
-            }
+        for (StoreRequest request : group)
+        {
+            ids.addAll(request.getIds());
         }
-
         final boolean needsGlobalLock = containsDynamicType(ids);
+        final boolean useSavepoints = group.size() > 1;
         Date connectionTimestamp = null;
         final Collection<String> lockIds = needsGlobalLock ? Collections.singletonList(LockStorage.GLOBAL_LOCK) : getLockIds(ids);
         RaplaSQL raplaSQLOutput = new RaplaSQL(createOutputContext(cache));
-        Map<Entity,Entity> storeMap = new LinkedHashMap<>();
         try
         {
             connectionTimestamp = raplaSQLOutput.getDatabaseTimestamp(connection);
-            User lastChangedBy = (userId != null) ? resolve(userId, User.class) : null;
-            for (Entity e : storeObjects)
+            raplaSQLOutput.requestLocks(connection, connectionTimestamp, lockIds, null, !needsGlobalLock);
+            getLogger().debug("Locks requested storing");
+            for (StoreRequest request : group)
             {
-                final Entity oldEntity = tryResolve(e.getReference());
-
-                if (e instanceof ModifiableTimestamp)
+                final Savepoint savepoint = useSavepoints ? connection.setSavepoint() : null;
+                try
                 {
-                    ModifiableTimestamp modifiableTimestamp = (ModifiableTimestamp) e;
-                    if ( lastChangedBy != null)
-                    {
-                        modifiableTimestamp.setLastChangedBy(lastChangedBy);
-                    }
-                    if ( oldEntity == null)
+                    dbStore(request, raplaSQLOutput, connection, connectionTimestamp);
+                }
+                catch (Exception ex)
+                {
+                    if (savepoint == null)
                     {
-                        modifiableTimestamp.setCreateDate( connectionTimestamp );
+                        throw ex;
                     }
+                    connection.rollback(savepoint);
+                    getLogger().error("Doing rollback for: " + ex.getMessage());
+                    request.error = new RaplaDBException(getI18n().getString("error.rollback"), ex);
                 }
-                storeMap.put( e, oldEntity);
-            }
-            raplaSQLOutput.requestLocks(connection, connectionTimestamp, lockIds, null, !needsGlobalLock);
-            for (ReferenceInfo id : removeObjects)
-            {
-                raplaSQLOutput.remove(connection, id, connectionTimestamp);
             }
-            getLogger().debug("Locks requested storing");
-            raplaSQLOutput.store(connection, storeMap, connectionTimestamp);
-            raplaSQLOutput.storePatches(connection, preferencePatches, connectionTimestamp);
             if (bSupportsTransactions)
             {
                 getLogger().debug("Commiting");
@@ -833,6 +974,177 @@ import java.util.Set;
         }
     }
 
+    private void dbStore(StoreRequest request, RaplaSQL raplaSQLOutput, Connection connection, Date connectionTimestamp) throws Exception
+    {
+        Map<Entity,Entity> storeMap = new LinkedHashMap<>();
+        User lastChangedBy = (request.userId != null) ? resolve(request.userId, User.class) : null;
+        for (Entity e : request.storeObjects)
+        {
+            final Entity oldEntity = tryResolve(e.getReference());
+
+            if (e instanceof ModifiableTimestamp)
+            {
+                ModifiableTimestamp modifiableTimestamp = (ModifiableTimestamp) e;
+                if ( lastChangedBy != null)
+                {
+                    modifiableTimestamp.setLastChangedBy(lastChangedBy);
+                }
+                if ( oldEntity == null)
+                {
+                    modifiableTimestamp.setCreateDate( connectionTimestamp );
+                }
+            }
+            storeMap.put( e, oldEntity);
+        }
+        for (ReferenceInfo id : request.removeObjects)
+        {
+            raplaSQLOutput.remove(connection, id, connectionTimestamp);
+        }
+        raplaSQLOutput.store(connection, storeMap, connectionTimestamp);
+        raplaSQLOutput.storePatches(connection, request.preferencePatches, connectionTimestamp);
+    }
+
+    /** the changes of one dispatch or store. The error is set if the changes could not be stored*/
+    private static final class StoreRequest
+    {
+        private final UpdateEvent evt;
+        private final String userId;
+        private Collection<Entity> storeObjects;
+        private List<PreferencePatch> preferencePatches;
+        private Collection<ReferenceInfo> removeObjects;
+        private Exception error;
+        private boolean done;
+
+        private StoreRequest(UpdateEvent evt)
+        {
+            this.evt = evt;
+            this.userId = evt.getUserId();
+        }
+
+        private StoreRequest(Collection<Entity> storeObjects, List<PreferencePatch> preferencePatches, Collection<ReferenceInfo> removeObjects, String userId)
+        {
+            this.evt = null;
+            this.userId = userId;
+            this.storeObjects = storeObjects != null ? storeObjects : Collections.emptyList();
+            this.preferencePatches = preferencePatches != null ? preferencePatches : Collections.emptyList();
+            this.removeObjects = removeObjects != null ? removeObjects : Collections.emptyList();
+        }
+
+        /** reads the changes from the event, after the closure was added*/
+        private void readEvent() throws RaplaException
+        {
+            storeObjects = evt.getStoreObjects();
+            preferencePatches = evt.getPreferencePatches();
+            removeObjects = evt.getRemoveIds();
+        }
+
+        private boolean isEmpty()
+        {
+            return storeObjects.isEmpty() && preferencePatches.isEmpty() && removeObjects.isEmpty();
+        }
+
+        private Set<ReferenceInfo> getIds()
+        {
+            return getIds(storeObjects, preferencePatches, removeObjects);
+        }
+
+        /** the ids of the event before the closure is added*/
+        private Set<ReferenceInfo> getEventIds()
+        {
+            try
+            {
+                return getIds(evt.getStoreObjects(), evt.getPreferencePatches(), evt.getRemoveIds());
+            }
+            catch (RaplaException ex)
+            {
+                return Collections.emptySet();
+            }
+        }
+
+        /**
+         * The dispatches of a group are checked against the cache before the earlier dispatches of the group are stored.
+         * Removes and changes of types and categories can change other entities through their closure. Users are checked for unique usernames
+         * and the groups of users and the permissions of allocatables are used by the checks of other dispatches. So these dispatches are checked and stored alone.
+         */
+        private boolean needsOwnGroup()
+        {
+            try
+            {
+                if (!evt.getRemoveIds().isEmpty())
+                {
+                    return true;
+                }
+            }
+            catch (RaplaException ex)
+            {
+                return true;
+            }
+            for (Entity entity : evt.getStoreObjects())
+            {
+                final Class<? extends Entity> typeClass = entity.getTypeClass();
+                if (typeClass == DynamicType.class || typeClass == Category.class || typeClass == User.class || typeClass == Allocatable.class)
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static Set<ReferenceInfo> getIds(Collection<Entity> storeObjects, List<PreferencePatch> preferencePatches, Collection<ReferenceInfo> removeObjects)
+        {
+            final LinkedHashSet<ReferenceInfo> ids = new LinkedHashSet<>();
+            for (Entity entity : storeObjects)
+            {
+                ids.add(entity.getReference());
+            }
+            ids.addAll(removeObjects);
+            for (PreferencePatch patch : preferencePatches)
+            {
+                ids.add(patch.getReference());
+            }
+            return ids;
+        }
+
+        private synchronized boolean isDone()
+        {
+            return done;
+        }
+
+        private synchronized void finish()
+        {
+            done = true;
+            notifyAll();
+        }
+
+        private synchronized void await() throws RaplaException
+        {
+            try
+            {
+                while (!done)
+                {
+                    wait();
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new RaplaException(ex.getMessage(), ex);
+            }
+        }
+
+        private void throwError() throws RaplaException
+        {
+            if (error instanceof RuntimeException)
+            {
+                throw (RuntimeException) error;
+            }
+            if (error != null)
+            {
+                throw (RaplaException) error;
+            }
+        }
+    }
+
     private Collection<String> getLockIds(Collection<ReferenceInfo> ids)
     {
         List<String> result = new ArrayList<>();
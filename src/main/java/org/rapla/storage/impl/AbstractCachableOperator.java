@@ -30,10 +30,12 @@ import org.rapla.entities.dynamictype.Attribute;
 import org.rapla.entities.dynamictype.Classifiable;
 import org.rapla.entities.dynamictype.ClassificationFilter;
 import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.internal.ClassificationFilterPredicate;
 import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
 import org.rapla.entities.extensionpoints.FunctionFactory;
 import org.rapla.entities.internal.ModifiableTimestamp;
 import org.rapla.entities.storage.EntityReferencer;
+import org.rapla.entities.storage.CategoryHierarchy;
 import org.rapla.entities.storage.EntityResolver;
 import org.rapla.entities.storage.RefEntity;
 import org.rapla.entities.storage.ReferenceInfo;
@@ -80,7 +82,7 @@ import java.util.Set;
  * @see LocalCache
  */
 
-public abstract class AbstractCachableOperator implements StorageOperator
+public abstract class AbstractCachableOperator implements StorageOperator, CategoryHierarchy
 {
     final protected RaplaLocale raplaLocale;
     final protected LocalCache cache;
@@ -289,45 +291,48 @@ public abstract class AbstractCachableOperator implements StorageOperator
         final Collection<Reservation> ignoreList = Collections.singleton(reservation);
         final Promise<Map<ReferenceInfo<Allocatable>, Map<Appointment, Collection<Appointment>>>> allAllocatableBindingsPromise = getAllAllocatableBindings(allocatables,
                 appointments, ignoreList);
-        final Promise<Collection<Conflict>> promise = allAllocatableBindingsPromise.thenApply((map) ->
+        final Promise<Collection<Conflict>> promise = allAllocatableBindingsPromise.thenApply((map) -> createConflicts(reservation, map, today));
+        return promise;
+    }
+
+    /** creates the conflicts of the reservation from the bindings of its allocatables, as returned by {@link #getAllAllocatableBindings(Collection, Collection, Collection)} */
+    protected List<Conflict> createConflicts(Reservation reservation, Map<ReferenceInfo<Allocatable>, Map<Appointment, Collection<Appointment>>> map, Date today)
+    {
+        ArrayList<Conflict> conflictList = new ArrayList<>();
+        for (Map.Entry<ReferenceInfo<Allocatable>, Map<Appointment, Collection<Appointment>>> entry : map.entrySet())
         {
-            ArrayList<Conflict> conflictList = new ArrayList<>();
-            for (Map.Entry<ReferenceInfo<Allocatable>, Map<Appointment, Collection<Appointment>>> entry : map.entrySet())
+            ReferenceInfo<Allocatable> allocatableRef = entry.getKey();
+            Allocatable allocatable = tryResolve(allocatableRef);
+            if ( allocatable == null) {
+                continue;
+            }
+            String annotation = allocatable.getAnnotation(ResourceAnnotations.KEY_CONFLICT_CREATION);
+            boolean holdBackConflicts = annotation != null && annotation.equals(ResourceAnnotations.VALUE_CONFLICT_CREATION_IGNORE);
+            if (holdBackConflicts)
             {
-                ReferenceInfo<Allocatable> allocatableRef = entry.getKey();
-                Allocatable allocatable = tryResolve(allocatableRef);
-                if ( allocatable == null) {
-                    continue;
-                }
-                String annotation = allocatable.getAnnotation(ResourceAnnotations.KEY_CONFLICT_CREATION);
-                boolean holdBackConflicts = annotation != null && annotation.equals(ResourceAnnotations.VALUE_CONFLICT_CREATION_IGNORE);
-                if (holdBackConflicts)
-                {
-                    continue;
-                }
-                Map<Appointment, Collection<Appointment>> appointmentMap = entry.getValue();
-                for (Map.Entry<Appointment, Collection<Appointment>> appointmentEntry : appointmentMap.entrySet())
+                continue;
+            }
+            Map<Appointment, Collection<Appointment>> appointmentMap = entry.getValue();
+            for (Map.Entry<Appointment, Collection<Appointment>> appointmentEntry : appointmentMap.entrySet())
+            {
+                Appointment appointment = appointmentEntry.getKey();
+                if (reservation.hasAllocatedOn(allocatable, appointment))
                 {
-                    Appointment appointment = appointmentEntry.getKey();
-                    if (reservation.hasAllocatedOn(allocatable, appointment))
+                    Collection<Appointment> conflictionAppointments = appointmentEntry.getValue();
+                    if (conflictionAppointments != null)
                     {
-                        Collection<Appointment> conflictionAppointments = appointmentEntry.getValue();
-                        if (conflictionAppointments != null)
+                        for (Appointment conflictingAppointment : conflictionAppointments)
                         {
-                            for (Appointment conflictingAppointment : conflictionAppointments)
-                            {
 
-                                Appointment appointment1 = appointment;
-                                Appointment appointment2 = conflictingAppointment;
-                                ConflictImpl.checkAndAddConflicts(conflictList, allocatable, appointment1, appointment2, today);
-                            }
+                            Appointment appointment1 = appointment;
+                            Appointment appointment2 = conflictingAppointment;
+                            ConflictImpl.checkAndAddConflicts(conflictList, allocatable, appointment1, appointment2, today);
                         }
                     }
                 }
             }
-            return conflictList;
-        });
-        return promise;
+        }
+        return conflictList;
     }
 
     public Collection<Allocatable> getDependent(Collection<Allocatable> allocatables)
@@ -443,15 +448,16 @@ public abstract class AbstractCachableOperator implements StorageOperator
     protected Collection<Allocatable> getAllocatables(ClassificationFilter[] filters, int maxPerType) throws RaplaException
     {
         checkLoaded();
-        Collection<Allocatable> allocatables = new HashSet<>(cache.getAllocatables());
+        Collection<Allocatable> allocatables = new HashSet<>(getAllocatableCandidates(filters));
         Map<DynamicType,Integer> typeCount = new LinkedHashMap<>();
 
+            final ClassificationFilterPredicate filterPredicate = filters != null ? ClassificationFilterPredicate.compile(filters) : null;
             Iterator<? extends Classifiable> it = allocatables.iterator();
             while (it.hasNext())
             {
                 Classifiable classifiable = it.next();
                 // remove internal types if not specified in filters to remain backwards compatibility
-                if (filters != null &&!ClassificationFilter.Util.matches(filters, classifiable) || (filters == null && Classifiable.ClassifiableUtil.isInternalType(classifiable) ))
+                if (filterPredicate != null && !filterPredicate.test(classifiable) || (filters == null && Classifiable.ClassifiableUtil.isInternalType(classifiable) ))
                 {
                     if ( maxPerType > 0)
                     {
@@ -479,6 +485,12 @@ public abstract class AbstractCachableOperator implements StorageOperator
         return allocatables;
     }
 
+    /** @return the allocatables that are checked against the filters, all allocatables if not overridden*/
+    protected Collection<Allocatable> getAllocatableCandidates(ClassificationFilter[] filters)
+    {
+        return cache.getAllocatables();
+    }
+
     public User getUser(final String username) throws RaplaException
     {
         checkLoaded();
@@ -538,6 +550,12 @@ public abstract class AbstractCachableOperator implements StorageOperator
         return newPref;
     }
 
+    @Override
+    public Boolean isAncestorOf(Category ancestor, Category category)
+    {
+        return cache.getCategoryTreeIndex().isAncestorOf(ancestor, category);
+    }
+
     public Category getSuperCategory()
     {
         return cache.getSuperCategory();
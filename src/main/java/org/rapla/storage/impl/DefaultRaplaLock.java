@@ -7,6 +7,10 @@ import org.rapla.inject.InjectionContext;
 import org.rapla.logger.Logger;
 
 import javax.inject.Inject;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.Stack;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
@@ -18,15 +22,27 @@ public class DefaultRaplaLock implements RaplaLock
 {
     public static final int DEFAULT_READLOCK_TIMEOUT_SECONDS = 20;
     public static final int DEFAULT_WRITELOCK_TIMEOUT_SECONDS = 60;
-    final protected ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    /** locks held longer are logged with the stack of the holder*/
+    public static final long DEFAULT_SLOW_HOLD_MILLIS = 5000;
+    final protected ReadWriteLock readWriteLock;
     Stack<WriteLock> writeLocks = new Stack<>();
     Stack<ReadLock> readLocks = new Stack<>();
     Logger logger;
+    private final LockStatistics statistics = new LockStatistics();
+    private long slowHoldMillis = DEFAULT_SLOW_HOLD_MILLIS;
+    private ObjectName mbeanName;
 
     @Inject
     public DefaultRaplaLock(Logger raplaLogger)
+    {
+        this(raplaLogger, new ReentrantReadWriteLock());
+    }
+
+    /** @param readWriteLock the underlying lock, e.g. a lock whose read locks may be released by an other thread*/
+    public DefaultRaplaLock(Logger raplaLogger, ReadWriteLock readWriteLock)
     {
         this.logger = raplaLogger;
+        this.readWriteLock = readWriteLock;
     }
 
     public WriteLock writeLock(Class clazz, String name) throws RaplaException
@@ -34,14 +50,65 @@ public class DefaultRaplaLock implements RaplaLock
         return writeLock(clazz, name,DEFAULT_WRITELOCK_TIMEOUT_SECONDS);
     }
 
+    public LockStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    public void setSlowHoldMillis(long slowHoldMillis)
+    {
+        this.slowHoldMillis = slowHoldMillis;
+    }
+
+    /** registers the statistics of the lock in the platform MBeanServer with the passed name*/
+    public synchronized void registerMBean(String name)
+    {
+        if (mbeanName != null)
+        {
+            return;
+        }
+        try
+        {
+            final ObjectName objectName = new ObjectName("org.rapla:type=LockStatistics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(statistics, objectName);
+            mbeanName = objectName;
+        }
+        catch (JMException | RuntimeException ex)
+        {
+            // e.g. an other storage with the same name is running in the same vm
+            logger.warn("Could not register lock statistics " + name + ": " + ex.getMessage());
+        }
+    }
+
+    public synchronized void unregisterMBean()
+    {
+        if (mbeanName == null)
+        {
+            return;
+        }
+        try
+        {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(mbeanName))
+            {
+                server.unregisterMBean(mbeanName);
+            }
+        }
+        catch (JMException | RuntimeException ex)
+        {
+            logger.warn("Could not unregister lock statistics " + mbeanName + ": " + ex.getMessage());
+        }
+        mbeanName = null;
+    }
+
     @Override
     public ReadLock readLock(Class clazz, String name,int seconds) throws RaplaException
     {
         // Enabling the stack trace is a huge performance cost
         StackTraceElement[] stackTrace = logger.isTraceEnabled() ? getStackTrace() : new StackTraceElement[] {};
-        final long currentTime = System.currentTimeMillis();
-        final Lock lock = lock(this.readWriteLock.readLock(), seconds, true);
-        final ReadLock readLock = new ReadLock(lock,clazz, name, stackTrace, currentTime);
+        final String caller = LockStatistics.getCaller(clazz, name);
+        final Lock lock = lock(this.readWriteLock.readLock(), seconds, LockStatistics.Mode.read, caller);
+        final ReadLock readLock = new ReadLock(lock,clazz, name, stackTrace, System.currentTimeMillis());
         readLocks.add(readLock);
         return readLock;
     }
@@ -54,20 +121,26 @@ public class DefaultRaplaLock implements RaplaLock
         }
     }
 
-    private Lock lock(Lock lock, int seconds, boolean isRead) throws RaplaException
+    private Lock lock(Lock lock, int seconds, LockStatistics.Mode mode, String caller) throws RaplaException
     {
+        final boolean isRead = mode == LockStatistics.Mode.read;
         try
         {
             if (lock.tryLock())
             {
+                statistics.recordWait(mode, caller, 0);
                 return lock;
             }
+            final long waitStart = System.currentTimeMillis();
             if (lock.tryLock(seconds, TimeUnit.SECONDS))
             {
+                statistics.recordWait(mode, caller, System.currentTimeMillis() - waitStart);
                 return lock;
             }
             else
             {
+                statistics.recordWait(mode, caller, System.currentTimeMillis() - waitStart);
+                statistics.recordTimeout(mode, caller);
                 if (logger != null)
                 {
                     int logThreshholdTime = 0;
@@ -112,10 +185,11 @@ public class DefaultRaplaLock implements RaplaLock
     {
         final WriteLock lock;
         StackTraceElement[] stackTrace = logger.isDebugEnabled() ? getStackTrace() : new StackTraceElement[] {};
-        final long currentTime = System.currentTimeMillis();
+        final String caller = LockStatistics.getCaller(clazz, name);
         if (seconds > 0)
         {
-            lock = new WriteLock(lock(this.readWriteLock.writeLock(), seconds, false),clazz, name, stackTrace, currentTime);
+            final Lock writeLock = lock(this.readWriteLock.writeLock(), seconds, LockStatistics.Mode.write, caller);
+            lock = new WriteLock(writeLock,clazz, name, stackTrace, System.currentTimeMillis());
         }
         else
         {
@@ -124,7 +198,8 @@ public class DefaultRaplaLock implements RaplaLock
             boolean tryLock = writeLock.tryLock();
             if (tryLock)
             {
-                lock = new WriteLock(writeLock,clazz, name, stackTrace, currentTime);
+                statistics.recordWait(LockStatistics.Mode.write, caller, 0);
+                lock = new WriteLock(writeLock,clazz, name, stackTrace, System.currentTimeMillis());
             }
             else
             {
@@ -204,6 +279,7 @@ public class DefaultRaplaLock implements RaplaLock
         }
         ((Lock) lock.lock).unlock();
         readLocks.remove(lock);
+        recordHold(lock, LockStatistics.Mode.read);
     }
 
     public void unlock(WriteLock lock)
@@ -214,6 +290,25 @@ public class DefaultRaplaLock implements RaplaLock
         }
         ((Lock) lock.lock).unlock();
         writeLocks.remove(lock);
+        recordHold(lock, LockStatistics.Mode.write);
+    }
+
+    private void recordHold(AbstractLock lock, LockStatistics.Mode mode)
+    {
+        final long holdMillis = System.currentTimeMillis() - lock.getLockTime();
+        statistics.recordHold(mode, LockStatistics.getCaller(lock.lockClazz, lock.lockname), holdMillis);
+        if (holdMillis >= slowHoldMillis)
+        {
+            statistics.recordSlowHold();
+            // the stack of the lock call is only recorded in debug mode, otherwise the stack of the unlock shows the holder
+            final StackTraceElement[] stackTrace = lock.getStackTrace();
+            final RaplaSynchronizationException ex = new RaplaSynchronizationException("Lock held for " + holdMillis + " ms " + lock);
+            if (stackTrace != null && stackTrace.length > 0)
+            {
+                ex.setStackTrace(stackTrace);
+            }
+            logger.warn("Slow lock holder", ex);
+        }
     }
 
 }
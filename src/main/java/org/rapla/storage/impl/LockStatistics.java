@@ -0,0 +1,312 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the wait and hold times of a lock per lock mode and caller.
+ * The times are collected in histograms with fixed buckets, so recording only increments counters.
+ * The caller is the simple name of the locking class and the first word of the lock name, e.g. DBOperator.Dispatching
+ */
+public class LockStatistics implements LockStatisticsMBean
+{
+    /** upper limits of the histogram buckets in milliseconds, the last bucket counts all longer times*/
+    static final long[] BUCKET_LIMITS = { 1, 10, 100, 1000, 10000 };
+    private static final String[] BUCKET_NAMES = { "<1ms", "<10ms", "<100ms", "<1s", "<10s", ">=10s" };
+
+    public enum Mode
+    {
+        read, write
+    }
+
+    private final Map<String, CallerStatistics> callers = new ConcurrentHashMap<>();
+    private final LongAdder slowHolds = new LongAdder();
+
+    public static final class Histogram
+    {
+        private final LongAdder[] buckets = new LongAdder[BUCKET_LIMITS.length + 1];
+        private final LongAdder totalMillis = new LongAdder();
+        private final AtomicLong maxMillis = new AtomicLong();
+
+        private Histogram()
+        {
+            for (int i = 0; i < buckets.length; i++)
+            {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(long millis)
+        {
+            int bucket = 0;
+            while (bucket < BUCKET_LIMITS.length && millis >= BUCKET_LIMITS[bucket])
+            {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            totalMillis.add(millis);
+            maxMillis.accumulateAndGet(millis, Math::max);
+        }
+
+        public long getCount()
+        {
+            long count = 0;
+            for (LongAdder bucket : buckets)
+            {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        public long getTotalMillis()
+        {
+            return totalMillis.sum();
+        }
+
+        public long getMaxMillis()
+        {
+            return maxMillis.get();
+        }
+
+        /** @return the counts of the buckets, see {@link #getBucketNames()}*/
+        public long[] getBuckets()
+        {
+            final long[] result = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++)
+            {
+                result[i] = buckets[i].sum();
+            }
+            return result;
+        }
+
+        @Override
+        public String toString()
+        {
+            final long count = getCount();
+            final StringBuilder builder = new StringBuilder();
+            builder.append("avg=").append(count > 0 ? getTotalMillis() / count : 0).append("ms max=").append(getMaxMillis()).append("ms");
+            final long[] counts = getBuckets();
+            for (int i = 0; i < counts.length; i++)
+            {
+                builder.append(' ').append(BUCKET_NAMES[i]).append(':').append(counts[i]);
+            }
+            return builder.toString();
+        }
+    }
+
+    public static final class CallerStatistics
+    {
+        private final Mode mode;
+        private final String caller;
+        private final Histogram waits = new Histogram();
+        private final Histogram holds = new Histogram();
+        private final LongAdder timeouts = new LongAdder();
+
+        private CallerStatistics(Mode mode, String caller)
+        {
+            this.mode = mode;
+            this.caller = caller;
+        }
+
+        public Mode getMode()
+        {
+            return mode;
+        }
+
+        public String getCaller()
+        {
+            return caller;
+        }
+
+        public Histogram getWaits()
+        {
+            return waits;
+        }
+
+        public Histogram getHolds()
+        {
+            return holds;
+        }
+
+        public long getTimeouts()
+        {
+            return timeouts.sum();
+        }
+
+        @Override
+        public String toString()
+        {
+            return mode + " " + caller + " count=" + holds.getCount() + " timeouts=" + getTimeouts() + " wait[" + waits + "] hold[" + holds + "]";
+        }
+    }
+
+    public static String[] getBucketNames()
+    {
+        return BUCKET_NAMES.clone();
+    }
+
+    public static String getCaller(Class callerClass, String name)
+    {
+        final String className = callerClass != null ? callerClass.getSimpleName() : "";
+        if (name == null)
+        {
+            return className;
+        }
+        final int space = name.indexOf(' ');
+        return className + "." + (space >= 0 ? name.substring(0, space) : name);
+    }
+
+    public void recordWait(Mode mode, String caller, long millis)
+    {
+        get(mode, caller).waits.record(millis);
+    }
+
+    public void recordHold(Mode mode, String caller, long millis)
+    {
+        get(mode, caller).holds.record(millis);
+    }
+
+    public void recordTimeout(Mode mode, String caller)
+    {
+        get(mode, caller).timeouts.increment();
+    }
+
+    public void recordSlowHold()
+    {
+        slowHolds.increment();
+    }
+
+    /** @return the statistics of all callers sorted by mode and caller*/
+    public List<CallerStatistics> getCallers()
+    {
+        final List<CallerStatistics> result = new ArrayList<>(callers.values());
+        result.sort(Comparator.comparing(CallerStatistics::getMode).thenComparing(CallerStatistics::getCaller));
+        return result;
+    }
+
+    private CallerStatistics get(Mode mode, String caller)
+    {
+        return callers.computeIfAbsent(mode + " " + caller, (key) -> new CallerStatistics(mode, caller));
+    }
+
+    @Override
+    public long getReadLockCount()
+    {
+        return sum(Mode.read, (caller) -> caller.holds.getCount());
+    }
+
+    @Override
+    public long getWriteLockCount()
+    {
+        return sum(Mode.write, (caller) -> caller.holds.getCount());
+    }
+
+    @Override
+    public long getReadLockTimeouts()
+    {
+        return sum(Mode.read, CallerStatistics::getTimeouts);
+    }
+
+    @Override
+    public long getWriteLockTimeouts()
+    {
+        return sum(Mode.write, CallerStatistics::getTimeouts);
+    }
+
+    @Override
+    public long getSlowHolds()
+    {
+        return slowHolds.sum();
+    }
+
+    @Override
+    public long getMaxReadWaitMillis()
+    {
+        return max(Mode.read, (caller) -> caller.waits.getMaxMillis());
+    }
+
+    @Override
+    public long getMaxWriteWaitMillis()
+    {
+        return max(Mode.write, (caller) -> caller.waits.getMaxMillis());
+    }
+
+    @Override
+    public long getMaxReadHoldMillis()
+    {
+        return max(Mode.read, (caller) -> caller.holds.getMaxMillis());
+    }
+
+    @Override
+    public long getMaxWriteHoldMillis()
+    {
+        return max(Mode.write, (caller) -> caller.holds.getMaxMillis());
+    }
+
+    @Override
+    public String[] getCallerStatistics()
+    {
+        final List<CallerStatistics> list = getCallers();
+        final String[] result = new String[list.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = list.get(i).toString();
+        }
+        return result;
+    }
+
+    @Override
+    public void reset()
+    {
+        callers.clear();
+        slowHolds.reset();
+    }
+
+    private interface LongValue
+    {
+        long get(CallerStatistics caller);
+    }
+
+    private long sum(Mode mode, LongValue value)
+    {
+        long result = 0;
+        for (CallerStatistics caller : callers.values())
+        {
+            if (caller.mode == mode)
+            {
+                result += value.get(caller);
+            }
+        }
+        return result;
+    }
+
+    private long max(Mode mode, LongValue value)
+    {
+        long result = 0;
+        for (CallerStatistics caller : callers.values())
+        {
+            if (caller.mode == mode)
+            {
+                result = Math.max(result, value.get(caller));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,32 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage.impl;
+
+/** JMX view of the {@link LockStatistics} of a lock*/
+public interface LockStatisticsMBean
+{
+    long getReadLockCount();
+    long getWriteLockCount();
+    long getReadLockTimeouts();
+    long getWriteLockTimeouts();
+    long getSlowHolds();
+    long getMaxReadWaitMillis();
+    long getMaxWriteWaitMillis();
+    long getMaxReadHoldMillis();
+    long getMaxWriteHoldMillis();
+
+    /** one line for each lock mode and caller with the counts, the timeouts and the wait and hold time histograms*/
+    String[] getCallerStatistics();
+
+    void reset();
+}
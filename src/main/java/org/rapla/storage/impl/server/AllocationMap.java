@@ -4,9 +4,12 @@ import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.domain.Appointment;
 
 import java.util.Collection;
+import java.util.Date;
 import java.util.SortedSet;
 
 public interface AllocationMap {
 	SortedSet<Appointment> getAppointments(Allocatable allocatable);
+	/** returns the appointments of the allocatable that could overlap the interval. start and end can be null for an open interval*/
+	SortedSet<Appointment> getAppointments(Allocatable allocatable, Date start, Date end);
 	Collection<Allocatable> getAllocatables();
 }
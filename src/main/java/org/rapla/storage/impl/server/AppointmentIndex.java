@@ -0,0 +1,309 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage.impl.server;
+
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.AppointmentStartComparator;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Stores the appointments of one allocatable (or user) ordered by start and answers overlap queries
+ * in O(log n + k).
+ * <p>
+ * The appointments are kept in two structures: a {@link ConcurrentSkipListSet} ordered by start, which
+ * can be iterated without locking (e.g. by the conflict finder), and an AVL tree with the same order that
+ * is augmented with the maximum end of each subtree. Appointments with an infinite repeating are stored
+ * with {@link Long#MAX_VALUE} as end. The tree only yields candidates whose [start, maxEnd] interval
+ * touches the query interval, so callers must still test the exact overlap with
+ * {@link Appointment#overlaps(Date, Date)} to respect repeatings and exceptions.
+ * </p>
+ */
+final class AppointmentIndex implements Iterable<Appointment>
+{
+    private final Comparator<Appointment> comparator = new AppointmentStartComparator();
+    private final SortedSet<Appointment> appointments = new ConcurrentSkipListSet<>(comparator);
+    private final SortedSet<Appointment> unmodifiable = Collections.unmodifiableSortedSet(appointments);
+    private Node root;
+
+    static final class Node
+    {
+        final Appointment appointment;
+        final long start;
+        final long end;
+        long maxEnd;
+        int height = 1;
+        Node left;
+        Node right;
+
+        Node(Appointment appointment)
+        {
+            this.appointment = appointment;
+            this.start = appointment.getStart().getTime();
+            final Date maxEnd = appointment.getMaxEnd();
+            this.end = maxEnd != null ? maxEnd.getTime() : Long.MAX_VALUE;
+            this.maxEnd = end;
+        }
+    }
+
+    /** adds the appointment to the index. Returns false if an equal appointment is already stored.*/
+    public synchronized boolean add(Appointment appointment)
+    {
+        if (!appointments.add(appointment))
+        {
+            return false;
+        }
+        root = insert(root, new Node(appointment));
+        return true;
+    }
+
+    /** removes the appointment (or the stored appointment that is equal to it by start order) from the index. */
+    public synchronized boolean remove(Appointment appointment)
+    {
+        if (!appointments.remove(appointment))
+        {
+            return false;
+        }
+        root = delete(root, appointment);
+        return true;
+    }
+
+    public boolean isEmpty()
+    {
+        return appointments.isEmpty();
+    }
+
+    public int size()
+    {
+        return appointments.size();
+    }
+
+    /** @return a read only view of all stored appointments ordered by start*/
+    public SortedSet<Appointment> getAll()
+    {
+        return unmodifiable;
+    }
+
+    /** iterates over all appointments ordered by start. The iterator supports removal. */
+    @Override
+    public Iterator<Appointment> iterator()
+    {
+        final Iterator<Appointment> it = appointments.iterator();
+        return new Iterator<Appointment>()
+        {
+            Appointment current;
+
+            @Override
+            public boolean hasNext()
+            {
+                return it.hasNext();
+            }
+
+            @Override
+            public Appointment next()
+            {
+                current = it.next();
+                return current;
+            }
+
+            @Override
+            public void remove()
+            {
+                if (current == null)
+                {
+                    throw new IllegalStateException();
+                }
+                AppointmentIndex.this.remove(current);
+                current = null;
+            }
+        };
+    }
+
+    /**
+     * @param start the start of the query interval or null for no lower bound
+     * @param end the end of the query interval or null for no upper bound
+     * @return all appointments whose start is not after end and whose maximum end is not before start, ordered by start.
+     */
+    public SortedSet<Appointment> getOverlapping(Date start, Date end)
+    {
+        final SortedSet<Appointment> result = new TreeSet<>(comparator);
+        addOverlapping(start, end, result);
+        return result;
+    }
+
+    /** adds all candidates overlapping the interval to the passed collection. See {@link #getOverlapping(Date, Date)}*/
+    public synchronized void addOverlapping(Date start, Date end, Collection<Appointment> result)
+    {
+        final long s = start != null ? start.getTime() : Long.MIN_VALUE;
+        final long e = end != null ? end.getTime() : Long.MAX_VALUE;
+        collect(root, s, e, result);
+    }
+
+    private static void collect(Node node, long start, long end, Collection<Appointment> result)
+    {
+        while (node != null)
+        {
+            // no interval in this subtree reaches the query start
+            if (node.maxEnd < start)
+            {
+                return;
+            }
+            collect(node.left, start, end, result);
+            // all nodes in the right subtree start after this node
+            if (node.start > end)
+            {
+                return;
+            }
+            if (node.end >= start)
+            {
+                result.add(node.appointment);
+            }
+            node = node.right;
+        }
+    }
+
+    private Node insert(Node node, Node newNode)
+    {
+        if (node == null)
+        {
+            return newNode;
+        }
+        final int compare = comparator.compare(newNode.appointment, node.appointment);
+        if (compare < 0)
+        {
+            node.left = insert(node.left, newNode);
+        }
+        else
+        {
+            node.right = insert(node.right, newNode);
+        }
+        return balance(node);
+    }
+
+    private Node delete(Node node, Appointment appointment)
+    {
+        if (node == null)
+        {
+            return null;
+        }
+        final int compare = comparator.compare(appointment, node.appointment);
+        if (compare < 0)
+        {
+            node.left = delete(node.left, appointment);
+        }
+        else if (compare > 0)
+        {
+            node.right = delete(node.right, appointment);
+        }
+        else
+        {
+            if (node.left == null)
+            {
+                return node.right;
+            }
+            if (node.right == null)
+            {
+                return node.left;
+            }
+            Node min = node.right;
+            while (min.left != null)
+            {
+                min = min.left;
+            }
+            min.right = deleteMin(node.right);
+            min.left = node.left;
+            return balance(min);
+        }
+        return balance(node);
+    }
+
+    private Node deleteMin(Node node)
+    {
+        if (node.left == null)
+        {
+            return node.right;
+        }
+        node.left = deleteMin(node.left);
+        return balance(node);
+    }
+
+    private static int height(Node node)
+    {
+        return node != null ? node.height : 0;
+    }
+
+    private static void update(Node node)
+    {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        long maxEnd = node.end;
+        if (node.left != null && node.left.maxEnd > maxEnd)
+        {
+            maxEnd = node.left.maxEnd;
+        }
+        if (node.right != null && node.right.maxEnd > maxEnd)
+        {
+            maxEnd = node.right.maxEnd;
+        }
+        node.maxEnd = maxEnd;
+    }
+
+    private static Node balance(Node node)
+    {
+        update(node);
+        final int balance = height(node.left) - height(node.right);
+        if (balance > 1)
+        {
+            if (height(node.left.left) < height(node.left.right))
+            {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1)
+        {
+            if (height(node.right.right) < height(node.right.left))
+            {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static Node rotateRight(Node node)
+    {
+        final Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private static Node rotateLeft(Node node)
+    {
+        final Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+}
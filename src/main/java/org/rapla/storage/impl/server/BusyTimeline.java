@@ -0,0 +1,113 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage.impl.server;
+
+import org.rapla.entities.domain.AppointmentBlock;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The merged busy time of one or more allocatables. Overlapping and adjacent blocks are joined, so the timeline
+ * is a sorted list of disjoint intervals [start, end) and overlap tests are binary searches.
+ */
+final class BusyTimeline
+{
+    static final BusyTimeline EMPTY = new BusyTimeline(new long[0], new long[0]);
+
+    private final long[] starts;
+    private final long[] ends;
+
+    private BusyTimeline(long[] starts, long[] ends)
+    {
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    static BusyTimeline create(Collection<AppointmentBlock> blocks)
+    {
+        final int size = blocks.size();
+        if (size == 0)
+        {
+            return EMPTY;
+        }
+        // sort start and end pairs by start
+        final long[][] intervals = new long[size][];
+        int i = 0;
+        for (AppointmentBlock block : blocks)
+        {
+            intervals[i++] = new long[] { block.getStart(), block.getEnd() };
+        }
+        Arrays.sort(intervals, (a, b) -> Long.compare(a[0], b[0]));
+        long[] starts = new long[size];
+        long[] ends = new long[size];
+        int count = 0;
+        for (long[] interval : intervals)
+        {
+            if (count > 0 && interval[0] <= ends[count - 1])
+            {
+                ends[count - 1] = Math.max(ends[count - 1], interval[1]);
+            }
+            else
+            {
+                starts[count] = interval[0];
+                ends[count] = interval[1];
+                count++;
+            }
+        }
+        return new BusyTimeline(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+    }
+
+    public int size()
+    {
+        return starts.length;
+    }
+
+    public long getStart(int index)
+    {
+        return starts[index];
+    }
+
+    public long getEnd(int index)
+    {
+        return ends[index];
+    }
+
+    /** @return the index of the first busy interval that ends after the passed time or size() if there is none */
+    public int indexOfFirstEndingAfter(long time)
+    {
+        int index = Arrays.binarySearch(ends, time);
+        if (index < 0)
+        {
+            return -index - 1;
+        }
+        // ends are strictly increasing, so the next interval is the first that ends after time
+        return index + 1;
+    }
+
+    /** @return the end of the first busy interval that overlaps [start, end) or -1 if the interval is free*/
+    public long getConflictEnd(long start, long end)
+    {
+        final int index = indexOfFirstEndingAfter(start);
+        if (index < starts.length && starts[index] < end)
+        {
+            return ends[index];
+        }
+        return -1;
+    }
+
+    public boolean isBusy(long start, long end)
+    {
+        return getConflictEnd(start, end) >= 0;
+    }
+}
@@ -0,0 +1,368 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage.impl.server;
+
+import org.rapla.entities.Category;
+import org.rapla.entities.Entity;
+import org.rapla.entities.dynamictype.Attribute;
+import org.rapla.entities.dynamictype.AttributeType;
+import org.rapla.entities.dynamictype.Classifiable;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.ClassificationFilter;
+import org.rapla.entities.dynamictype.ClassificationFilterRule;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.internal.ClassificationImpl;
+import org.rapla.entities.storage.EntityResolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Inverted index from classification attribute values to the ids of the classifiables that have that value.
+ * <p>
+ * References, strings and booleans are indexed by value, ints and dates in a sorted map per attribute.
+ * {@link #getCandidates(ClassificationFilter[])} intersects the posting lists of the filter rules to a set of ids, that contains at least
+ * all classifiables matching the filters. The caller still has to check the filters on the candidates,
+ * rules that the index can't answer (e.g. contains or empty values) are ignored for the candidates.
+ * </p>
+ * The index is updated by the storage when classifiables or their dynamic types change.
+ */
+public class ClassificationIndex
+{
+    private final EntityResolver resolver;
+    // attribute id -> value -> ids
+    private final Map<String, Map<String, Set<String>>> values = new ConcurrentHashMap<>();
+    // attribute id -> number or date millis -> ids
+    private final Map<String, NavigableMap<Long, Set<String>>> numbers = new ConcurrentHashMap<>();
+    // id -> postings of the last indexed version, to remove them on updates
+    private final Map<String, List<Posting>> indexed = new ConcurrentHashMap<>();
+
+    private static final class Posting
+    {
+        private final String attributeId;
+        private final Object value;
+
+        private Posting(String attributeId, Object value)
+        {
+            this.attributeId = attributeId;
+            this.value = value;
+        }
+    }
+
+    public ClassificationIndex(EntityResolver resolver)
+    {
+        this.resolver = resolver;
+    }
+
+    public void clear()
+    {
+        values.clear();
+        numbers.clear();
+        indexed.clear();
+    }
+
+    /** adds the classifiable or updates the values of an already indexed classifiable*/
+    public void put(Entity entity)
+    {
+        final String id = entity.getId();
+        final List<Posting> postings = createPostings(((Classifiable) entity).getClassification());
+        for (Posting posting : postings)
+        {
+            getOrCreateIds(posting).add(id);
+        }
+        final List<Posting> oldPostings = postings.isEmpty() ? indexed.remove(id) : indexed.put(id, postings);
+        if (oldPostings != null)
+        {
+            for (Posting posting : oldPostings)
+            {
+                if (!contains(postings, posting))
+                {
+                    removeId(posting, id);
+                }
+            }
+        }
+    }
+
+    public void remove(String id)
+    {
+        final List<Posting> oldPostings = indexed.remove(id);
+        if (oldPostings != null)
+        {
+            for (Posting posting : oldPostings)
+            {
+                removeId(posting, id);
+            }
+        }
+    }
+
+    /**
+     * @return the ids of all classifiables that can match one of the filters, or null if the index can't narrow down
+     * the classifiables of at least one filter. The result can contain ids that don't match the filters.
+     */
+    public Set<String> getCandidates(ClassificationFilter[] filters)
+    {
+        if (filters == null)
+        {
+            return null;
+        }
+        final Set<String> result = new HashSet<>();
+        for (ClassificationFilter filter : filters)
+        {
+            final Set<String> candidates = getCandidates(filter);
+            if (candidates == null)
+            {
+                return null;
+            }
+            result.addAll(candidates);
+        }
+        return result;
+    }
+
+    private Set<String> getCandidates(ClassificationFilter filter)
+    {
+        final List<Set<String>> ruleCandidates = new ArrayList<>();
+        final Iterator<? extends ClassificationFilterRule> it = filter.ruleIterator();
+        while (it.hasNext())
+        {
+            final Set<String> candidates = getCandidates(it.next());
+            if (candidates != null)
+            {
+                ruleCandidates.add(candidates);
+            }
+        }
+        if (ruleCandidates.isEmpty())
+        {
+            return null;
+        }
+        // start with the smallest posting list
+        ruleCandidates.sort((set1, set2) -> Integer.compare(set1.size(), set2.size()));
+        final Set<String> result = new HashSet<>(ruleCandidates.get(0));
+        for (int i = 1; i < ruleCandidates.size() && !result.isEmpty(); i++)
+        {
+            result.retainAll(ruleCandidates.get(i));
+        }
+        return result;
+    }
+
+    /** @return the union of the candidates of the rule conditions or null if one of the conditions can't be answered by the index */
+    private Set<String> getCandidates(ClassificationFilterRule rule)
+    {
+        final Attribute attribute = rule.getAttribute();
+        if (attribute == null)
+        {
+            return null;
+        }
+        final String attributeId = attribute.getId();
+        final AttributeType type = attribute.getType();
+        final String[] operators = rule.getOperators();
+        final Object[] ruleValues = rule.getValues();
+        final Set<String> result = new HashSet<>();
+        for (int i = 0; i < operators.length; i++)
+        {
+            final String operator = operators[i];
+            final Object ruleValue = ruleValues[i];
+            // empty rule values also match classifiables without values, which are not indexed
+            if (ruleValue == null)
+            {
+                return null;
+            }
+            if (type == AttributeType.CATEGORY || type == AttributeType.ALLOCATABLE)
+            {
+                final String ruleId = ((Entity) ruleValue).getId();
+                if (operator.equals("is") && type == AttributeType.CATEGORY)
+                {
+                    final Category category = resolver.tryResolve(ruleId, Category.class);
+                    addCategoryIds(attributeId, category != null ? category : (Category) ruleValue, result);
+                }
+                else if (operator.equals("=") || operator.equals("is"))
+                {
+                    result.addAll(getIds(attributeId, ruleId));
+                }
+                // other operators never match references
+            }
+            else if (type == AttributeType.STRING)
+            {
+                if (!operator.equals("is") && !operator.equals("="))
+                {
+                    return null;
+                }
+                result.addAll(getIds(attributeId, (String) ruleValue));
+            }
+            else if (type == AttributeType.BOOLEAN)
+            {
+                // false also matches classifiables without value
+                if (!((Boolean) ruleValue))
+                {
+                    return null;
+                }
+                result.addAll(getIds(attributeId, Boolean.TRUE.toString()));
+            }
+            else if (type == AttributeType.INT || type == AttributeType.DATE)
+            {
+                final long ruleLong = type == AttributeType.INT ? (Long) ruleValue : ((Date) ruleValue).getTime();
+                final NavigableMap<Long, Set<String>> sorted = numbers.get(attributeId);
+                if (sorted == null)
+                {
+                    continue;
+                }
+                final Map<Long, Set<String>> range;
+                if (operator.equals("<"))
+                {
+                    range = sorted.headMap(ruleLong, false);
+                }
+                else if (operator.equals(">"))
+                {
+                    range = sorted.tailMap(ruleLong, false);
+                }
+                else if (operator.equals(">="))
+                {
+                    range = sorted.tailMap(ruleLong, true);
+                }
+                else if (operator.equals("="))
+                {
+                    final Set<String> ids = sorted.get(ruleLong);
+                    range = ids != null ? Collections.singletonMap(ruleLong, ids) : Collections.emptyMap();
+                }
+                else
+                {
+                    // <= is evaluated as >= by the filter rules, so it is not answered here
+                    return null;
+                }
+                for (Set<String> ids : range.values())
+                {
+                    result.addAll(ids);
+                }
+            }
+            else
+            {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    private void addCategoryIds(String attributeId, Category category, Set<String> result)
+    {
+        result.addAll(getIds(attributeId, category.getId()));
+        for (Category child : category.getCategories())
+        {
+            addCategoryIds(attributeId, child, result);
+        }
+    }
+
+    private List<Posting> createPostings(Classification classification)
+    {
+        final List<Posting> postings = new ArrayList<>();
+        if (classification == null)
+        {
+            return postings;
+        }
+        final DynamicType type = classification.getType();
+        for (Attribute attribute : type.getAttributeIterable())
+        {
+            final AttributeType attributeType = attribute.getType();
+            final String attributeId = attribute.getId();
+            if (attributeType == AttributeType.CATEGORY || attributeType == AttributeType.ALLOCATABLE || attributeType == AttributeType.STRING)
+            {
+                for (String value : ((ClassificationImpl) classification).getValuesUnresolvedStrings(attribute))
+                {
+                    addPosting(postings, new Posting(attributeId, value));
+                }
+            }
+            else if (attributeType == AttributeType.BOOLEAN || attributeType == AttributeType.INT || attributeType == AttributeType.DATE)
+            {
+                for (Object value : classification.getValues(attribute))
+                {
+                    if (value instanceof Boolean)
+                    {
+                        addPosting(postings, new Posting(attributeId, value.toString()));
+                    }
+                    else if (value instanceof Long)
+                    {
+                        addPosting(postings, new Posting(attributeId, value));
+                    }
+                    else if (value instanceof Date)
+                    {
+                        addPosting(postings, new Posting(attributeId, ((Date) value).getTime()));
+                    }
+                }
+            }
+        }
+        return postings;
+    }
+
+    private static void addPosting(List<Posting> postings, Posting posting)
+    {
+        if (!contains(postings, posting))
+        {
+            postings.add(posting);
+        }
+    }
+
+    private static boolean contains(List<Posting> postings, Posting posting)
+    {
+        for (Posting other : postings)
+        {
+            if (other.attributeId.equals(posting.attributeId) && other.value.equals(posting.value))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Set<String> getIds(String attributeId, String value)
+    {
+        final Map<String, Set<String>> attributeValues = values.get(attributeId);
+        final Set<String> ids = attributeValues != null ? attributeValues.get(value) : null;
+        return ids != null ? ids : Collections.emptySet();
+    }
+
+    private Set<String> getOrCreateIds(Posting posting)
+    {
+        return getMap(posting.attributeId, posting.value instanceof Long, true).computeIfAbsent(posting.value, (value) -> ConcurrentHashMap.newKeySet());
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Map<Object, Set<String>> getMap(String attributeId, boolean sorted, boolean create)
+    {
+        if (sorted)
+        {
+            return create ? (Map) numbers.computeIfAbsent(attributeId, (id) -> new ConcurrentSkipListMap<>()) : (Map) numbers.get(attributeId);
+        }
+        return create ? (Map) values.computeIfAbsent(attributeId, (id) -> new ConcurrentHashMap<>()) : (Map) values.get(attributeId);
+    }
+
+    private void removeId(Posting posting, String id)
+    {
+        final Map<Object, Set<String>> map = getMap(posting.attributeId, posting.value instanceof Long, false);
+        if (map == null)
+        {
+            return;
+        }
+        map.computeIfPresent(posting.value, (value, ids) ->
+        {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+}
@@ -43,9 +43,13 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 class ConflictFinder {
 	AllocationMap  allocationMap;
@@ -54,22 +58,178 @@ class ConflictFinder {
     Logger logger;
     EntityResolver resolver;
     private final PermissionController permissionController;
+    // the conflict check window of the initialization
+    private final long initToday;
+    private final long initMaxCheck;
     public ConflictFinder( AllocationMap  allocationMap, Date today, Logger logger, EntityResolver resolver,  PermissionController permissionController)  {
+        this(allocationMap, today, logger, resolver, permissionController, 1);
+    }
+
+    /**
+     * @param parallelism the number of threads used to calculate the initial conflicts. Allocatables are independent, so with more than one thread
+     * they are distributed on a fork join pool. With 1 the conflicts are calculated in the calling thread.
+     */
+    public ConflictFinder( AllocationMap  allocationMap, final Date today, Logger logger, EntityResolver resolver,  PermissionController permissionController, int parallelism)  {
+        this(allocationMap, today, logger, resolver, permissionController, parallelism, null, null);
+    }
+
+    /**
+     * Starts with the conflicts of the snapshot instead of calculating all conflicts.
+     * @param snapshot the conflicts of a previous run or null if all conflicts should be calculated
+     * @param changedReservations the reservations changed after the snapshot was taken mapped to the allocatables they are allocated on. Only the conflicts of these
+     * reservations and of the reservations in the moved check window are calculated again. Conflicts of removed appointments are dropped.
+     */
+    public ConflictFinder( AllocationMap  allocationMap, final Date today, Logger logger, EntityResolver resolver,  PermissionController permissionController, int parallelism, ConflictSnapshot snapshot, Map<ReferenceInfo<Allocatable>,Set<ReferenceInfo<Reservation>>> changedReservations)  {
     	this.logger = logger;
     	this.allocationMap = allocationMap;
         this.permissionController = permissionController;
+        this.resolver = resolver;
+        this.initToday = today.getTime();
+        this.initMaxCheck = getMaxCheck();
     	conflictMap = new ConcurrentHashMap<>();
     	long startTime = System.currentTimeMillis();
-    	int conflictSize = 0;
-        for (Allocatable allocatable:allocationMap.getAllocatables())
-		{
-        	Map<ReferenceInfo<Conflict>,Conflict> newConflicts = calculateConflicts(allocatable, today);
-        	conflictMap.put( allocatable.getReference(), newConflicts);
-        	conflictSize+= newConflicts.size();
-		}
-        logger.info("Conflict initialization found " + conflictSize + " conflicts and took " + (System.currentTimeMillis()- startTime) + "ms. " ); 
-        this.resolver = resolver;
+        final List<Allocatable> allocatables = new ArrayList<>(allocationMap.getAllocatables());
+        final InitProgress progress = new InitProgress(allocatables.size(), startTime);
+        final Consumer<Allocatable> init;
+        if ( snapshot != null)
+        {
+            final Set<ReferenceInfo<Reservation>> allChanged = new HashSet<>();
+            for (Set<ReferenceInfo<Reservation>> reservations : changedReservations.values())
+            {
+                allChanged.addAll( reservations);
+            }
+            init = (allocatable) -> initConflicts(allocatable, today, progress, snapshot, initMaxCheck, allChanged, changedReservations.get(allocatable.getReference()));
+        }
+        else
+        {
+            init = (allocatable) -> initConflicts(allocatable, today, progress);
+        }
+        if ( parallelism > 1 && allocatables.size() > 1)
+        {
+            final ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try
+            {
+                pool.submit(() -> allocatables.parallelStream().forEach(init)).join();
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+        else
+        {
+            parallelism = 1;
+            for (Allocatable allocatable : allocatables)
+            {
+                init.accept(allocatable);
+            }
+        }
+        final String source = snapshot != null ? " from snapshot with " + snapshot.size() + " conflicts and " + progress.recalculated.get() + " recalculated resources" : "";
+        logger.info("Conflict initialization" + source + " found " + progress.conflicts.get() + " conflicts for " + allocatables.size() + " resources and took " + (System.currentTimeMillis()- startTime) + "ms using " + parallelism + " threads. " );
 	}
+
+    private void initConflicts(Allocatable allocatable, Date today, InitProgress progress)
+    {
+        Map<ReferenceInfo<Conflict>,Conflict> newConflicts = calculateConflicts(allocatable, today);
+        conflictMap.put( allocatable.getReference(), newConflicts);
+        reportProgress(progress, newConflicts.size());
+    }
+
+    private void initConflicts(Allocatable allocatable, Date today, InitProgress progress, ConflictSnapshot snapshot, long maxCheck, Set<ReferenceInfo<Reservation>> allChanged, Set<ReferenceInfo<Reservation>> changedOnAllocatable)
+    {
+        Map<ReferenceInfo<Conflict>,Conflict> conflictsBefore = new HashMap<>();
+        Set<ReferenceInfo<Reservation>> changed = new HashSet<>();
+        if ( changedOnAllocatable != null)
+        {
+            changed.addAll( changedOnAllocatable);
+        }
+        for (ConflictSnapshot.Entry entry : snapshot.getConflicts( allocatable.getId()))
+        {
+            Appointment appointment1 = getAppointment( new ReferenceInfo<>(entry.getAppointment1(), Appointment.class));
+            Appointment appointment2 = getAppointment( new ReferenceInfo<>(entry.getAppointment2(), Appointment.class));
+            // the appointment or its reservation was removed after the snapshot
+            if ( appointment1 == null || appointment2 == null || appointment1.getReservation() == null || appointment2.getReservation() == null)
+            {
+                continue;
+            }
+            Conflict conflict = new ConflictImpl( allocatable, appointment1, appointment2, today);
+            conflictsBefore.put( conflict.getReference(), conflict);
+            // a changed reservation can be no longer allocated on the allocatable
+            if ( allChanged.contains( conflict.getReservation1()))
+            {
+                changed.add( conflict.getReservation1());
+            }
+            if ( allChanged.contains( conflict.getReservation2()))
+            {
+                changed.add( conflict.getReservation2());
+            }
+        }
+        // conflicts of reservations at the old and new borders of the check window can differ
+        addReservations( allocatable, snapshot.getToday(), today.getTime(), changed);
+        if ( snapshot.getMaxCheck() != maxCheck)
+        {
+            addReservations( allocatable, DateTools.cutDate( Math.min( snapshot.getMaxCheck(), maxCheck)), DateTools.fillDate( Math.max( snapshot.getMaxCheck(), maxCheck)), changed);
+        }
+        Map<ReferenceInfo<Conflict>,Conflict> newConflicts;
+        if ( changed.isEmpty())
+        {
+            newConflicts = conflictsBefore.isEmpty() ? Collections.emptyMap() : conflictsBefore;
+        }
+        else
+        {
+            newConflicts = recalculateConflicts( allocatable, today, conflictsBefore, changed);
+            progress.recalculated.incrementAndGet();
+        }
+        conflictMap.put( allocatable.getReference(), newConflicts);
+        reportProgress(progress, newConflicts.size());
+    }
+
+    /** adds the reservations of all appointments of the allocatable that overlap the time between the two passed dates*/
+    private void addReservations(Allocatable allocatable, long time1, long time2, Set<ReferenceInfo<Reservation>> reservations)
+    {
+        if ( time1 == time2)
+        {
+            return;
+        }
+        for (Appointment appointment : allocationMap.getAppointments( allocatable, new Date( Math.min( time1, time2)), new Date( Math.max( time1, time2))))
+        {
+            final Reservation reservation = appointment.getReservation();
+            if ( reservation != null)
+            {
+                reservations.add( reservation.getReference());
+            }
+        }
+    }
+
+    private void reportProgress(InitProgress progress, int conflictCount)
+    {
+        progress.conflicts.addAndGet(conflictCount);
+        final int done = progress.done.incrementAndGet();
+        final int percent = (int) (done * 100L / progress.total);
+        final int reported = progress.reportedPercent.get();
+        // reports every 10 percent, but only for larger data sets
+        if (progress.total >= InitProgress.MIN_RESOURCES_FOR_REPORT && percent >= reported + 10 && percent < 100 && progress.reportedPercent.compareAndSet(reported, percent - percent % 10))
+        {
+            logger.info("Conflict initialization " + (percent - percent % 10) + "% done (" + done + " of " + progress.total + " resources, " + progress.conflicts.get() + " conflicts) after " + (System.currentTimeMillis() - progress.startTime) + "ms");
+        }
+    }
+
+    private static class InitProgress
+    {
+        static final int MIN_RESOURCES_FOR_REPORT = 100;
+        final int total;
+        final long startTime;
+        final AtomicInteger done = new AtomicInteger();
+        final AtomicInteger conflicts = new AtomicInteger();
+        final AtomicInteger reportedPercent = new AtomicInteger();
+        final AtomicInteger recalculated = new AtomicInteger();
+
+        InitProgress(int total, long startTime)
+        {
+            this.total = total;
+            this.startTime = startTime;
+        }
+    }
     
     public Conflict findConflict(ReferenceInfo<Conflict> ref)
     {
@@ -142,6 +302,93 @@ class ConflictFinder {
     }
 
 
+    /**
+     * Updates the conflicts of an allocatable after the passed reservations changed. Only the blocks of the changed appointments and the blocks of
+     * appointments near them (found with the interval index) are swept. Conflicts between unchanged reservations are kept.
+     */
+    private Map<ReferenceInfo<Conflict>,Conflict> recalculateConflicts(Allocatable allocatable, Date today, Map<ReferenceInfo<Conflict>,Conflict> conflictsBefore, Set<ReferenceInfo<Reservation>> changedReservations)
+    {
+        if ( isConflictIgnored(allocatable))
+        {
+            return Collections.emptyMap();
+        }
+        Map<ReferenceInfo<Conflict>,Conflict> conflictList = new HashMap<>();
+        for (Conflict conflict : conflictsBefore.values())
+        {
+            if ( changedReservations.contains( conflict.getReservation1()) || changedReservations.contains( conflict.getReservation2()))
+            {
+                continue;
+            }
+            // appointments that are removed from the store without a change of their reservation
+            if ( getAppointment( conflict.getAppointment1()) == null || getAppointment( conflict.getAppointment2()) == null)
+            {
+                continue;
+            }
+            conflictList.put( conflict.getReference(), conflict);
+        }
+        final long maxCheck = getMaxCheck();
+        final Set<Appointment> changedAppointments = new HashSet<>();
+        final Set<Appointment> otherAppointments = new HashSet<>();
+        for (ReferenceInfo<Reservation> reservationId : changedReservations)
+        {
+            final Reservation reservation = resolver.tryResolve( reservationId);
+            if ( reservation == null)
+            {
+                // removed reservations don't create new conflicts
+                continue;
+            }
+            for (Appointment appointment : reservation.getAppointments())
+            {
+                Date start = appointment.getStart();
+                if ( start.before( today))
+                {
+                    start = today;
+                }
+                final Date maxEnd = appointment.getMaxEnd();
+                final Date end = DateTools.fillDate( maxEnd == null || maxEnd.getTime() > maxCheck ? new Date( maxCheck) : maxEnd);
+                if ( !start.before( end))
+                {
+                    continue;
+                }
+                // the appointments in the index are the ones bound to the allocatable (or its dependents)
+                for (Appointment near : allocationMap.getAppointments( allocatable, start, end))
+                {
+                    final Reservation nearReservation = near.getReservation();
+                    if ( nearReservation != null && changedReservations.contains( nearReservation.getReference()))
+                    {
+                        changedAppointments.add( near);
+                    }
+                    else
+                    {
+                        otherAppointments.add( near);
+                    }
+                }
+            }
+        }
+        if ( !changedAppointments.isEmpty())
+        {
+            Collection<AppointmentBlock> blocks = new ArrayList<>();
+            createBlocks(today, maxCheck, changedAppointments, blocks, Long.MIN_VALUE, Long.MAX_VALUE);
+            if ( !blocks.isEmpty())
+            {
+                long rangeStart = Long.MAX_VALUE;
+                long rangeEnd = Long.MIN_VALUE;
+                for (AppointmentBlock block : blocks)
+                {
+                    rangeStart = Math.min( rangeStart, block.getStart());
+                    rangeEnd = Math.max( rangeEnd, block.getEnd());
+                }
+                createBlocks(today, maxCheck, otherAppointments, blocks, rangeStart, rangeEnd);
+                conflictList.putAll( sweepLine(allocatable, today, blocks, changedAppointments));
+            }
+        }
+        if ( conflictList.isEmpty())
+        {
+            return Collections.emptyMap();
+        }
+        return conflictList;
+    }
+
 //    private void updateConflictsOld(Allocatable allocatable, Date today, Set<Appointment> allAppointments, Set<Appointment> changedAppointments, Set<Conflict> conflictList) {
 //        Set<String> foundConflictIds = new HashSet<String>();
 //        //SortedSet<AppointmentBlock> allAppointmentBlocksSortedByStartDescending = null;//new TreeSet<AppointmentBlock>(new InverseComparator<AppointmentBlock>(new AppointmentBlockStartComparator())); 
@@ -271,6 +518,11 @@ class ConflictFinder {
 
     // the sweep-line algorithm
     public static Map<ReferenceInfo<Conflict>,Conflict> sweepLine(Allocatable allocatable, Date today, Collection<AppointmentBlock> intervals) {
+        return sweepLine(allocatable, today, intervals, null);
+    }
+
+    /** if changedAppointments is not null, only conflicts with at least one of the changed appointments are returned*/
+    public static Map<ReferenceInfo<Conflict>,Conflict> sweepLine(Allocatable allocatable, Date today, Collection<AppointmentBlock> intervals, Set<Appointment> changedAppointments) {
         Map<ReferenceInfo<Conflict>,Conflict> conflictList = new HashMap<>();//conflictMap.get(allocatable);
         Set<String> foundConflictIds = new HashSet<>();
         // generate N random intervals
@@ -304,6 +556,10 @@ class ConflictFinder {
                     {
                         continue;
                     }
+                    if ( changedAppointments != null && !changedAppointments.contains( appointment1) && !changedAppointments.contains( appointment2))
+                    {
+                        continue;
+                    }
                     if ( appointment2.overlapsAppointment(appointment1))
                     {
                         String id = ConflictImpl.createId(allocatable.getReference(), appointment1.getReference(), appointment2.getReference());
@@ -425,8 +681,17 @@ class ConflictFinder {
 //	}
 	
     private void createBlocks(Date today, Collection<Appointment> appointmentSet,  Collection<AppointmentBlock> allAppointmentBlocks) {
+        createBlocks(today, getMaxCheck(), appointmentSet, allAppointmentBlocks, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private static long getMaxCheck()
+    {
         // overlaps will be checked  260 weeks (5 years) from now on
-		long maxCheck = System.currentTimeMillis() + DateTools.MILLISECONDS_PER_WEEK * 260;
+        return System.currentTimeMillis() + DateTools.MILLISECONDS_PER_WEEK * 260;
+    }
+
+    /** creates the blocks that are checked for conflicts. If a range is passed, only blocks that overlap the range are created.*/
+    private void createBlocks(Date today, long maxCheck, Collection<Appointment> appointmentSet,  Collection<AppointmentBlock> allAppointmentBlocks, long rangeStart, long rangeEnd) {
 		//Appointment last = appointmentSet.last();
 		
 		// Get all time blocks of all appointments
@@ -467,7 +732,21 @@ class ConflictFinder {
 			{
 			    start = today;
 			}
-            appointment.createBlocks(start, DateTools.fillDate(maxEnd), allAppointmentBlocks);
+			Date end = DateTools.fillDate(maxEnd);
+			if ( rangeStart > start.getTime())
+			{
+			    start = new Date( rangeStart);
+			}
+			// the end must stay at midnight, because the blocks of daily repeatings depend on it
+			if ( rangeEnd != Long.MAX_VALUE && DateTools.fillDate( rangeEnd) < end.getTime())
+			{
+			    end = new Date( DateTools.fillDate( rangeEnd));
+			}
+			if ( !start.before( end))
+			{
+			    continue;
+			}
+            appointment.createBlocks(start, end, allAppointmentBlocks);
 		}
     }
 
@@ -497,6 +776,25 @@ class ConflictFinder {
 	}
 
 
+	/** @return all conflicts on the passed allocatables or all conflicts if null is passed. No permissions are checked*/
+	public Collection<Conflict> getConflictsOn( Collection<ReferenceInfo<Allocatable>> allocatables)
+	{
+	    if ( allocatables == null)
+	    {
+	        return getConflicts( (User) null);
+	    }
+	    Collection<Conflict> conflictList = new HashSet<>();
+	    for ( ReferenceInfo<Allocatable> allocatable: allocatables)
+	    {
+	        Map<ReferenceInfo<Conflict>,Conflict> set = conflictMap.get( allocatable);
+	        if ( set != null)
+	        {
+	            conflictList.addAll( set.values());
+	        }
+	    }
+	    return conflictList;
+	}
+
 	private boolean endsBefore(Conflict conflict,Date date )
 	{
 		Appointment appointment1 = getAppointment( conflict.getAppointment1());
@@ -616,7 +914,10 @@ class ConflictFinder {
     		}
             Allocatable allocatable = resolver.tryResolve( allocatableId);
 			Map<ReferenceInfo<Conflict>,Conflict> conflictListAfter;
-            if  (allocatable != null) {
+            final Set<ReferenceInfo<Reservation>> changedReservations = bindingsResult.getChangedReservations(allocatableId);
+            if  (allocatable != null && changedReservations != null && conflictMap.containsKey( allocatableId)) {
+                conflictListAfter = recalculateConflicts(allocatable, today, conflictListBefore, changedReservations);
+            } else if  (allocatable != null) {
                 conflictListAfter = calculateConflicts(allocatable, today);
             } else {
                 conflictListAfter = new ConcurrentHashMap<>();
@@ -757,6 +1058,24 @@ class ConflictFinder {
 //		return foundAppointment;
 //	}
 
+	/**
+	 * @param timestamp all changes before or at the timestamp must be included in the current conflicts
+	 */
+	public ConflictSnapshot createSnapshot(String dataVersion, Date timestamp)
+	{
+	    // conflicts of unchanged allocatables are only checked in the window of the initialization
+	    ConflictSnapshot snapshot = new ConflictSnapshot(dataVersion, timestamp.getTime(), initToday, initMaxCheck);
+	    for (Map.Entry<ReferenceInfo<Allocatable>,Map<ReferenceInfo<Conflict>,Conflict>> entry: conflictMap.entrySet())
+	    {
+	        final String allocatableId = entry.getKey().getId();
+	        for (Conflict conflict : entry.getValue().values())
+	        {
+	            snapshot.addConflict(allocatableId, conflict.getAppointment1().getId(), conflict.getAppointment2().getId());
+	        }
+	    }
+	    return snapshot;
+	}
+
 	public Set<ReferenceInfo<Conflict>> removeOldConflicts(Date today)
 	{
         Set<ReferenceInfo<Conflict>> result = new LinkedHashSet<>();
@@ -0,0 +1,180 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage.impl.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The conflicts of all allocatables at a point in time, so that the server can restart without calculating all conflicts again.
+ * <p>
+ * Besides the conflicts (stored as allocatable and appointment ids) the snapshot records the timestamp up to which changes are included,
+ * the conflict check window it was calculated for and a data version, that the storage uses to check that the snapshot belongs to the stored data.
+ * On startup only the reservations changed after the timestamp and the reservations in the moved check window are calculated again.
+ * </p>
+ * The text format is a header of key=value lines, an empty line and one line per conflict with the tab separated allocatable and appointment ids.
+ */
+public class ConflictSnapshot
+{
+    static final String FORMAT_VERSION = "1";
+
+    private final String dataVersion;
+    private final long timestamp;
+    private final long today;
+    private final long maxCheck;
+    private final Map<String, List<Entry>> conflicts = new LinkedHashMap<>();
+
+    public static class Entry
+    {
+        private final String appointment1;
+        private final String appointment2;
+
+        Entry(String appointment1, String appointment2)
+        {
+            this.appointment1 = appointment1;
+            this.appointment2 = appointment2;
+        }
+
+        public String getAppointment1()
+        {
+            return appointment1;
+        }
+
+        public String getAppointment2()
+        {
+            return appointment2;
+        }
+    }
+
+    public ConflictSnapshot(String dataVersion, long timestamp, long today, long maxCheck)
+    {
+        this.dataVersion = dataVersion;
+        this.timestamp = timestamp;
+        this.today = today;
+        this.maxCheck = maxCheck;
+    }
+
+    /** @return the version of the stored data the snapshot belongs to, e.g. size and modification time of the data file*/
+    public String getDataVersion()
+    {
+        return dataVersion;
+    }
+
+    /** @return all changes before or at the timestamp are contained in the snapshot*/
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    /** @return the start of the conflict check window*/
+    public long getToday()
+    {
+        return today;
+    }
+
+    /** @return the end of the conflict check window*/
+    public long getMaxCheck()
+    {
+        return maxCheck;
+    }
+
+    public void addConflict(String allocatableId, String appointment1, String appointment2)
+    {
+        conflicts.computeIfAbsent(allocatableId, (id) -> new ArrayList<>()).add(new Entry(appointment1, appointment2));
+    }
+
+    /** @return the conflicts of the allocatable, an empty collection if it had no conflicts*/
+    public Collection<Entry> getConflicts(String allocatableId)
+    {
+        final List<Entry> entries = conflicts.get(allocatableId);
+        return entries != null ? entries : Collections.emptyList();
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for (List<Entry> entries : conflicts.values())
+        {
+            size += entries.size();
+        }
+        return size;
+    }
+
+    public void write(Writer writer) throws IOException
+    {
+        writer.write("version=" + FORMAT_VERSION + "\n");
+        writer.write("dataVersion=" + dataVersion + "\n");
+        writer.write("timestamp=" + timestamp + "\n");
+        writer.write("today=" + today + "\n");
+        writer.write("maxCheck=" + maxCheck + "\n");
+        writer.write("\n");
+        for (Map.Entry<String, List<Entry>> allocatableEntry : conflicts.entrySet())
+        {
+            final String allocatableId = allocatableEntry.getKey();
+            for (Entry entry : allocatableEntry.getValue())
+            {
+                writer.write(allocatableId + "\t" + entry.appointment1 + "\t" + entry.appointment2 + "\n");
+            }
+        }
+        writer.flush();
+    }
+
+    /** @throws IOException if the snapshot can't be read or has an unknown format*/
+    public static ConflictSnapshot read(Reader reader) throws IOException
+    {
+        final BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        final Map<String, String> header = new LinkedHashMap<>();
+        String line;
+        while ((line = in.readLine()) != null && !line.isEmpty())
+        {
+            final int index = line.indexOf('=');
+            if (index < 0)
+            {
+                throw new IOException("Invalid conflict snapshot header " + line);
+            }
+            header.put(line.substring(0, index), line.substring(index + 1));
+        }
+        if (!FORMAT_VERSION.equals(header.get("version")))
+        {
+            throw new IOException("Unsupported conflict snapshot version " + header.get("version"));
+        }
+        final ConflictSnapshot snapshot;
+        try
+        {
+            snapshot = new ConflictSnapshot(header.get("dataVersion"), Long.parseLong(header.get("timestamp")), Long.parseLong(header.get("today")),
+                    Long.parseLong(header.get("maxCheck")));
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new IOException("Invalid conflict snapshot header " + header, ex);
+        }
+        while ((line = in.readLine()) != null)
+        {
+            final String[] split = line.split("\t");
+            if (split.length != 3)
+            {
+                throw new IOException("Invalid conflict snapshot entry " + line);
+            }
+            snapshot.addConflict(split[0], split[1], split[2]);
+        }
+        return snapshot;
+    }
+}
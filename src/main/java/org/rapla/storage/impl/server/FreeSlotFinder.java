@@ -0,0 +1,188 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage.impl.server;
+
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.AppointmentBlock;
+import org.rapla.entities.domain.Repeating;
+import org.rapla.entities.domain.RepeatingType;
+import org.rapla.entities.domain.internal.AppointmentImpl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Searches the next start for an appointment at which it does not overlap a {@link BusyTimeline}.
+ * <p>
+ * Candidate starts lie on a grid of <code>1/rowsPerHour</code> hours (or days for whole day appointments) after the
+ * current start and are searched for one year. Candidates outside the worktime or on excluded weekdays are skipped.
+ * If a candidate collides with a busy interval the search jumps directly to the first grid point after that interval.
+ * Repeating appointments are moved as a whole and all blocks are tested. For repeatings without a fixed interval length,
+ * with exceptions or with a fixed end date the search advances one grid point at a time, because moving them changes the block pattern.
+ * </p>
+ */
+final class FreeSlotFinder
+{
+    /** blocks of never ending repeatings are only tested for this period, like in the conflict detection*/
+    static final long MAX_REPEATING_CHECK = DateTools.MILLISECONDS_PER_WEEK * 250;
+
+    private final Appointment appointment;
+    private final Integer worktimeStartMinutes;
+    private final Integer worktimeEndMinutes;
+    private final Integer[] excludedDays;
+    private final boolean wholeDay;
+    private final long step;
+    private final int maxSteps;
+    private final long firstStart;
+    private final long duration;
+
+    FreeSlotFinder(Appointment appointment, Integer worktimeStartMinutes, Integer worktimeEndMinutes, Integer[] excludedDays, Integer rowsPerHour)
+    {
+        this.appointment = appointment;
+        this.worktimeStartMinutes = worktimeStartMinutes;
+        this.worktimeEndMinutes = worktimeEndMinutes;
+        this.excludedDays = excludedDays;
+        final int rowsPerHourInt = (rowsPerHour == null || rowsPerHour <= 1) ? 1 : rowsPerHour;
+        this.wholeDay = appointment.isWholeDaysSet();
+        this.step = wholeDay ? DateTools.MILLISECONDS_PER_DAY : (DateTools.MILLISECONDS_PER_HOUR / rowsPerHourInt);
+        this.maxSteps = 366 * 24 * rowsPerHourInt;
+        this.firstStart = appointment.getStart().getTime();
+        this.duration = appointment.getEnd().getTime() - firstStart;
+    }
+
+    /** the start of the period for which the busy timeline is needed*/
+    long getSearchStart()
+    {
+        return firstStart + step;
+    }
+
+    /** the end of the period for which the busy timeline is needed*/
+    long getSearchEnd()
+    {
+        final long lastStart = firstStart + maxSteps * step;
+        final Repeating repeating = appointment.getRepeating();
+        if (repeating == null)
+        {
+            return lastStart + duration;
+        }
+        return lastStart + getRepeatingSpan() + duration;
+    }
+
+    /** the time between the start and the last block of the repeating, that will be tested*/
+    private long getRepeatingSpan()
+    {
+        final Date maxEnd = appointment.getMaxEnd();
+        final long limit = Math.max(System.currentTimeMillis(), firstStart) + MAX_REPEATING_CHECK;
+        final long end = maxEnd != null ? Math.min(maxEnd.getTime(), limit) : limit;
+        return Math.max(0, end - firstStart);
+    }
+
+    /** @return the first grid start after the current start, at which the appointment does not overlap the busy timeline or null if there is none within a year*/
+    Date findNextFreeStart(BusyTimeline busy)
+    {
+        final boolean startDateExcluded = isExcluded(firstStart);
+        final boolean inWorktime = inWorktime(firstStart, firstStart + duration);
+        final Repeating repeating = appointment.getRepeating();
+        // jumping is only safe if moving the appointment shifts every block by the same offset and keeps the number of blocks
+        final boolean canJump = repeating == null || (isFixedIntervalLength(repeating) && !repeating.hasExceptions() && (repeating.isFixedNumber() || repeating.getEnd() == null));
+        final List<AppointmentBlock> blocks = new ArrayList<>();
+        final long repeatingSpan = repeating != null ? getRepeatingSpan() : 0;
+        long k = 1;
+        while (k <= maxSteps)
+        {
+            final long candidate = firstStart + k * step;
+            if (!startDateExcluded && isExcluded(candidate))
+            {
+                k++;
+                continue;
+            }
+            if (!wholeDay && inWorktime && !inWorktime(candidate, candidate + duration))
+            {
+                k++;
+                continue;
+            }
+            long conflictEnd;
+            long offset = 0;
+            if (repeating == null)
+            {
+                conflictEnd = busy.getConflictEnd(candidate, candidate + duration);
+            }
+            else
+            {
+                final AppointmentImpl moved = ((AppointmentImpl) appointment).clone();
+                moved.moveTo(new Date(candidate));
+                blocks.clear();
+                moved.createBlocks(new Date(candidate), new Date(candidate + repeatingSpan + duration), blocks, true);
+                conflictEnd = -1;
+                for (AppointmentBlock block : blocks)
+                {
+                    conflictEnd = busy.getConflictEnd(block.getStart(), block.getEnd());
+                    if (conflictEnd >= 0)
+                    {
+                        offset = block.getStart() - candidate;
+                        break;
+                    }
+                }
+            }
+            if (conflictEnd < 0)
+            {
+                return new Date(candidate);
+            }
+            if (canJump)
+            {
+                // the colliding block must start at or after the end of the busy interval
+                final long nextStart = conflictEnd - offset;
+                final long nextK = (nextStart - firstStart + step - 1) / step;
+                k = Math.max(k + 1, nextK);
+            }
+            else
+            {
+                k++;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isFixedIntervalLength(Repeating repeating)
+    {
+        final RepeatingType type = repeating.getType();
+        return type == RepeatingType.DAILY || (type == RepeatingType.WEEKLY && repeating.getWeekdays().size() <= 1);
+    }
+
+    private boolean inWorktime(long start, long end)
+    {
+        int minuteOfDayStart = DateTools.getMinuteOfDay(start);
+        int minuteOfDayEnd = DateTools.getMinuteOfDay(end) + (int) DateTools.countDays(start, end) * 24 * 60;
+        return (worktimeStartMinutes == null || worktimeStartMinutes <= minuteOfDayStart) && (worktimeEndMinutes == null
+                || worktimeEndMinutes >= minuteOfDayEnd);
+    }
+
+    private boolean isExcluded(long date)
+    {
+        if (excludedDays == null)
+        {
+            return false;
+        }
+        Integer weekday = DateTools.getWeekday(new Date(date));
+        for (Integer day : excludedDays)
+        {
+            if (day.equals(weekday))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -14,10 +14,6 @@
 package org.rapla.storage.impl.server;
 
 import io.reactivex.rxjava3.functions.Action;
-import org.apache.commons.collections4.BidiMap;
-import org.apache.commons.collections4.SortedBidiMap;
-import org.apache.commons.collections4.bidimap.DualHashBidiMap;
-import org.apache.commons.collections4.bidimap.DualTreeBidiMap;
 import org.jetbrains.annotations.NotNull;
 import org.rapla.RaplaResources;
 import org.rapla.components.util.Assert;
@@ -59,6 +55,7 @@ import org.rapla.entities.dynamictype.ConstraintIds;
 import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
 import org.rapla.entities.dynamictype.internal.AttributeImpl;
+import org.rapla.entities.dynamictype.internal.ClassificationFilterPredicate;
 import org.rapla.entities.dynamictype.internal.ClassificationImpl;
 import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
 import org.rapla.entities.extensionpoints.FunctionFactory;
@@ -76,6 +73,7 @@ import org.rapla.entities.storage.internal.ReferenceHandler;
 import org.rapla.entities.storage.internal.SimpleEntity;
 import org.rapla.facade.Conflict;
 import org.rapla.facade.RaplaComponent;
+import org.rapla.facade.internal.ConflictImpl;
 import org.rapla.framework.Disposable;
 import org.rapla.framework.RaplaException;
 import org.rapla.framework.RaplaLocale;
@@ -89,11 +87,16 @@ import org.rapla.server.PromiseWait;
 import org.rapla.server.internal.TimeZoneConverterImpl;
 import org.rapla.storage.CachableStorageOperator;
 import org.rapla.storage.CachableStorageOperatorCommand;
+import org.rapla.storage.ConflictPage;
+import org.rapla.storage.ConflictQuery;
+import org.rapla.storage.FreeBusyMatrix;
 import org.rapla.storage.IdCreator;
 import org.rapla.storage.LocalCache;
 import org.rapla.storage.PreferencePatch;
 import org.rapla.storage.RaplaNewVersionException;
 import org.rapla.storage.RaplaSecurityException;
+import org.rapla.storage.SearchQuery;
+import org.rapla.storage.SearchResult;
 import org.rapla.storage.StorageOperator;
 import org.rapla.storage.UpdateEvent;
 import org.rapla.storage.UpdateOperation;
@@ -103,6 +106,7 @@ import org.rapla.storage.UpdateResult.Change;
 import org.rapla.storage.UpdateResult.Remove;
 import org.rapla.storage.impl.AbstractCachableOperator;
 import org.rapla.storage.impl.DefaultRaplaLock;
+import org.rapla.storage.impl.LockStatistics;
 import org.rapla.storage.impl.EntityStore;
 import org.rapla.storage.impl.RaplaLock;
 
@@ -120,7 +124,15 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
     InitStatus connectStatus = InitStatus.Disconnected;
     // some indexMaps
     AppointmentMapClass appointmentBindings;
-    private BidiMap<String, ReferenceInfo> externalIds;
+    // external id index, read without the storage lock so both directions are concurrent maps
+    private final Map<String, ReferenceInfo> externalIds = new ConcurrentHashMap<>();
+    private final Map<ReferenceInfo, String> externalIdsByReference = new ConcurrentHashMap<>();
+    // attribute values of the allocatables and reservations
+    private final ClassificationIndex classificationIndex = new ClassificationIndex(this);
+    // words of the names and text attributes of the allocatables and reservations
+    private final SearchIndex searchIndex = new SearchIndex(raplaLocale.getLocale());
+    // entities referencing an entity, only the reservations and allocatables are indexed
+    private final ReferenceIndex referenceIndex = new ReferenceIndex();
 
     protected enum InitStatus
     {
@@ -141,10 +153,17 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
      */
     private final String encryption = "sha-1";
     private ConflictFinder conflictFinder;
+    private int conflictInitParallelism = Runtime.getRuntime().availableProcessors();
+    private boolean conflictSnapshotEnabled = false;
     //private SortedSet<LastChangedTimestamp> timestampSet;
-    // we need a bidi to sort the values instead of the keys
     protected final EntityHistory history;
-    private SortedBidiMap<String, DeleteUpdateEntry> deleteUpdateSet;
+    // latest change of each entity
+    private final Map<String, DeleteUpdateEntry> deleteUpdateEntries = new ConcurrentHashMap<>();
+    // the changes sorted by timestamp, all changes for the admins and the changes indexed by the users and groups they affect
+    private final NavigableSet<DeleteUpdateEntry> deleteUpdateAll = new ConcurrentSkipListSet<>();
+    private final NavigableSet<DeleteUpdateEntry> deleteUpdateAffectAll = new ConcurrentSkipListSet<>();
+    private final Map<String, NavigableSet<DeleteUpdateEntry>> deleteUpdateByUser = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<DeleteUpdateEntry>> deleteUpdateByGroup = new ConcurrentHashMap<>();
 
     private TimeZone systemTimeZone = TimeZone.getDefault();
     private final CommandScheduler scheduler;
@@ -181,6 +200,29 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
     {
         connectStatus = status;
         getLogger().debug("Initstatus " + status);
+        if (!(lockManager instanceof DefaultRaplaLock))
+        {
+            return;
+        }
+        final DefaultRaplaLock lock = (DefaultRaplaLock) lockManager;
+        if (status == InitStatus.Connected)
+        {
+            lock.registerMBean(getClass().getSimpleName());
+        }
+        else if (status == InitStatus.Disconnected)
+        {
+            lock.unregisterMBean();
+        }
+    }
+
+    /** @return the wait and hold times of the storage lock or null if the lock does not collect statistics*/
+    public LockStatistics getLockStatistics()
+    {
+        if (!(lockManager instanceof DefaultRaplaLock))
+        {
+            return null;
+        }
+        return ((DefaultRaplaLock) lockManager).getStatistics();
     }
 
     @Override
@@ -437,18 +479,22 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         };
     }*/
 
+    /** the command runs on a snapshot of the cache, so the read lock is only held while the snapshot is created and long exports don't block the writers*/
     public void runWithReadLock(CachableStorageOperatorCommand cmd) throws RaplaException
     {
+        final LocalCache snapshot;
+        final Collection<ExternalSyncEntity> externalSyncEntityList;
         RaplaLock.ReadLock readLock = lockManager.readLock(getClass(),"runWithReadLock " + cmd.getClass());
         try
         {
-            Collection<ExternalSyncEntity> externalSyncEntityList = getAllExternalSyncEntities();
-            cmd.execute(cache, externalSyncEntityList);
+            snapshot = cache.createSnapshot();
+            externalSyncEntityList = getAllExternalSyncEntities();
         }
         finally
         {
             lockManager.unlock(readLock);
         }
+        cmd.execute(snapshot, externalSyncEntityList);
     }
 
     protected abstract Collection<ExternalSyncEntity> getAllExternalSyncEntities() throws RaplaException;
@@ -465,6 +511,9 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         {
             boolean excludeExceptions = false;
             boolean isResourceTemplate = containsResourceTemplate(allocatables);
+            final ClassificationFilterPredicate filterPredicate = filters != null ? ClassificationFilterPredicate.compile(filters) : null;
+            // null if the index can't narrow down the reservations for the filters
+            final Set<String> filterCandidates = classificationIndex.getCandidates(filters);
             final Collection<Entity> entities;
             final Set<Allocatable> nonTemplates;
 
@@ -488,14 +537,21 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
                 final SortedSet<Appointment> appointments;
                 if (entity.getTypeClass()==User.class) {
                     ReferenceInfo<User> reference = ((User) entity).getReference();
-                    appointments = getAppointmentsForUser(reference);
+                    appointments = getAppointmentsForUser(reference, start, end);
+                } else if (isResourceTemplate || requestsOnly) {
+                    // the template editor and the request approval only need the reservations of the template or the reservations with requests
+                    appointments = getIndexedAppointments((Allocatable) entity, isResourceTemplate);
                 } else {
-                    appointments = getAppointments((Allocatable) entity);
+                    appointments = getAppointments((Allocatable) entity, start, end);
                 }
                 appointmentSet = AppointmentImpl.getAppointments(appointments, user, start, end, excludeExceptions);
                 for (Appointment appointment : appointmentSet)
                 {
                     Reservation reservation = appointment.getReservation();
+                    if (filterCandidates != null && !filterCandidates.contains(reservation.getId()))
+                    {
+                        continue;
+                    }
                     if (!match(reservation, annotationQuery))
                     {
                         continue;
@@ -523,7 +579,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
                         // FIXME this special case should be refactored, so one can get all reservations in one method
                         continue;
                     }
-                    if (filters != null && !ClassificationFilter.Util.matches(filters, reservation))
+                    if (filterPredicate != null && !filterPredicate.test(reservation))
                     {
                         continue;
                     }
@@ -544,6 +600,27 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
     }
 
 
+    @Override
+    protected Collection<Allocatable> getAllocatableCandidates(ClassificationFilter[] filters)
+    {
+        final Set<String> candidates = classificationIndex.getCandidates(filters);
+        if (candidates == null)
+        {
+            return super.getAllocatableCandidates(filters);
+        }
+        final List<Allocatable> result = new ArrayList<>();
+        for (String id : candidates)
+        {
+            // the index also contains reservations
+            final Entity entity = cache.tryResolve(id, Entity.class);
+            if (entity instanceof Allocatable)
+            {
+                result.add((Allocatable) entity);
+            }
+        }
+        return result;
+    }
+
     private boolean containsResourceTemplate(Collection<Allocatable> allocs) {
         if ( allocs == null)
         {
@@ -915,6 +992,213 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         });
     }
 
+    /**
+     * Determines the conflicts matching the query, that the user can modify. Only the conflicts of the requested page are cloned with the disable information.
+     */
+    @Override
+    public Promise<ConflictPage> queryConflicts(final User user, final ConflictQuery query)
+    {
+        return scheduler.supply(()-> {
+            checkConnected();
+            return createConflictPage(user, query);
+        });
+    }
+
+    @Override
+    public Promise<SearchResult> search(final User user, final SearchQuery query)
+    {
+        return scheduler.supply(() -> {
+            checkConnected();
+            return createSearchResult(user, query);
+        });
+    }
+
+    private SearchResult createSearchResult(final User user, SearchQuery query)
+    {
+        final SearchIndex.SourceFilter filter;
+        if (user == null || user.isAdmin())
+        {
+            filter = null;
+        }
+        else
+        {
+            filter = (id, attributeKey) ->
+            {
+                final Entity entity = cache.tryResolve(id, Entity.class);
+                if (!(entity instanceof Classifiable))
+                {
+                    return false;
+                }
+                final Classification classification = ((Classifiable) entity).getClassification();
+                final Attribute attribute = classification.getType().getAttribute(attributeKey);
+                return attribute != null && permissionController.canRead(classification, attribute, user);
+            };
+        }
+        final List<AllocatableImpl> allocatables = new ArrayList<>();
+        final List<ReservationImpl> reservations = new ArrayList<>();
+        final List<String> rankedIds = new ArrayList<>();
+        int totalCount = 0;
+        for (SearchIndex.Hit hit : searchIndex.search(query.getText(), filter))
+        {
+            final Entity entity = cache.tryResolve(hit.getId(), Entity.class);
+            if (entity instanceof Allocatable)
+            {
+                final Allocatable allocatable = (Allocatable) entity;
+                if (!query.isAllocatables() || isTemplate(allocatable) || (user != null && !permissionController.canRead(allocatable, user)))
+                {
+                    continue;
+                }
+                if (rankedIds.size() < query.getLimit())
+                {
+                    allocatables.add((AllocatableImpl) allocatable);
+                    rankedIds.add(hit.getId());
+                }
+            }
+            else if (entity instanceof Reservation)
+            {
+                final Reservation reservation = (Reservation) entity;
+                if (!query.isReservations() || RaplaComponent.isTemplate(reservation) || (user != null && !permissionController.canRead(reservation, user)))
+                {
+                    continue;
+                }
+                if (rankedIds.size() < query.getLimit())
+                {
+                    reservations.add((ReservationImpl) reservation);
+                    rankedIds.add(hit.getId());
+                }
+            }
+            else
+            {
+                continue;
+            }
+            totalCount++;
+        }
+        return new SearchResult(allocatables, reservations, rankedIds, totalCount);
+    }
+
+    private ConflictPage createConflictPage(User user, ConflictQuery query) throws RaplaException
+    {
+        Collection<ReferenceInfo<Allocatable>> allocatables = null;
+        if (query.getAllocatableIds() != null)
+        {
+            allocatables = new LinkedHashSet<>();
+            for (String id : query.getAllocatableIds())
+            {
+                allocatables.add(new ReferenceInfo<>(id, Allocatable.class));
+            }
+        }
+        final Set<String> reservationTypes = query.getReservationTypes() != null ? new HashSet<>(Arrays.asList(query.getReservationTypes())) : null;
+        final Date start = query.getStart();
+        final Date end = query.getEnd();
+        final List<Conflict> matching = new ArrayList<>();
+        // the cheap filters first, so that the permissions are only checked for the remaining conflicts
+        for (Conflict conflict : conflictFinder.getConflictsOn(allocatables))
+        {
+            if (reservationTypes != null && !hasReservationType(conflict, reservationTypes))
+            {
+                continue;
+            }
+            if ((start != null || end != null) && !overlaps(conflict, start, end))
+            {
+                continue;
+            }
+            if (user != null && !permissionController.canModify(conflict, user))
+            {
+                continue;
+            }
+            matching.add(conflict);
+        }
+        final int totalCount = matching.size();
+        final List<ConflictImpl> page = new ArrayList<>();
+        if (query.isCountOnly())
+        {
+            return new ConflictPage(page, null, totalCount);
+        }
+        final String cursor = query.getCursor();
+        if (cursor != null)
+        {
+            final int index = cursor.indexOf(':');
+            final long cursorTime;
+            try
+            {
+                cursorTime = Long.parseLong(cursor.substring(0, Math.max(index, 0)));
+            }
+            catch (NumberFormatException ex)
+            {
+                throw new RaplaException("Invalid conflict cursor " + cursor);
+            }
+            final String cursorId = cursor.substring(index + 1);
+            matching.removeIf((conflict) -> compareConflictPosition(conflict, cursorTime, cursorId) <= 0);
+        }
+        matching.sort((c1, c2) -> compareConflictPosition(c1, getConflictPositionTime(c2), c2.getId()));
+        final int limit = query.getLimit() > 0 ? query.getLimit() : ConflictQuery.DEFAULT_LIMIT;
+        for (Conflict conflict : matching)
+        {
+            if (page.size() >= limit)
+            {
+                break;
+            }
+            // conflict is filled with disable/enable status from cache
+            page.add((ConflictImpl) cache.fillConflictDisableInformation(user, conflict));
+        }
+        String nextCursor = null;
+        if (matching.size() > limit)
+        {
+            final Conflict last = matching.get(limit - 1);
+            nextCursor = getConflictPositionTime(last) + ":" + last.getId();
+        }
+        return new ConflictPage(page, nextCursor, totalCount);
+    }
+
+    /** conflicts are paged in the order of their start date and id*/
+    private static int compareConflictPosition(Conflict conflict, long time, String id)
+    {
+        final int result = Long.compare(getConflictPositionTime(conflict), time);
+        if (result != 0)
+        {
+            return result;
+        }
+        return conflict.getId().compareTo(id);
+    }
+
+    private static long getConflictPositionTime(Conflict conflict)
+    {
+        final Date startDate = conflict.getStartDate();
+        return startDate != null ? startDate.getTime() : Long.MAX_VALUE;
+    }
+
+    private boolean hasReservationType(Conflict conflict, Set<String> reservationTypes)
+    {
+        for (ReferenceInfo<Reservation> reservationId : new ReferenceInfo[] { conflict.getReservation1(), conflict.getReservation2() })
+        {
+            final Reservation reservation = reservationId != null ? tryResolve(reservationId) : null;
+            if (reservation != null && reservationTypes.contains(reservation.getClassification().getType().getKey()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean overlaps(Conflict conflict, Date start, Date end)
+    {
+        final Appointment appointment1 = tryResolve(conflict.getAppointment1());
+        final Appointment appointment2 = tryResolve(conflict.getAppointment2());
+        if (appointment1 == null || appointment2 == null)
+        {
+            return false;
+        }
+        for (Appointment appointment : new Appointment[] { appointment1, appointment2 })
+        {
+            final Date maxEnd = appointment.getMaxEnd();
+            if ((end != null && !appointment.getStart().before(end)) || (start != null && maxEnd != null && !maxEnd.after(start)))
+            {
+                return false;
+            }
+        }
+        return ConflictImpl.getFirstConflictDate(start, end, appointment1, appointment2) != null;
+    }
+
     boolean disposing;
 
     public void dispose()
@@ -988,18 +1272,32 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
 
     protected void initIndizes() throws RaplaException
     {
-        deleteUpdateSet = new DualTreeBidiMap<>();
-        externalIds = new DualHashBidiMap<>();
+        synchronized (deleteUpdateEntries)
+        {
+            deleteUpdateEntries.clear();
+            deleteUpdateAll.clear();
+            deleteUpdateAffectAll.clear();
+            deleteUpdateByUser.clear();
+            deleteUpdateByGroup.clear();
+        }
+        externalIds.clear();
+        externalIdsByReference.clear();
+        classificationIndex.clear();
+        searchIndex.clear();
+        referenceIndex.clear();
         // The appointment map
 
         final Collection<Allocatable> alloctables = cache.getAllocatables();
         for (Allocatable alloc : alloctables)
         {
+            classificationIndex.put(alloc);
+            searchIndex.put(alloc);
+            referenceIndex.put(alloc);
             final String externalId = alloc.getAnnotation(RaplaObjectAnnotations.KEY_EXTERNALID);
 
             if (externalId != null)
             {
-                externalIds.put(externalId, alloc.getReference());
+                putExternalId(externalId, alloc.getReference());
             }
             else
             {
@@ -1010,7 +1308,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
                     final Object value = classification.getValueForAttribute(idAtt);
                     if (value != null)
                     {
-                        externalIds.put(value.toString(), alloc.getReference());
+                        putExternalId(value.toString(), alloc.getReference());
                     }
                 }
             }
@@ -1019,10 +1317,13 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         final Collection<Reservation> events = cache.getReservations();
         for (Reservation event : events)
         {
+            classificationIndex.put(event);
+            searchIndex.put(event);
+            referenceIndex.put(event);
             final String externalId = event.getAnnotation(RaplaObjectAnnotations.KEY_EXTERNALID);
             if (externalId != null)
             {
-                externalIds.put(externalId, event.getReference());
+                putExternalId(externalId, event.getReference());
             }
         }
         appointmentBindings.initAppointmentBindings(events);
@@ -1034,6 +1335,11 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
                 return LocalAbstractCachableOperator.this.getAppointments(allocatable);
             }
 
+            public SortedSet<Appointment> getAppointments(Allocatable allocatable, Date start, Date end)
+            {
+                return LocalAbstractCachableOperator.this.getAppointments(allocatable, start, end);
+            }
+
             @SuppressWarnings("unchecked")
             public Collection<Allocatable> getAllocatables()
             {
@@ -1042,7 +1348,13 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         };
         // The conflict map
         Logger logger = getLogger();
-        conflictFinder = new ConflictFinder(allocationMap, today2, logger, this, permissionController);
+        ConflictSnapshot snapshot = conflictSnapshotEnabled ? loadConflictSnapshot() : null;
+        Map<ReferenceInfo<Allocatable>, Set<ReferenceInfo<Reservation>>> changedSinceSnapshot = snapshot != null ? getChangedReservationsSince(snapshot) : null;
+        if (changedSinceSnapshot == null)
+        {
+            snapshot = null;
+        }
+        conflictFinder = new ConflictFinder(allocationMap, today2, logger, this, permissionController, conflictInitParallelism, snapshot, changedSinceSnapshot);
 
         // if a client request changes before the start date return refresh conflict flag
         Action cleanUpConflicts = ()->
@@ -1224,10 +1536,34 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
     {
         Set<ReferenceInfo<Allocatable>> toUpdate = new HashSet<>();
         List<ReferenceInfo<Allocatable>> removedAllocatables = new ArrayList<>();
+        // the reservations that caused the update of an allocatable
+        Map<ReferenceInfo<Allocatable>, Set<ReferenceInfo<Reservation>>> changedReservations = new HashMap<>();
+        // allocatables that need a complete recalculation of their conflicts
+        Set<ReferenceInfo<Allocatable>> fullUpdate = new HashSet<>();
+
         boolean isEmpty()
         {
             return toUpdate.isEmpty() && removedAllocatables.isEmpty();
         }
+
+        void addReservationChange(ReferenceInfo<Reservation> reservation, Collection<ReferenceInfo<Allocatable>> allocatables)
+        {
+            for (ReferenceInfo<Allocatable> allocatable : allocatables)
+            {
+                toUpdate.add(allocatable);
+                changedReservations.computeIfAbsent(allocatable, (key) -> new HashSet<>()).add(reservation);
+            }
+        }
+
+        /** @return the reservations that changed on the allocatable or null if all conflicts of the allocatable must be recalculated*/
+        Set<ReferenceInfo<Reservation>> getChangedReservations(ReferenceInfo<Allocatable> allocatable)
+        {
+            if (fullUpdate.contains(allocatable))
+            {
+                return null;
+            }
+            return changedReservations.get(allocatable);
+        }
     }
 
     /** updates the bindings of the resources and returns a map with all processed allocation changes*/
@@ -1248,6 +1584,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
                 final EntityHistory.HistoryEntry historyEntry = history.getLatest(id);
                 addToDeleteUpdate(historyEntry);
                 updateExternalId(op, id);
+                updateClassifiableIndexes(op, id);
             }
             else if (raplaType == Preferences.class)
             {
@@ -1349,11 +1686,10 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
 
     private void updateExternalId(UpdateOperation op, ReferenceInfo id)
     {
-        final BidiMap<ReferenceInfo, String> referenceInfoStringBidiMap = externalIds.inverseBidiMap();
-        final String oldExternalId = referenceInfoStringBidiMap.get(id);
+        final String oldExternalId = externalIdsByReference.get(id);
         if (op instanceof Remove)
         {
-            externalIds.remove(oldExternalId);
+            removeExternalId(oldExternalId);
         }
         else
         {
@@ -1363,16 +1699,87 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
                 final String newExternalId = ((Annotatable) entity).getAnnotation(RaplaObjectAnnotations.KEY_EXTERNALID);
                 if (oldExternalId != null && (newExternalId == null || !newExternalId.equals(oldExternalId)))
                 {
-                    externalIds.remove(oldExternalId);
+                    removeExternalId(oldExternalId);
                 }
                 if (newExternalId != null && (oldExternalId == null || !oldExternalId.equals(newExternalId)))
                 {
-                    externalIds.put(newExternalId, id);
+                    putExternalId(newExternalId, id);
+                }
+            }
+        }
+    }
+
+    private void updateClassifiableIndexes(UpdateOperation op, ReferenceInfo id)
+    {
+        final Class<? extends Entity> type = id.getType();
+        if (type == Allocatable.class || type == Reservation.class)
+        {
+            final Entity entity = op instanceof Remove ? null : tryResolve(id);
+            if (entity != null)
+            {
+                classificationIndex.put(entity);
+                searchIndex.put(entity);
+                referenceIndex.put(entity);
+            }
+            else
+            {
+                classificationIndex.remove(id.getId());
+                searchIndex.remove(id.getId());
+                referenceIndex.remove(id);
+            }
+        }
+        else if (type == DynamicType.class && op instanceof Change)
+        {
+            // attributes can be added, removed or converted, so the values of all classifiables of the type are indexed again
+            final String typeId = id.getId();
+            final DynamicType dynamicType = tryResolve(typeId, DynamicType.class);
+            if (dynamicType == null)
+            {
+                return;
+            }
+            final String classificationType = dynamicType.getAnnotation(DynamicTypeAnnotations.KEY_CLASSIFICATION_TYPE);
+            final boolean isReservationType = DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION.equals(classificationType);
+            final Collection<? extends Classifiable> classifiables = isReservationType ? cache.getReservations() : cache.getAllocatables();
+            for (Classifiable classifiable : classifiables)
+            {
+                if (classifiable.getClassification().getType().getId().equals(typeId))
+                {
+                    classificationIndex.put((Entity) classifiable);
+                    // the name format can change too
+                    searchIndex.put((Entity) classifiable);
                 }
             }
         }
     }
 
+    /** an external id and a reference are mapped only once, so an existing mapping of either of them is replaced */
+    private void putExternalId(String externalId, ReferenceInfo id)
+    {
+        final ReferenceInfo oldId = externalIds.put(externalId, id);
+        if (oldId != null && !oldId.equals(id))
+        {
+            externalIdsByReference.remove(oldId, externalId);
+        }
+        final String oldExternalId = externalIdsByReference.put(id, externalId);
+        if (oldExternalId != null && !oldExternalId.equals(externalId))
+        {
+            externalIds.remove(oldExternalId, id);
+        }
+    }
+
+    private void removeExternalId(String externalId)
+    {
+        if (externalId == null)
+        {
+            return;
+        }
+        final ReferenceInfo id = externalIds.remove(externalId);
+        if (id != null)
+        {
+            externalIdsByReference.remove(id, externalId);
+        }
+    }
+
     // updates appointmentBinding
     private UpdateBindingsResult updateAppointmentBindings(UpdateResult result)
     {
@@ -1385,7 +1792,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
             if (id.getType() == Reservation.class)
             {
                 Reservation newReservation = result.getLastKnown((ReferenceInfo<Reservation>) id);//.getUnresolvedEntity();
-                appointmentBindings.updateReservation( newReservation, toUpdate, false);
+                updateReservationBindings(bindingResult, newReservation, false);
             }
         }
         for (Change changes : result.getOperations(Change.class))
@@ -1396,7 +1803,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
             if (lastKnown instanceof Reservation)
             {
                 Reservation newReservation = (Reservation) lastKnown;
-                appointmentBindings.updateReservation( newReservation, toUpdate, false);
+                updateReservationBindings(bindingResult, newReservation, false);
             }
             if (lastKnown instanceof DynamicType)
             {
@@ -1415,6 +1822,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
                             {
                                 for (Allocatable alloc:reservation.getAllocatables()) {
                                     toUpdate.add(alloc.getReference());
+                                    bindingResult.fullUpdate.add(alloc.getReference());
                                 }
                             }
                         }
@@ -1436,7 +1844,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
                     if ( lastKnown == null ) {
                         logger.error("Reservation thats is scheduled to delete not found " + reference.getId());
                     } else {
-                        appointmentBindings.updateReservation((Reservation) lastKnown, toUpdate, true);
+                        updateReservationBindings(bindingResult, (Reservation) lastKnown, true);
                     }
                 }
                 else if (type == Allocatable.class)
@@ -1450,11 +1858,26 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
             if (!appointmentBindings.checkAbandonedAppointments(cache)) {
                 final Collection<Reservation> events = cache.getReservations();
                 appointmentBindings.initAppointmentBindings(events);
+                // the bindings were rebuild, so we can't rely on the previous conflicts
+                bindingResult.fullUpdate.addAll(toUpdate);
             }
         }
         return bindingResult;
     }
 
+    private void updateReservationBindings(UpdateBindingsResult bindingResult, Reservation reservation, boolean remove)
+    {
+        Set<ReferenceInfo<Allocatable>> affected = new HashSet<>();
+        appointmentBindings.updateReservation(reservation, affected, remove);
+        // conflicts of an allocatable include the appointments of the allocatables it depends on (e.g. the rooms of a building)
+        Set<ReferenceInfo<Allocatable>> withDependent = new HashSet<>();
+        for (ReferenceInfo<Allocatable> allocatable : affected)
+        {
+            withDependent.addAll(cache.getDependentRef(allocatable));
+        }
+        bindingResult.addReservationChange(reservation.getReference(), withDependent);
+    }
+
     protected void addToDeleteUpdate(EntityHistory.HistoryEntry historyEntry)
     {
         Entity current = history.getEntity(historyEntry);
@@ -1466,20 +1889,17 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
 
     private void addToDeleteUpdate(ReferenceInfo referenceInfo, Date timestamp, boolean isDelete, Entity current)
     {
-        synchronized ( deleteUpdateSet ) {
+        // only the writers synchronize, the entries are not changed after they are added to the sorted sets
+        synchronized ( deleteUpdateEntries ) {
             final Class<? extends Entity> type = referenceInfo.getType();
             String id = referenceInfo.getId();
 
-            DeleteUpdateEntry entry = deleteUpdateSet.get(id);
-            if (entry == null) {
-                entry = new DeleteUpdateEntry(referenceInfo, timestamp, isDelete);
-            } else {
-                DeleteUpdateEntry remove = deleteUpdateSet.remove(id);
-                entry.isDelete = isDelete;
-                entry.timestamp = timestamp;
-                if (isDelete && remove == null) {
-                    getLogger().warn("Can't remove entry for id " + id);
-                }
+            DeleteUpdateEntry entry = new DeleteUpdateEntry(referenceInfo, timestamp, isDelete);
+            DeleteUpdateEntry oldEntry = deleteUpdateEntries.get(id);
+            if (oldEntry != null) {
+                // users that were affected by the previous change are still notified
+                entry.addPermssions(oldEntry);
+                removeFromDeleteUpdateIndex(oldEntry);
             }
             if (type == User.class && current != null) {
                 final Collection<String> groupIdList = ((UserImpl) current).getGroupIdList();
@@ -1493,8 +1913,8 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
                     entry.affectAll = true;
                 } else {
                     Conflict conflict = (Conflict) current;
-                    addPermissions(deleteUpdateSet, entry, conflict.getReservation1());
-                    addPermissions(deleteUpdateSet, entry, conflict.getReservation2());
+                    addPermissions(entry, conflict.getReservation1());
+                    addPermissions(entry, conflict.getReservation2());
                 }
             } else if (current instanceof Preferences) {
                 ReferenceInfo<User> owner = ((PreferencesImpl) current).getOwnerRef();
@@ -1502,11 +1922,65 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
                     entry.addUserIds(Collections.singletonList(owner.getId()));
                 }
             }
-            deleteUpdateSet.put(entry.getId(), entry);
+            deleteUpdateEntries.put(id, entry);
+            addToDeleteUpdateIndex(entry);
+        }
+    }
+
+    private void addToDeleteUpdateIndex(DeleteUpdateEntry entry)
+    {
+        deleteUpdateAll.add(entry);
+        if (entry.affectAll)
+        {
+            deleteUpdateAffectAll.add(entry);
+            return;
+        }
+        if (entry.affectedUserIds != null)
+        {
+            for (String userId : entry.affectedUserIds)
+            {
+                deleteUpdateByUser.computeIfAbsent(userId, (key) -> new ConcurrentSkipListSet<>()).add(entry);
+            }
+        }
+        if (entry.affectedGroupIds != null)
+        {
+            for (String groupId : entry.affectedGroupIds)
+            {
+                deleteUpdateByGroup.computeIfAbsent(groupId, (key) -> new ConcurrentSkipListSet<>()).add(entry);
+            }
+        }
+    }
+
+    private void removeFromDeleteUpdateIndex(DeleteUpdateEntry entry)
+    {
+        deleteUpdateAll.remove(entry);
+        deleteUpdateAffectAll.remove(entry);
+        if (entry.affectedUserIds != null)
+        {
+            for (String userId : entry.affectedUserIds)
+            {
+                removeFromDeleteUpdateIndex(deleteUpdateByUser, userId, entry);
+            }
+        }
+        if (entry.affectedGroupIds != null)
+        {
+            for (String groupId : entry.affectedGroupIds)
+            {
+                removeFromDeleteUpdateIndex(deleteUpdateByGroup, groupId, entry);
+            }
+        }
+    }
+
+    private void removeFromDeleteUpdateIndex(Map<String, NavigableSet<DeleteUpdateEntry>> index, String key, DeleteUpdateEntry entry)
+    {
+        final NavigableSet<DeleteUpdateEntry> entries = index.get(key);
+        if (entries != null)
+        {
+            entries.remove(entry);
         }
     }
 
-    private void addPermissions(SortedBidiMap<String, DeleteUpdateEntry> deleteUpdateSet, DeleteUpdateEntry entry, ReferenceInfo<Reservation> reservation)
+    private void addPermissions(DeleteUpdateEntry entry, ReferenceInfo<Reservation> reservation)
     {
         Reservation event = tryResolve(reservation);
         if (event != null)
@@ -1516,7 +1990,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         else if (reservation != null)
         {
             final String id = reservation.getId();
-            DeleteUpdateEntry deleteUpdateEntry = deleteUpdateSet.get(id);
+            DeleteUpdateEntry deleteUpdateEntry = deleteUpdateEntries.get(id);
             if (deleteUpdateEntry != null)
             {
                 entry.addPermssions(deleteUpdateEntry);
@@ -1533,37 +2007,14 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
     }
     */
 
-    private boolean isAffected(DeleteUpdateEntry entry, String userId, final Collection<String> groupsIncludingParents)
-    {
-        if (entry.affectAll)
-        {
-            return true;
-        }
-        else
-        {
-            if (entry.affectedGroupIds != null)
-            {
-                if (!Collections.disjoint(entry.affectedGroupIds, groupsIncludingParents))
-                {
-                    return true;
-                }
-            }
-            if (entry.affectedUserIds != null)
-            {
-                return entry.affectedUserIds.contains(userId);
-            }
-        }
-        return false;
-    }
-
     class DeleteUpdateEntry implements Comparable<DeleteUpdateEntry>
     {
         public boolean affectAll;
-        Date timestamp;
+        final Date timestamp;
         final ReferenceInfo reference;
         Set<String> affectedGroupIds;
         Set<String> affectedUserIds;
-        boolean isDelete;
+        final boolean isDelete;
 
         DeleteUpdateEntry(ReferenceInfo reference, Date timestamp, boolean isDelete)
         {
@@ -1731,29 +2182,40 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         DeleteUpdateEntry fromElement = new DeleteUpdateEntry(new ReferenceInfo(dummyId, Allocatable.class), new Date(timestamp.getTime() + 1), isDelete);
         LinkedList<ReferenceInfo> result = new LinkedList<>();
 
-        final Collection<String> groupsIncludingParents = user != null ? UserImpl.getGroupsIncludingParents(user) : null;
-        String userId = user != null ? user.getId() : null;
-        synchronized ( deleteUpdateSet )
+        final Collection<DeleteUpdateEntry> entries;
+        if (user == null || user.isAdmin())
+        {
+            entries = deleteUpdateAll.tailSet(fromElement);
+        }
+        else
         {
-            SortedMap<DeleteUpdateEntry, String> tailMap = deleteUpdateSet.inverseBidiMap().tailMap(fromElement);
-            Set<DeleteUpdateEntry> tailSet = tailMap.keySet();
-            for (DeleteUpdateEntry entry : tailSet)
+            // merge the changes for all users, for the user and for the user's groups
+            final SortedSet<DeleteUpdateEntry> userEntries = new TreeSet<>(deleteUpdateAffectAll.tailSet(fromElement));
+            addTail(userEntries, deleteUpdateByUser.get(user.getId()), fromElement);
+            for (String groupId : UserImpl.getGroupsIncludingParents(user))
             {
-                if (entry.isDelete != isDelete)
-                {
-                    continue;
-                }
-                if (user == null || user.isAdmin() || isAffected(entry, userId, groupsIncludingParents))
-                {
-                    ReferenceInfo deletedReference = entry.reference;
-                    result.add(deletedReference);
-                }
+                addTail(userEntries, deleteUpdateByGroup.get(groupId), fromElement);
+            }
+            entries = userEntries;
+        }
+        for (DeleteUpdateEntry entry : entries)
+        {
+            if (entry.isDelete == isDelete)
+            {
+                result.add(entry.reference);
             }
         }
-
         return result;
     }
 
+    private static void addTail(SortedSet<DeleteUpdateEntry> result, NavigableSet<DeleteUpdateEntry> entries, DeleteUpdateEntry fromElement)
+    {
+        if (entries != null)
+        {
+            result.addAll(entries.tailSet(fromElement));
+        }
+    }
+
     static final SortedSet<Appointment> EMPTY_SORTED_SET = Collections.unmodifiableSortedSet(new TreeSet<Appointment>());
 
     /** returs all appointments for the allocatable and all groupMembers and belongsTo*/
@@ -1788,15 +2250,67 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         return EMPTY_SORTED_SET;
     }
 
+    /** returns all appointments for the allocatable and all groupMembers and belongsTo that could overlap the interval. Uses the interval index, so only appointments near the interval are visited.*/
+    protected SortedSet<Appointment> getAppointments(Allocatable allocatable, Date start, Date end)
+    {
+        final ReferenceInfo<Allocatable> reference = allocatable != null ? allocatable.getReference() : null;
+        Set<ReferenceInfo<Allocatable>> allocatableIds = cache.getDependentRef(reference);
+        if (allocatableIds.size() == 0)
+        {
+            return EMPTY_SORTED_SET;
+        }
+        SortedSet<Appointment> result = new TreeSet<>(new AppointmentStartComparator());
+        for (ReferenceInfo<Allocatable> allocatableId : allocatableIds)
+        {
+            appointmentBindings.addAppointments(allocatableId, start, end, result);
+        }
+        return result;
+    }
+
+    protected SortedSet<Appointment> getAppointmentsForUser(ReferenceInfo<User> user, Date start, Date end) {
+        return appointmentBindings.getAppointmentsForUser(user, start, end);
+    }
+
+    /** returns the appointments of the template reservations of the template or the appointments of the reservations with requests for the allocatable and all groupMembers and belongsTo*/
+    protected SortedSet<Appointment> getIndexedAppointments(Allocatable allocatable, boolean templates)
+    {
+        final ReferenceInfo<Allocatable> reference = allocatable != null ? allocatable.getReference() : null;
+        Set<ReferenceInfo<Allocatable>> allocatableIds = templates ? Collections.singleton(reference) : cache.getDependentRef(reference);
+        if (allocatableIds.size() == 0 || reference == null)
+        {
+            return EMPTY_SORTED_SET;
+        }
+        SortedSet<Appointment> result = new TreeSet<>(new AppointmentStartComparator());
+        for (ReferenceInfo<Allocatable> allocatableId : allocatableIds)
+        {
+            final Set<ReferenceInfo<Reservation>> reservations = templates ? appointmentBindings.getTemplateReservations(allocatableId) : appointmentBindings.getRequestReservations(allocatableId);
+            for (ReferenceInfo<Reservation> reservationId : reservations)
+            {
+                final ReservationImpl reservation = (ReservationImpl) cache.tryResolve(reservationId);
+                if (reservation == null)
+                {
+                    continue;
+                }
+                final Appointment[] restriction = reservation.getRestrictionForAllocatableRef(allocatableId.getId());
+                Collections.addAll(result, restriction.length == 0 ? reservation.getAppointments() : restriction);
+            }
+        }
+        return result;
+    }
+
     static final class AppointmentMapClass
     {
         final private Logger logger;
-        private Map<ReferenceInfo<User>, SortedSet<Appointment>> appointmentUserMap;
-        private Map<ReferenceInfo<Allocatable>, SortedSet<Appointment>> appointmentMap;
+        private Map<ReferenceInfo<User>, AppointmentIndex> appointmentUserMap;
+        private Map<ReferenceInfo<Allocatable>, AppointmentIndex> appointmentMap;
 
         private Map<ReferenceInfo<Reservation>, Set<ReferenceInfo<Allocatable>>> reservationAllocatableMap;
 
         private Map<ReferenceInfo<Reservation>, ReferenceInfo<User>> reservationUserMap;
+        // template -> reservations of the template
+        private Map<ReferenceInfo<Allocatable>, Set<ReferenceInfo<Reservation>>> templateReservationMap;
+        // allocatable -> reservations that allocate it and have a request status
+        private Map<ReferenceInfo<Allocatable>, Set<ReferenceInfo<Reservation>>> requestReservationMap;
 
         Set<String> problematicIdSet = Collections.synchronizedSet(new HashSet<>());
 
@@ -1812,6 +2326,8 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
             appointmentUserMap = new ConcurrentHashMap<>();
             reservationAllocatableMap = new ConcurrentHashMap<>();
             reservationUserMap = new ConcurrentHashMap<>();
+            templateReservationMap = new ConcurrentHashMap<>();
+            requestReservationMap = new ConcurrentHashMap<>();
             for (Reservation r : reservations)
             {
                 updateReservation(r, new HashSet<>(), false);
@@ -1830,7 +2346,10 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
 
             if ( oldResources != null) {
                 for (ReferenceInfo<Allocatable> alloc: oldResources) {
-                    SortedSet<Appointment> appointments = appointmentMap.get(alloc);
+                    // the old resources contain the old template
+                    removeFromIndex(templateReservationMap, alloc, reference);
+                    removeFromIndex(requestReservationMap, alloc, reference);
+                    AppointmentIndex appointments = appointmentMap.get(alloc);
                     if ( appointments != null) {
                         Iterator<Appointment> it = appointments.iterator();
                         while (it.hasNext()) {
@@ -1866,7 +2385,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
                 }
             }
             if ( oldUser != null) {
-                SortedSet<Appointment> appointments = appointmentUserMap.get(oldUser);
+                AppointmentIndex appointments = appointmentUserMap.get(oldUser);
                 if ( appointments != null) {
                     Iterator<Appointment> it = appointments.iterator();
                     while (it.hasNext()) {
@@ -1910,15 +2429,21 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
             Set<ReferenceInfo<Allocatable>> newResources = new HashSet<>(event.getIds("resources").stream().map(id->new ReferenceInfo<Allocatable>(id,Allocatable.class)).collect(Collectors.toSet()));
             if (templateAlloc != null) {
                 newResources.add( templateAlloc);
+                templateReservationMap.computeIfAbsent(templateAlloc, (key) -> ConcurrentHashMap.newKeySet()).add(reference);
+            }
+            if (event.hasRequestStatus()) {
+                for (ReferenceInfo<Allocatable> alloc: newResources) {
+                    requestReservationMap.computeIfAbsent(alloc, (key) -> ConcurrentHashMap.newKeySet()).add(reference);
+                }
             }
             Appointment[] allAppointments = event.getAppointments();
             for (ReferenceInfo<Allocatable> alloc: newResources) {
                 toUpdate.add( alloc );
-                SortedSet<Appointment> appointments;
+                AppointmentIndex appointments;
                 synchronized (alloc.getId().intern()) {
                     appointments = appointmentMap.get(alloc);
                     if (appointments == null) {
-                        appointments = new ConcurrentSkipListSet<>(new AppointmentStartComparator());
+                        appointments = new AppointmentIndex();
                         appointmentMap.put(alloc, appointments);
                     }
                 }
@@ -1931,11 +2456,11 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
             }
             reservationAllocatableMap.put( reference, new HashSet<>(newResources));
             {
-                SortedSet<Appointment> appointments;
+                AppointmentIndex appointments;
                 synchronized (newUser.getId().intern()) {
                     appointments = appointmentUserMap.get(newUser);
                     if (appointments == null) {
-                        appointments = new ConcurrentSkipListSet<>(new AppointmentStartComparator());
+                        appointments = new AppointmentIndex();
                         appointmentUserMap.put(newUser, appointments);
                     }
                 }
@@ -1956,7 +2481,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
             {
                 for (Allocatable allocatable : allocatables)
                 {
-                    SortedSet<Appointment> appointmentSet = this.appointmentMap.get(allocatable.getReference());
+                    AppointmentIndex appointmentSet = this.appointmentMap.get(allocatable.getReference());
                     if (appointmentSet == null)
                     {
                         continue;
@@ -2027,22 +2552,63 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
 
         final SortedSet<Appointment> EMPTY_SORTED_REF_SET = Collections.unmodifiableSortedSet(new TreeSet<Appointment>());
 
+        private static void removeFromIndex(Map<ReferenceInfo<Allocatable>, Set<ReferenceInfo<Reservation>>> index, ReferenceInfo<Allocatable> alloc, ReferenceInfo<Reservation> reference)
+        {
+            index.computeIfPresent(alloc, (key, reservations) ->
+            {
+                reservations.remove(reference);
+                return reservations.isEmpty() ? null : reservations;
+            });
+        }
+
+        public Set<ReferenceInfo<Reservation>> getTemplateReservations(ReferenceInfo<Allocatable> templateId)
+        {
+            final Set<ReferenceInfo<Reservation>> reservations = templateReservationMap.get(templateId);
+            return reservations != null ? Collections.unmodifiableSet(reservations) : Collections.emptySet();
+        }
+
+        public Set<ReferenceInfo<Reservation>> getRequestReservations(ReferenceInfo<Allocatable> allocatableId)
+        {
+            final Set<ReferenceInfo<Reservation>> reservations = requestReservationMap.get(allocatableId);
+            return reservations != null ? Collections.unmodifiableSet(reservations) : Collections.emptySet();
+        }
+
         public SortedSet<Appointment> getAppointments(ReferenceInfo<Allocatable> allocatableId)
         {
-            final SortedSet<Appointment> referenceInfos = appointmentMap.get(allocatableId);
+            final AppointmentIndex referenceInfos = appointmentMap.get(allocatableId);
             if (referenceInfos != null)
             {
-                return referenceInfos;
+                return referenceInfos.getAll();
             }
             return EMPTY_SORTED_REF_SET;
         }
 
+        /** adds all appointments of the allocatable that could overlap the interval to the result. See {@link AppointmentIndex#getOverlapping(Date, Date)} */
+        public void addAppointments(ReferenceInfo<Allocatable> allocatableId, Date start, Date end, Collection<Appointment> result)
+        {
+            final AppointmentIndex referenceInfos = appointmentMap.get(allocatableId);
+            if (referenceInfos != null)
+            {
+                referenceInfos.addOverlapping(start, end, result);
+            }
+        }
+
         public SortedSet<Appointment> getAppointmentsForUser(ReferenceInfo<User> userId)
         {
-            final SortedSet<Appointment> referenceInfos = appointmentUserMap.get(userId);
+            final AppointmentIndex referenceInfos = appointmentUserMap.get(userId);
             if (referenceInfos != null)
             {
-                return referenceInfos;
+                return referenceInfos.getAll();
+            }
+            return EMPTY_SORTED_REF_SET;
+        }
+
+        public SortedSet<Appointment> getAppointmentsForUser(ReferenceInfo<User> userId, Date start, Date end)
+        {
+            final AppointmentIndex referenceInfos = appointmentUserMap.get(userId);
+            if (referenceInfos != null)
+            {
+                return referenceInfos.getOverlapping(start, end);
             }
             return EMPTY_SORTED_REF_SET;
         }
@@ -2551,11 +3117,10 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         // now delete template events for the removed templates
         for (Allocatable template : templates)
         {
-            String templateId = template.getId();
-            Collection<Reservation> reservations = cache.getReservations();
-            for (Reservation reservation : reservations)
+            for (ReferenceInfo<Reservation> reservationId : appointmentBindings.getTemplateReservations(template.getReference()))
             {
-                if (reservation.getAnnotation(RaplaObjectAnnotations.KEY_TEMPLATE, "").equals(templateId))
+                Reservation reservation = cache.tryResolve(reservationId);
+                if (reservation != null)
                 {
                     updateEvt.putRemove(reservation);
                 }
@@ -2631,25 +3196,21 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
     }
 
     public Set<ReferenceInfo<Allocatable>> filterAllocatablesWithNonTemplateReservations(Set<ReferenceInfo<Allocatable>> allocatables) {
-        Iterable<Reservation> refererList = cache.getReservations();
-        Set<ReferenceInfo<Allocatable>> entityReferences = allocatables;
         Set<ReferenceInfo<Allocatable>> result = new HashSet<>();
-        for (Reservation referer : refererList)
+        for (ReferenceInfo<Allocatable> allocatable : allocatables)
         {
-            // we ingnore Templates
-            if (RaplaComponent.isTemplate( referer ))
+            for (ReferenceInfo refererRef : referenceIndex.getReferers(allocatable))
             {
-                continue;
-            }
-            if (referer != null && !entityReferences.contains(referer.getReference()))
-            {
-                Iterable<ReferenceInfo> referenceInfo = ((EntityReferencer) referer).getReferenceInfo();
-                for (ReferenceInfo info : referenceInfo)
+                if (refererRef.getType() != Reservation.class)
                 {
-                    if (entityReferences.contains( info ))
-                    {
-                        result.add( info);
-                    }
+                    continue;
+                }
+                final Reservation referer = cache.tryResolve((ReferenceInfo<Reservation>) refererRef);
+                // we ingnore Templates
+                if (referer != null && !RaplaComponent.isTemplate(referer))
+                {
+                    result.add(allocatable);
+                    break;
                 }
             }
         }
@@ -2659,8 +3220,22 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
     @NotNull
     private Map<ReferenceInfo, Set<Entity>> getReferencingEntities(Set<ReferenceInfo> entityReferences, EntityStore store) {
         Map<ReferenceInfo,Set<Entity>> result = new LinkedHashMap<>();
-        addReferers(cache.getReservations(), entityReferences, result);
-        addReferers(cache.getAllocatables(), entityReferences, result);
+        // the reservations and allocatables are looked up in the reference index, the other entities are scanned
+        for (ReferenceInfo reference : entityReferences)
+        {
+            for (ReferenceInfo refererRef : referenceIndex.getReferers(reference))
+            {
+                if (entityReferences.contains(refererRef))
+                {
+                    continue;
+                }
+                final Entity referer = cache.tryResolve(refererRef);
+                if (referer != null)
+                {
+                    result.computeIfAbsent(reference, (k) -> new HashSet<>()).add(referer);
+                }
+            }
+        }
         Collection<User> users = cache.getUsers();
         addReferers(users, entityReferences, result);
         addReferers(cache.getDynamicTypes(), entityReferences, result);
@@ -3447,14 +4022,11 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
                     continue;
                 }
                 // TODO check also parents and children from allocatables
-                SortedSet<Appointment> appointmentSet = getAppointments(allocatable);
-                if (appointmentSet == null)
-                {
-                    continue;
-                }
                 map.put(allocatable.getReference(), new HashMap<>());
                 for (Appointment appointment : appointments)
                 {
+                    // only the appointments near the tested appointment are fetched from the interval index
+                    SortedSet<Appointment> appointmentSet = getAppointments(allocatable, appointment.getStart(), appointment.getMaxEnd());
                     Set<Appointment> conflictingAppointments = AppointmentImpl
                             .getConflictingAppointments(appointmentSet, appointment, ignoreList, onlyFirstConflictingAppointment);
                     if (conflictingAppointments.size() > 0)
@@ -3473,6 +4045,44 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         return map;
     }
 
+    @Override
+    public Promise<Collection<Conflict>> getConflictsForReservations(Collection<Reservation> reservations, Collection<Reservation> ignoreList)
+    {
+        return scheduler.supply(() ->
+        {
+            final Date today = today();
+            // the reservations are checked independently, so a large batch can be spread over multiple threads
+            final Stream<Reservation> stream = reservations.size() > 1 ? reservations.parallelStream() : reservations.stream();
+            final List<Conflict> conflicts = stream.filter(reservation -> !RaplaComponent.isTemplate(reservation))
+                    .flatMap(reservation -> getConflictsForReservation(reservation, ignoreList, today).stream()).collect(Collectors.toList());
+            return conflicts;
+        });
+    }
+
+    private List<Conflict> getConflictsForReservation(Reservation reservation, Collection<Reservation> ignoreList, Date today)
+    {
+        final Set<Reservation> ignore = new HashSet<>(ignoreList);
+        ignore.add(reservation);
+        final Collection<Appointment> appointments = Arrays.asList(reservation.getAppointments());
+        final Map<ReferenceInfo<Allocatable>, Map<Appointment, Collection<Appointment>>> map = new HashMap<>();
+        for (Allocatable allocatable : reservation.getAllocatables())
+        {
+            final Map<Appointment, Collection<Appointment>> appointmentBinding = new HashMap<>();
+            for (Appointment appointment : appointments)
+            {
+                // getAppointments already includes the parents and children of the allocatable, as in the conflict finder
+                final SortedSet<Appointment> appointmentSet = getAppointments(allocatable, appointment.getStart(), appointment.getMaxEnd());
+                final Collection<Appointment> conflictingAppointments = AppointmentImpl.getConflictingAppointments(appointmentSet, appointment, ignore, false);
+                if (!conflictingAppointments.isEmpty())
+                {
+                    appointmentBinding.put(appointment, conflictingAppointments);
+                }
+            }
+            map.put(allocatable.getReference(), appointmentBinding);
+        }
+        return createConflicts(reservation, map, today);
+    }
+
     @Override
     public Promise<Date> getNextAllocatableDate(final Collection<Allocatable> allocatables, final Appointment appointment,
             final Collection<Reservation> ignoreList, final Integer worktimeStartMinutes, final Integer worktimeEndMinutes, final Integer[] excludedDays,
@@ -3480,76 +4090,177 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
     {
         Promise<Date> promise = scheduler.supply(() ->
         {
-            Appointment newState = appointment;
-            Date firstStart = appointment.getStart();
-            boolean startDateExcluded = isExcluded(excludedDays, firstStart);
-            boolean wholeDay = appointment.isWholeDaysSet();
-            boolean inWorktime = inWorktime(appointment, worktimeStartMinutes, worktimeEndMinutes);
-            final int rowsPerHourInt = (rowsPerHour == null || rowsPerHour <= 1) ? 1 : rowsPerHour;
-            for (int i = 0; i < 366 * 24 * rowsPerHourInt; i++)
-            {
-                newState = ((AppointmentImpl) newState).clone();
-                Date start = newState.getStart();
-                long millisToAdd = wholeDay ? DateTools.MILLISECONDS_PER_DAY : (DateTools.MILLISECONDS_PER_HOUR / rowsPerHourInt);
-                Date newStart = new Date(start.getTime() + millisToAdd);
-                if (!startDateExcluded && isExcluded(excludedDays, newStart))
-                {
-                    continue;
-                }
-                newState.moveTo(newStart);
-                if (!wholeDay && inWorktime && !inWorktime(newState, worktimeStartMinutes, worktimeEndMinutes))
-                {
-                    continue;
-                }
-                if (!isAllocated(allocatables, newState, ignoreList))
-                {
-                    return newStart;
-                }
-            }
-            return null;
+            FreeSlotFinder finder = new FreeSlotFinder(appointment, worktimeStartMinutes, worktimeEndMinutes, excludedDays, rowsPerHour);
+            BusyTimeline busy = createBusyTimeline(allocatables, appointment, ignoreList, finder.getSearchStart(), finder.getSearchEnd());
+            return finder.findNextFreeStart(busy);
         });
         return promise;
     }
 
-    private boolean inWorktime(Appointment appointment, Integer worktimeStartMinutes, Integer worktimeEndMinutes)
+    /** merges the blocks of all appointments that would conflict with the passed appointment on one of the allocatables into one timeline.
+     * Uses the same rules as {@link AppointmentImpl#getConflictingAppointments(SortedSet, Appointment, Collection, boolean)}*/
+    BusyTimeline createBusyTimeline(Collection<Allocatable> allocatables, Appointment appointment, Collection<Reservation> ignoreList, long start, long end)
+    {
+        // Templates don't cause conflicts
+        if (RaplaComponent.isTemplate(appointment))
+        {
+            return BusyTimeline.EMPTY;
+        }
+        final Date startDate = new Date(start);
+        final Date endDate = new Date(end);
+        final List<AppointmentBlock> blocks = new ArrayList<>();
+        for (Allocatable allocatable : allocatables)
+        {
+            addBusyBlocks(allocatable, appointment, ignoreList, startDate, endDate, true, blocks);
+        }
+        return BusyTimeline.create(blocks);
+    }
+
+    /** adds the blocks of all appointments on the allocatable between start and end, that could conflict with the passed appointment.
+     * The appointment can be null, if only the ignoreList should be respected.*/
+    private void addBusyBlocks(Allocatable allocatable, Appointment appointment, Collection<Reservation> ignoreList, Date start, Date end,
+            boolean excludeExceptions, Collection<AppointmentBlock> blocks)
+    {
+        String annotation = allocatable.getAnnotation(ResourceAnnotations.KEY_CONFLICT_CREATION);
+        boolean holdBackConflicts = annotation != null && annotation.equals(ResourceAnnotations.VALUE_CONFLICT_CREATION_IGNORE);
+        if (holdBackConflicts)
+        {
+            return;
+        }
+        final Reservation reservation = appointment != null ? appointment.getReservation() : null;
+        for (Appointment other : getAppointments(allocatable, start, end))
+        {
+            final Reservation otherReservation = other.getReservation();
+            if (otherReservation == null || RaplaComponent.isTemplate(otherReservation) || RaplaComponent.isTemplate(other))
+            {
+                continue;
+            }
+            if (ignoreList.contains(otherReservation) || otherReservation.equals(reservation) || other.equals(appointment))
+            {
+                continue;
+            }
+            other.createBlocks(start, end, blocks, excludeExceptions);
+        }
+    }
+
+    @Override
+    public Promise<FreeBusyMatrix> getFreeBusy(final Collection<Allocatable> allocatables, final Date start, final Date end, final int slotMinutes,
+            final Collection<Reservation> ignoreList)
     {
-        long start = appointment.getStart().getTime();
-        int minuteOfDayStart = DateTools.getMinuteOfDay(start);
-        long end = appointment.getEnd().getTime();
-        int minuteOfDayEnd = DateTools.getMinuteOfDay(end) + (int) DateTools.countDays(start, end) * 24 * 60;
-        boolean inWorktime = (worktimeStartMinutes == null || worktimeStartMinutes <= minuteOfDayStart) && (worktimeEndMinutes == null
-                || worktimeEndMinutes >= minuteOfDayEnd);
-        return inWorktime;
+        Promise<FreeBusyMatrix> promise = scheduler.supply(() -> createFreeBusyMatrix(allocatables, start, end, slotMinutes, ignoreList));
+        return promise;
     }
 
-    private boolean isExcluded(Integer[] excludedDays, Date date)
+    FreeBusyMatrix createFreeBusyMatrix(Collection<Allocatable> allocatables, Date start, Date end, int slotMinutes, Collection<Reservation> ignoreList)
+            throws RaplaException
     {
-        Integer weekday = DateTools.getWeekday(date);
-        if (excludedDays != null)
+        if (slotMinutes <= 0 || !end.after(start))
+        {
+            throw new RaplaException("Invalid free busy request: slot " + slotMinutes + " minutes from " + start + " to " + end);
+        }
+        final long slotLength = slotMinutes * DateTools.MILLISECONDS_PER_MINUTE;
+        final long slotCount = (end.getTime() - start.getTime() + slotLength - 1) / slotLength;
+        if (slotCount > FreeBusyMatrix.MAX_SLOT_COUNT)
         {
-            for (Integer day : excludedDays)
+            throw new RaplaException("Free busy request with " + slotCount + " slots exceeds the maximum of " + FreeBusyMatrix.MAX_SLOT_COUNT);
+        }
+        final FreeBusyMatrix matrix = new FreeBusyMatrix(start, slotMinutes, (int) slotCount);
+        final Date matrixEnd = matrix.getEnd();
+        final List<AppointmentBlock> blocks = new ArrayList<>();
+        for (Allocatable allocatable : allocatables)
+        {
+            blocks.clear();
+            // exceptions are counted as busy, because the conflict detection does not ignore all of them
+            addBusyBlocks(allocatable, null, ignoreList, start, matrixEnd, false, blocks);
+            final BitSet busySlots = new BitSet();
+            for (AppointmentBlock block : blocks)
             {
-                if (day.equals(weekday))
+                final int firstSlot = Math.max(0, matrix.getSlot(block.getStart()));
+                final int lastSlot = Math.min((int) slotCount - 1, matrix.getSlot(Math.max(block.getStart(), block.getEnd() - 1)));
+                if (firstSlot <= lastSlot)
                 {
-                    return true;
+                    busySlots.set(firstSlot, lastSlot + 1);
                 }
             }
+            matrix.putBusySlots(allocatable.getReference(), busySlots);
         }
-        return false;
+        return matrix;
     }
 
-    private boolean isAllocated(Collection<Allocatable> allocatables, Appointment appointment, Collection<Reservation> ignoreList) throws Exception
+    /**
+     * @return the reservations changed after the snapshot, mapped to the allocatables they are allocated on,
+     * or null if the snapshot can't be used because allocatables or types changed after it was taken.
+     */
+    private Map<ReferenceInfo<Allocatable>, Set<ReferenceInfo<Reservation>>> getChangedReservationsSince(ConflictSnapshot snapshot) throws RaplaException
     {
-        Map<ReferenceInfo<Allocatable>, Collection<Appointment>> firstAllocatableBindings = getFirstAllocatableBindingsMap(allocatables, Collections.singleton(appointment),
-                ignoreList);
-        for (Map.Entry<ReferenceInfo<Allocatable>, Collection<Appointment>> entry : firstAllocatableBindings.entrySet())
+        Map<ReferenceInfo<Allocatable>, Set<ReferenceInfo<Reservation>>> result = new HashMap<>();
+        for (ReferenceInfo id : history.getAllIds())
         {
-            if (entry.getValue().size() > 0)
+            final EntityHistory.HistoryEntry entry = history.getLatest(id);
+            if (entry == null || entry.getTimestamp() <= snapshot.getTimestamp())
             {
-                return true;
+                continue;
+            }
+            final Class<? extends Entity> type = id.getType();
+            if (type == Allocatable.class || type == DynamicType.class)
+            {
+                getLogger().info("Ignoring conflict snapshot, because " + id + " changed after the snapshot.");
+                return null;
+            }
+            if (type != Reservation.class)
+            {
+                continue;
+            }
+            final Reservation reservation = tryResolve((ReferenceInfo<Reservation>) id);
+            if (reservation == null)
+            {
+                // conflicts of removed reservations are dropped when the snapshot is loaded
+                continue;
+            }
+            for (Allocatable allocatable : reservation.getAllocatables())
+            {
+                // conflicts of an allocatable include the appointments of the allocatables it depends on (e.g. the rooms of a building)
+                for (ReferenceInfo<Allocatable> dependent : cache.getDependentRef(allocatable.getReference()))
+                {
+                    result.computeIfAbsent(dependent, (key) -> new HashSet<>()).add(reservation.getReference());
+                }
             }
         }
-        return false;
+        return result;
+    }
+
+    /** @return the conflict snapshot stored with the data or null if there is none or it doesn't match the data. Storages that support snapshots override this method*/
+    protected ConflictSnapshot loadConflictSnapshot()
+    {
+        return null;
+    }
+
+    /** @return a snapshot of the current conflicts, that contains all changes until now*/
+    protected ConflictSnapshot createConflictSnapshot(String dataVersion)
+    {
+        return conflictFinder.createSnapshot(dataVersion, getCurrentTimestamp());
+    }
+
+    /** enables storing and loading a conflict snapshot with the data, so that not all conflicts are calculated again on startup*/
+    public void setConflictSnapshotEnabled(boolean conflictSnapshotEnabled)
+    {
+        this.conflictSnapshotEnabled = conflictSnapshotEnabled;
+    }
+
+    public boolean isConflictSnapshotEnabled()
+    {
+        return conflictSnapshotEnabled;
+    }
+
+    /** sets the number of threads that calculate the conflicts on startup. Default is the number of available processors*/
+    public void setConflictInitParallelism(int conflictInitParallelism)
+    {
+        this.conflictInitParallelism = conflictInitParallelism;
+    }
+
+    public int getConflictInitParallelism()
+    {
+        return conflictInitParallelism;
     }
 
     public Collection<Entity> getVisibleEntities(final User user) throws RaplaException
@@ -3794,6 +4505,10 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
 
     public ReferenceInfo tryResolveExternalId(String externalId)
     {
+        if (externalId == null)
+        {
+            return null;
+        }
         final ReferenceInfo referenceInfo = externalIds.get(externalId);
         return referenceInfo;
     }
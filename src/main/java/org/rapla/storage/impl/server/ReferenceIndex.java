@@ -0,0 +1,95 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage.impl.server;
+
+import org.rapla.entities.Entity;
+import org.rapla.entities.storage.EntityReferencer;
+import org.rapla.entities.storage.ReferenceInfo;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reverse index of the references of entities, so that the entities referencing an entity are found without checking all entities.
+ * The storage keeps the references of the reservations and allocatables here, because they are too many to scan on each dependency check.
+ */
+public class ReferenceIndex
+{
+    // referenced entity -> referencing entities
+    private final Map<ReferenceInfo, Set<ReferenceInfo>> referers = new ConcurrentHashMap<>();
+    // referencing entity -> its references, to remove them on updates
+    private final Map<ReferenceInfo, Set<ReferenceInfo>> references = new ConcurrentHashMap<>();
+
+    public void clear()
+    {
+        referers.clear();
+        references.clear();
+    }
+
+    /** adds the references of the entity or updates them if the entity is already indexed*/
+    public void put(Entity entity)
+    {
+        final ReferenceInfo referer = entity.getReference();
+        final Set<ReferenceInfo> newReferences = new HashSet<>();
+        for (ReferenceInfo reference : ((EntityReferencer) entity).getReferenceInfo())
+        {
+            newReferences.add(reference);
+        }
+        for (ReferenceInfo reference : newReferences)
+        {
+            referers.computeIfAbsent(reference, (key) -> ConcurrentHashMap.newKeySet()).add(referer);
+        }
+        final Set<ReferenceInfo> oldReferences = newReferences.isEmpty() ? references.remove(referer) : references.put(referer, newReferences);
+        if (oldReferences != null)
+        {
+            for (ReferenceInfo reference : oldReferences)
+            {
+                if (!newReferences.contains(reference))
+                {
+                    removeReferer(reference, referer);
+                }
+            }
+        }
+    }
+
+    public void remove(ReferenceInfo referer)
+    {
+        final Set<ReferenceInfo> oldReferences = references.remove(referer);
+        if (oldReferences != null)
+        {
+            for (ReferenceInfo reference : oldReferences)
+            {
+                removeReferer(reference, referer);
+            }
+        }
+    }
+
+    /** @return the indexed entities that reference the passed entity*/
+    public Set<ReferenceInfo> getReferers(ReferenceInfo reference)
+    {
+        final Set<ReferenceInfo> result = referers.get(reference);
+        return result != null ? Collections.unmodifiableSet(result) : Collections.emptySet();
+    }
+
+    private void removeReferer(ReferenceInfo reference, ReferenceInfo referer)
+    {
+        referers.computeIfPresent(reference, (key, ids) ->
+        {
+            ids.remove(referer);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+}
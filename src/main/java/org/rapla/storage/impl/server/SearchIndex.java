@@ -0,0 +1,299 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage.impl.server;
+
+import org.rapla.entities.Entity;
+import org.rapla.entities.Named;
+import org.rapla.entities.dynamictype.Attribute;
+import org.rapla.entities.dynamictype.AttributeType;
+import org.rapla.entities.dynamictype.Classifiable;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.internal.ClassificationImpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In memory full text index over the formatted names and the string attributes of classifiables.
+ * <p>
+ * Names and values are split into lower case words. Each word points to the ids of the classifiables containing it,
+ * the words are sorted so that all words starting with a prefix are found with a range lookup.
+ * For each classifiable the index keeps its name and the sources of its words (the name or the attribute keys),
+ * to rank the hits and to skip words from attributes the searching user can't read.
+ * </p>
+ * The name is formatted only when the classifiable is indexed, so a search doesn't evaluate the name formats.
+ */
+public class SearchIndex
+{
+    /** source of the words from the formatted name*/
+    public static final String NAME = "";
+
+    private final Locale locale;
+    // word -> ids
+    private final ConcurrentSkipListMap<String, Set<String>> words = new ConcurrentSkipListMap<>();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /** decides if the words of an attribute of the classifiable with the id count for the search*/
+    public interface SourceFilter
+    {
+        boolean canRead(String id, String attributeKey);
+    }
+
+    public static final class Hit
+    {
+        private final String id;
+        private final String name;
+        private final int score;
+
+        Hit(String id, String name, int score)
+        {
+            this.id = id;
+            this.name = name;
+            this.score = score;
+        }
+
+        public String getId()
+        {
+            return id;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public int getScore()
+        {
+            return score;
+        }
+    }
+
+    private static final class Entry
+    {
+        private final String name;
+        // word -> name or attribute keys
+        private final Map<String, String[]> sources;
+
+        private Entry(String name, Map<String, String[]> sources)
+        {
+            this.name = name;
+            this.sources = sources;
+        }
+    }
+
+    public SearchIndex(Locale locale)
+    {
+        this.locale = locale;
+    }
+
+    public void clear()
+    {
+        words.clear();
+        entries.clear();
+    }
+
+    /** adds the classifiable or updates the words of an already indexed classifiable*/
+    public void put(Entity entity)
+    {
+        final String id = entity.getId();
+        final String name = ((Named) entity).getName(locale);
+        final Map<String, Set<String>> sources = new HashMap<>();
+        addWords(sources, name, NAME);
+        final Classification classification = ((Classifiable) entity).getClassification();
+        if (classification != null)
+        {
+            for (Attribute attribute : classification.getType().getAttributeIterable())
+            {
+                if (attribute.getType() != AttributeType.STRING)
+                {
+                    continue;
+                }
+                for (String value : ((ClassificationImpl) classification).getValuesUnresolvedStrings(attribute))
+                {
+                    addWords(sources, value, attribute.getKey());
+                }
+            }
+        }
+        final Map<String, String[]> entrySources = new HashMap<>();
+        for (Map.Entry<String, Set<String>> source : sources.entrySet())
+        {
+            entrySources.put(source.getKey(), source.getValue().toArray(new String[0]));
+        }
+        for (String word : entrySources.keySet())
+        {
+            words.computeIfAbsent(word, (key) -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+        final Entry oldEntry = entries.put(id, new Entry(name != null ? name : "", entrySources));
+        if (oldEntry != null)
+        {
+            for (String word : oldEntry.sources.keySet())
+            {
+                if (!entrySources.containsKey(word))
+                {
+                    removeWord(word, id);
+                }
+            }
+        }
+    }
+
+    public void remove(String id)
+    {
+        final Entry oldEntry = entries.remove(id);
+        if (oldEntry != null)
+        {
+            for (String word : oldEntry.sources.keySet())
+            {
+                removeWord(word, id);
+            }
+        }
+    }
+
+    /**
+     * @param filter decides if words from attributes count for a hit, null if all attributes can be read
+     * @return the classifiables where each word of the text starts a word in the name or in a readable attribute. The best hits come first.
+     */
+    public List<Hit> search(String text, SourceFilter filter)
+    {
+        final List<String> queryWords = new ArrayList<>(tokenize(text));
+        if (queryWords.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+        // the longest word has the fewest prefix matches, so the candidates are smallest when starting with it
+        queryWords.sort(Comparator.comparingInt(String::length).reversed());
+        Set<String> candidates = null;
+        for (String queryWord : queryWords)
+        {
+            final Set<String> ids = new HashSet<>();
+            for (Set<String> wordIds : words.subMap(queryWord, true, queryWord + Character.MAX_VALUE, true).values())
+            {
+                for (String id : wordIds)
+                {
+                    if (candidates == null || candidates.contains(id))
+                    {
+                        ids.add(id);
+                    }
+                }
+            }
+            if (ids.isEmpty())
+            {
+                return Collections.emptyList();
+            }
+            candidates = ids;
+        }
+        final List<Hit> hits = new ArrayList<>();
+        for (String id : candidates)
+        {
+            final Entry entry = entries.get(id);
+            if (entry == null)
+            {
+                continue;
+            }
+            int score = 0;
+            for (String queryWord : queryWords)
+            {
+                final int wordScore = getScore(id, entry, queryWord, filter);
+                if (wordScore == 0)
+                {
+                    score = 0;
+                    break;
+                }
+                score += wordScore;
+            }
+            if (score > 0)
+            {
+                hits.add(new Hit(id, entry.name, score));
+            }
+        }
+        hits.sort(Comparator.comparingInt(Hit::getScore).reversed().thenComparing(Hit::getName, String.CASE_INSENSITIVE_ORDER).thenComparing(Hit::getId));
+        return hits;
+    }
+
+    /** a word in the name counts twice as much as a word in an attribute and a whole word twice as much as a prefix*/
+    private int getScore(String id, Entry entry, String queryWord, SourceFilter filter)
+    {
+        int best = 0;
+        for (Map.Entry<String, String[]> word : entry.sources.entrySet())
+        {
+            final String indexWord = word.getKey();
+            if (!indexWord.startsWith(queryWord))
+            {
+                continue;
+            }
+            final int factor = indexWord.length() == queryWord.length() ? 2 : 1;
+            for (String source : word.getValue())
+            {
+                final int score;
+                if (source.equals(NAME))
+                {
+                    score = 2 * factor;
+                }
+                else if (filter == null || filter.canRead(id, source))
+                {
+                    score = factor;
+                }
+                else
+                {
+                    continue;
+                }
+                best = Math.max(best, score);
+            }
+        }
+        return best;
+    }
+
+    private void addWords(Map<String, Set<String>> sources, String text, String source)
+    {
+        for (String word : tokenize(text))
+        {
+            sources.computeIfAbsent(word, (key) -> new LinkedHashSet<>()).add(source);
+        }
+    }
+
+    private void removeWord(String word, String id)
+    {
+        words.computeIfPresent(word, (key, ids) ->
+        {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /** splits the text into lower case words of letters and digits*/
+    static Set<String> tokenize(String text)
+    {
+        final Set<String> result = new LinkedHashSet<>();
+        if (text == null)
+        {
+            return result;
+        }
+        for (String word : text.toLowerCase(Locale.ENGLISH).split("[^\\p{L}\\p{N}]+"))
+        {
+            if (!word.isEmpty())
+            {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+}
@@ -24,6 +24,7 @@ import org.rapla.entities.domain.AppointmentStartComparator;
 import org.rapla.entities.domain.Repeating;
 import org.rapla.entities.domain.RepeatingType;
 import org.rapla.entities.domain.internal.AppointmentImpl;
+import org.rapla.entities.domain.internal.AppointmentOccurrenceCache;
 import org.rapla.rest.client.internal.isodate.ISODateTimeFormat;
 
 import java.util.*;
@@ -555,6 +556,136 @@ public class AppointmentTest {
         assertEquals( 1, blocks.size());        
     }
 
+
+    @Test
+    public void testCachedOccurrences()
+    {
+        List<Appointment> appointments = new ArrayList<>();
+        Appointment weekly = createAppointment("2020-01-06", "10:00", "12:00");
+        weekly.setRepeatingEnabled(true);
+        weekly.getRepeating().setType(RepeatingType.WEEKLY);
+        weekly.getRepeating().setWeekdays(new HashSet<>(Arrays.asList(DateTools.MONDAY, DateTools.THURSDAY)));
+        weekly.getRepeating().addException(createDate("2020-02-03"));
+        weekly.getRepeating().addException(createDate("2020-03-05"));
+        appointments.add(weekly);
+        Appointment daily = createAppointment("2020-01-01", "00:00", "00:00");
+        ((AppointmentImpl) daily).move(createDate("2020-01-01"), createDate("2020-01-02"));
+        daily.setRepeatingEnabled(true);
+        daily.getRepeating().setType(RepeatingType.DAILY);
+        daily.getRepeating().setEnd(createDate("2020-06-01"));
+        daily.getRepeating().addException(createDate("2020-01-10"));
+        appointments.add(daily);
+        Appointment monthly = createAppointment("2020-01-15", "08:00", "09:00");
+        monthly.setRepeatingEnabled(true);
+        monthly.getRepeating().setType(RepeatingType.MONTHLY);
+        monthly.getRepeating().setNumber(10);
+        appointments.add(monthly);
+        for (Appointment original : appointments)
+        {
+            AppointmentImpl cached = ((AppointmentImpl) original).clone();
+            cached.setReadOnly();
+            for (int month = 1; month <= 12; month++)
+            {
+                Date start = createDate("2020-" + month + "-01");
+                Date end = createDate("2020-" + month + "-20");
+                for (boolean excludeExceptions : new boolean[] { true, false })
+                {
+                    List<AppointmentBlock> expected = new ArrayList<>();
+                    original.createBlocks(start, end, expected, excludeExceptions);
+                    List<AppointmentBlock> blocks = new ArrayList<>();
+                    cached.createBlocks(start, end, blocks, excludeExceptions);
+                    assertEquals(original + " " + start, expected.size(), blocks.size());
+                    for (int i = 0; i < expected.size(); i++)
+                    {
+                        assertEquals(expected.get(i).getStart(), blocks.get(i).getStart());
+                        assertEquals(expected.get(i).getEnd(), blocks.get(i).getEnd());
+                        assertEquals(expected.get(i).isException(), blocks.get(i).isException());
+                    }
+                    assertEquals(original.overlaps(start, end), cached.overlaps(start, end));
+                }
+            }
+        }
+        // changing the appointment must drop the cached repetitions
+        AppointmentImpl cached = ((AppointmentImpl) weekly).clone();
+        cached.setReadOnly();
+        List<AppointmentBlock> expected = new ArrayList<>();
+        weekly.createBlocks(createDate("2020-01-01"), createDate("2020-03-01"), expected);
+        List<AppointmentBlock> blocks = new ArrayList<>();
+        cached.createBlocks(createDate("2020-01-01"), createDate("2020-03-01"), blocks);
+        assertEquals(expected.size(), blocks.size());
+        cached.copy(daily);
+        expected.clear();
+        daily.createBlocks(createDate("2020-01-01"), createDate("2020-03-01"), expected);
+        blocks.clear();
+        cached.createBlocks(createDate("2020-01-01"), createDate("2020-03-01"), blocks);
+        assertEquals(expected.size(), blocks.size());
+    }
+
+
+    @Test
+    public void testCachedOccurrencesAfterHorizon()
+    {
+        Appointment weekly = createAppointment("2030-01-07", "10:00", "12:00");
+        weekly.setRepeatingEnabled(true);
+        weekly.getRepeating().setType(RepeatingType.WEEKLY);
+        weekly.getRepeating().setEnd(null);
+        weekly.getRepeating().addException(createDate("2030-06-03"));
+        AppointmentImpl cached = ((AppointmentImpl) weekly).clone();
+        cached.setReadOnly();
+        AppointmentOccurrenceCache.setHorizon(DateTools.MILLISECONDS_PER_WEEK * 4);
+        try
+        {
+            // only the first repetitions are cached, the later ones are still calculated
+            List<AppointmentBlock> expected = new ArrayList<>();
+            weekly.createBlocks(createDate("2030-01-01"), createDate("2031-01-01"), expected, false);
+            List<AppointmentBlock> blocks = new ArrayList<>();
+            cached.createBlocks(createDate("2030-01-01"), createDate("2031-01-01"), blocks, false);
+            assertEquals(52, expected.size());
+            assertEquals(expected.size(), blocks.size());
+            for (int i = 0; i < expected.size(); i++)
+            {
+                assertEquals(expected.get(i).getStart(), blocks.get(i).getStart());
+                assertEquals(expected.get(i).isException(), blocks.get(i).isException());
+            }
+        }
+        finally
+        {
+            AppointmentOccurrenceCache.setHorizon(AppointmentOccurrenceCache.DEFAULT_HORIZON);
+        }
+    }
+
+
+    @Test
+    public void testManyExceptions()
+    {
+        Appointment a1 = createAppointment("2020-01-01", "10:00", "11:00");
+        a1.setRepeatingEnabled(true);
+        Repeating repeating = a1.getRepeating();
+        repeating.setType(RepeatingType.DAILY);
+        repeating.setEnd(createDate("2021-01-01"));
+        final long start = createDate("2020-01-01").getTime();
+        // every third day is an exception
+        for (int day = 0; day < 366; day += 3)
+        {
+            repeating.addException(new Date(start + day * DateTools.MILLISECONDS_PER_DAY));
+        }
+        for (int day = 0; day < 366; day++)
+        {
+            final long time = start + day * DateTools.MILLISECONDS_PER_DAY + 10 * DateTools.MILLISECONDS_PER_HOUR;
+            assertEquals("day " + day, day % 3 == 0, repeating.isException(time));
+        }
+        assertFalse(repeating.isException(start - 1));
+        List<AppointmentBlock> blocks = new ArrayList<>();
+        a1.createBlocks(createDate("2020-01-01"), createDate("2021-01-01"), blocks);
+        assertEquals(366 - 122, blocks.size());
+
+        // exceptions are respected when testing overlaps with single appointments
+        Appointment onException = createAppointment("2020-01-04", "10:30", "11:30");
+        Appointment onRepetition = createAppointment("2020-01-05", "10:30", "11:30");
+        assertFalse(a1.overlapsAppointment(onException));
+        assertTrue(a1.overlapsAppointment(onRepetition));
+    }
+
 }
 
 
@@ -23,6 +23,7 @@ import org.rapla.entities.DependencyException;
 import org.rapla.entities.Entity;
 import org.rapla.entities.User;
 import org.rapla.entities.internal.CategoryImpl;
+import org.rapla.entities.storage.CategoryHierarchy;
 import org.rapla.facade.RaplaFacade;
 import org.rapla.facade.client.ClientFacade;
 import org.rapla.test.util.RaplaTestCase;
@@ -149,6 +150,33 @@ import java.util.Map;
         Assert.assertTrue(areas.isAncestorOf(sub));
         Assert.assertFalse(sub.isAncestorOf(areas));
     }
+
+    @Test public void testStoredAncestorOf() throws Exception
+    {
+        CategoryHierarchy hierarchy = (CategoryHierarchy) raplaFacade.getOperator();
+        Category superCategory = raplaFacade.getSuperCategory();
+        Category department = superCategory.getCategory("department");
+        Category school = department.getCategory("elementary-springfield");
+        Assert.assertEquals(Boolean.TRUE, hierarchy.isAncestorOf(department, school));
+        Assert.assertTrue(superCategory.isAncestorOf(school));
+        Assert.assertFalse(school.isAncestorOf(department));
+        Assert.assertFalse(department.isAncestorOf(department));
+        Assert.assertFalse(department.getCategory("channel-6").isAncestorOf(school));
+
+        // the numbering is updated when the tree changes
+        Category channel6 = raplaFacade.edit(department.getCategory("channel-6"));
+        Category news = raplaFacade.newCategory();
+        news.setKey("news");
+        channel6.addCategory(news);
+        raplaFacade.store(channel6);
+        department = raplaFacade.getSuperCategory().getCategory("department");
+        news = department.getCategory("channel-6").getCategory("news");
+        Assert.assertEquals(Boolean.TRUE, hierarchy.isAncestorOf(department, news));
+        Assert.assertTrue(department.getCategory("channel-6").isAncestorOf(news));
+        Assert.assertFalse(department.getCategory("elementary-springfield").isAncestorOf(news));
+        // editable versions are not numbered
+        Assert.assertNull(hierarchy.isAncestorOf(raplaFacade.edit(department), news));
+    }
 }
 
 
@@ -26,6 +26,7 @@ import org.rapla.entities.dynamictype.AttributeType;
 import org.rapla.entities.dynamictype.ClassificationFilter;
 import org.rapla.entities.dynamictype.ClassificationFilterRule;
 import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.internal.ClassificationFilterPredicate;
 import org.rapla.facade.CalendarSelectionModel;
 import org.rapla.facade.RaplaFacade;
 import org.rapla.facade.client.ClientFacade;
@@ -34,8 +35,11 @@ import org.rapla.framework.TypedComponentRole;
 import org.rapla.plugin.weekview.WeekviewPlugin;
 import org.rapla.test.util.RaplaTestCase;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 
 @RunWith(JUnit4.class)
 public class ClassificationFilterTest  {
@@ -112,4 +116,77 @@ public class ClassificationFilterTest  {
         Assert.assertTrue(allocatables.length > 0);
     }
 
+    @Test
+    public void testCompiledFilter() throws Exception {
+        // select from room where seats > 20 or from lecturer where surname starts with 'simp'
+        ClassificationFilter roomFilter = raplaFacade.getDynamicType("room").newClassificationFilter();
+        roomFilter.addRule("seats", new Object[][] { { ">", 20L } });
+        ClassificationFilter lecturerFilter = raplaFacade.getDynamicType("lecturer").newClassificationFilter();
+        lecturerFilter.addRule("surname", new Object[][] { { "starts", "simp" } });
+        ClassificationFilter[] filters = new ClassificationFilter[] { roomFilter, lecturerFilter };
+        Assert.assertEquals("[Room A66, Simpson Homer]", getMatchingNames(ClassificationFilterPredicate.compile(filters)));
+
+        // the compiled filter must be updated when the type changes
+        {
+            DynamicType modifiableType = raplaFacade.edit(raplaFacade.getDynamicType("room"));
+            Attribute attribute = raplaFacade.newAttribute(AttributeType.STRING);
+            attribute.setKey("floor");
+            modifiableType.addAttribute(attribute);
+            raplaFacade.store(modifiableType);
+        }
+        Assert.assertEquals("[Room A66, Simpson Homer]", getMatchingNames(ClassificationFilterPredicate.compile(filters)));
+
+        // and when the rules change
+        roomFilter.removeAllRules();
+        Assert.assertEquals("[Room A66, Simpson Homer, erwin]", getMatchingNames(ClassificationFilterPredicate.compile(filters)));
+    }
+
+    @Test
+    public void testIndexedFilter() throws Exception {
+        // select from room where seats > 20 or name = 'erwin', both rules can be answered by the attribute value index of the storage
+        ClassificationFilter roomFilter = raplaFacade.getDynamicType("room").newClassificationFilter();
+        roomFilter.addRule("seats", new Object[][] { { ">", 20L } });
+        ClassificationFilter erwinFilter = raplaFacade.getDynamicType("room").newClassificationFilter();
+        erwinFilter.addEqualsRule("name", "erwin");
+        ClassificationFilter[] filters = new ClassificationFilter[] { roomFilter, erwinFilter };
+        Assert.assertEquals("[Room A66, erwin]", getNames(raplaFacade.getAllocatablesWithFilter(filters)));
+
+        // the index must be updated when the values change
+        {
+            Allocatable erwin = raplaFacade.edit(raplaFacade.getAllocatablesWithFilter(new ClassificationFilter[] { erwinFilter })[0]);
+            erwin.getClassification().setValue("name", "erwin2");
+            erwin.getClassification().setValue("seats", 40L);
+            raplaFacade.store(erwin);
+        }
+        Assert.assertEquals("[Room A66, erwin2]", getNames(raplaFacade.getAllocatablesWithFilter(filters)));
+        Assert.assertEquals("[]", getNames(raplaFacade.getAllocatablesWithFilter(new ClassificationFilter[] { erwinFilter })));
+    }
+
+    private String getNames(Allocatable[] allocatables)
+    {
+        List<String> names = new ArrayList<>();
+        for (Allocatable allocatable : allocatables)
+        {
+            names.add(allocatable.getName(Locale.ENGLISH));
+        }
+        Collections.sort(names);
+        return names.toString();
+    }
+
+    private String getMatchingNames(ClassificationFilterPredicate predicate) throws Exception
+    {
+        List<String> names = new ArrayList<>();
+        for (Allocatable allocatable : raplaFacade.getAllocatables())
+        {
+            final boolean matches = predicate.test(allocatable);
+            Assert.assertEquals(ClassificationFilter.Util.matches(predicate.getFilters(), allocatable), matches);
+            if (matches)
+            {
+                names.add(allocatable.getName(Locale.ENGLISH));
+            }
+        }
+        Collections.sort(names);
+        return names.toString();
+    }
+
 }
@@ -56,6 +56,8 @@ import org.rapla.framework.internal.RaplaLocaleImpl;
 import org.rapla.logger.Logger;
 import org.rapla.plugin.weekview.WeekviewPlugin;
 import org.rapla.scheduler.Promise;
+import org.rapla.storage.ConflictPage;
+import org.rapla.storage.ConflictQuery;
 import org.rapla.storage.StorageOperator;
 import org.rapla.test.util.RaplaTestCase;
 
@@ -255,6 +257,62 @@ public class ClientFacadeTest  {
             }
         }
     }
+
+
+    @Test
+    public void testConflictsForReservationsWithBelongsTo() throws Exception
+    {
+        Promise<Collection<Reservation>> all = facade.getReservationsForAllocatable(null, null, null, null);
+        facade.removeObjects( RaplaTestCase.waitForWithRaplaException(all, 10000).toArray(Reservation.RESERVATION_ARRAY) );
+        final DynamicType resourceType = facade.getDynamicType("room");
+        final Allocatable building = facade.getAllocatablesWithFilter(resourceType.newClassificationFilter().toArray())[0];
+        final User user = clientFacade.getUser();
+        final DynamicType roomType = facade.newDynamicType(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESOURCE);
+        roomType.setKey("buildingroom");
+        roomType.getName().setName("en","Buildingroom");
+        final Attribute attribute = facade.newAttribute(AttributeType.ALLOCATABLE);
+        attribute.setKey("belongsTo");
+        attribute.setConstraint(ConstraintIds.KEY_BELONGS_TO, "true");
+        attribute.setConstraint(ConstraintIds.KEY_DYNAMIC_TYPE, resourceType);
+        roomType.addAttribute( attribute );
+        facade.store( roomType);
+        final Allocatable[] rooms = new Allocatable[2];
+        for (int i = 0; i < rooms.length; i++)
+        {
+            final Classification classification = roomType.newClassification();
+            classification.setValue("belongsTo", building);
+            classification.setValue("name","room" + i);
+            final Allocatable room = facade.newAllocatable(classification, user);
+            facade.store( room);
+            rooms[i] = facade.getPersistent( room);
+        }
+        Date start = DateTools.toDateTime(new Date(), new Date(DateTools.toTime(10, 0, 0)));
+        Date end = DateTools.toDateTime( start,new Date(DateTools.toTime(  12,0,0)));
+        {
+            final Reservation stored = facade.newReservationDeprecated();
+            stored.getClassification().setValue("name", "stored");
+            stored.addAppointment( facade.newAppointmentDeprecated( start, end));
+            stored.addAllocatable(rooms[0]);
+            facade.store(stored);
+        }
+        final Reservation siblingRoom = facade.newReservationDeprecated();
+        siblingRoom.getClassification().setValue("name", "sibling");
+        siblingRoom.addAppointment( facade.newAppointmentDeprecated( start, end));
+        siblingRoom.addAllocatable(rooms[1]);
+        final Reservation wholeBuilding = facade.newReservationDeprecated();
+        wholeBuilding.getClassification().setValue("name", "building");
+        wholeBuilding.addAppointment( facade.newAppointmentDeprecated( start, end));
+        wholeBuilding.addAllocatable(building);
+
+        // the other room of the building is free, only the building itself conflicts with the stored event
+        Assert.assertEquals(0, RaplaTestCase.waitForWithRaplaException(facade.getConflictsForReservation(siblingRoom), 10000).size());
+        Assert.assertEquals(1, RaplaTestCase.waitForWithRaplaException(facade.getConflictsForReservation(wholeBuilding), 10000).size());
+        final Collection<Conflict> conflicts = RaplaTestCase.waitForWithRaplaException(facade.getConflictsForReservations(Arrays.asList(siblingRoom, wholeBuilding)), 10000);
+        Assert.assertEquals(1, conflicts.size());
+        final Conflict conflict = conflicts.iterator().next();
+        Assert.assertEquals(wholeBuilding.getReference(), conflict.getReservation1());
+        Assert.assertEquals(building.getReference(), conflict.getAllocatableId());
+    }
     
     @Test
     public void testGroup() throws Exception
@@ -376,6 +434,84 @@ public class ClientFacadeTest  {
     }
 
 
+    @Test
+    public void testQueryConflictsPaged() throws Exception {
+        Promise<Collection<Reservation>> all = facade.getReservationsForAllocatable(null, null, null, null);
+        facade.removeObjects( RaplaTestCase.waitForWithRaplaException(all, 10000).toArray(Reservation.RESERVATION_ARRAY) );
+        final Allocatable first = facade.getAllocatables()[0];
+        final Allocatable second = facade.getAllocatables()[1];
+        final Date day = DateTools.toDateTime(DateTools.addDay(new Date()), new Date(DateTools.toTime(10, 0, 0)));
+        // five conflicts on the first and one on the second allocatable
+        for (int i = 0; i < 5; i++)
+        {
+            storeEvent(first, DateTools.addDays(day, i));
+            storeEvent(first, DateTools.addDays(day, i));
+        }
+        storeEvent(second, DateTools.addDays(day, 10));
+        storeEvent(second, DateTools.addDays(day, 10));
+
+        Set<String> allIds = new HashSet<>();
+        for (Conflict conflict : RaplaTestCase.waitForWithRaplaException(facade.getConflicts(), 10000))
+        {
+            allIds.add(conflict.getId());
+        }
+        Assert.assertEquals(6, allIds.size());
+
+        ConflictQuery query = new ConflictQuery();
+        query.setLimit(4);
+        final ConflictPage firstPage = RaplaTestCase.waitForWithRaplaException(facade.queryConflicts(query), 10000);
+        Assert.assertEquals(6, firstPage.getTotalCount());
+        Assert.assertEquals(4, firstPage.getConflicts().size());
+        Assert.assertNotNull(firstPage.getNextCursor());
+        query.setCursor(firstPage.getNextCursor());
+        final ConflictPage secondPage = RaplaTestCase.waitForWithRaplaException(facade.queryConflicts(query), 10000);
+        Assert.assertEquals(2, secondPage.getConflicts().size());
+        Assert.assertNull(secondPage.getNextCursor());
+        final List<Conflict> paged = new ArrayList<>(firstPage.getConflicts());
+        paged.addAll(secondPage.getConflicts());
+        Set<String> pagedIds = new HashSet<>();
+        Date lastStart = null;
+        for (Conflict conflict : paged)
+        {
+            pagedIds.add(conflict.getId());
+            // pages are ordered by the start of the conflict
+            Assert.assertTrue(lastStart == null || !conflict.getStartDate().before(lastStart));
+            lastStart = conflict.getStartDate();
+        }
+        Assert.assertEquals(allIds, pagedIds);
+
+        ConflictQuery allocatableQuery = new ConflictQuery();
+        allocatableQuery.setAllocatableIds(new String[] { second.getId() });
+        final ConflictPage secondAllocatable = RaplaTestCase.waitForWithRaplaException(facade.queryConflicts(allocatableQuery), 10000);
+        Assert.assertEquals(1, secondAllocatable.getTotalCount());
+        Assert.assertEquals(second, secondAllocatable.getConflicts().get(0).getAllocatable());
+
+        ConflictQuery timeQuery = new ConflictQuery(DateTools.addDays(day, 1), DateTools.addDays(day, 3));
+        Assert.assertEquals(2, RaplaTestCase.waitForWithRaplaException(facade.queryConflicts(timeQuery), 10000).getConflicts().size());
+
+        ConflictQuery typeQuery = new ConflictQuery();
+        typeQuery.setReservationTypes(new String[] { "event" });
+        Assert.assertEquals(6, RaplaTestCase.waitForWithRaplaException(facade.queryConflicts(typeQuery), 10000).getTotalCount());
+        typeQuery.setReservationTypes(new String[] { "unknown" });
+        Assert.assertEquals(0, RaplaTestCase.waitForWithRaplaException(facade.queryConflicts(typeQuery), 10000).getTotalCount());
+
+        ConflictQuery countQuery = new ConflictQuery();
+        countQuery.setCountOnly(true);
+        final ConflictPage count = RaplaTestCase.waitForWithRaplaException(facade.queryConflicts(countQuery), 10000);
+        Assert.assertEquals(6, count.getTotalCount());
+        Assert.assertTrue(count.getConflicts().isEmpty());
+        Assert.assertNull(count.getNextCursor());
+    }
+
+    private void storeEvent(Allocatable allocatable, Date start) throws RaplaException
+    {
+        Reservation event = facade.newReservationDeprecated();
+        event.getClassification().setValue("name", "conflicting");
+        event.addAppointment(facade.newAppointmentDeprecated(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR * 2)));
+        event.addAllocatable(allocatable);
+        facade.store(event);
+    }
+
     @Test
     public void testClone() throws Exception {
         User user = facade.getUser("homer");
@@ -0,0 +1,363 @@
+package org.rapla.framework.internal;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.logger.Logger;
+import org.rapla.logger.RaplaBootstrapLogger;
+import org.rapla.scheduler.Promise;
+import org.rapla.server.internal.TimeZoneConverterImpl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class DefaultSchedulerTest
+{
+    Logger logger;
+    DefaultScheduler scheduler;
+
+    @Before
+    public void setUp()
+    {
+        logger = RaplaBootstrapLogger.createRaplaLogger();
+        final Map<String, ExecutorPool.Config> configs = new HashMap<>();
+        configs.put(DefaultScheduler.EXPORT_POOL, new ExecutorPool.Config(1, 1, ExecutorPool.Rejection.abort, false));
+        scheduler = new DefaultScheduler(logger, new TimeZoneConverterImpl(), 2, configs);
+    }
+
+    @After
+    public void tearDown()
+    {
+        scheduler.dispose();
+    }
+
+    @Test
+    public void pools() throws Exception
+    {
+        final String requestThread = waitFor(scheduler.supply(() -> Thread.currentThread().getName()));
+        Assert.assertTrue(requestThread, requestThread.startsWith("rapla-request-"));
+        final String[] exportThread = new String[1];
+        waitFor(scheduler.run(DefaultScheduler.EXPORT_POOL, () -> exportThread[0] = Thread.currentThread().getName()));
+        Assert.assertTrue(exportThread[0], exportThread[0].startsWith("rapla-export-"));
+        Assert.assertEquals(0, scheduler.getPool(DefaultScheduler.BACKGROUND_POOL).getPoolSize());
+        Assert.assertEquals(3, scheduler.getPools().size());
+    }
+
+    @Test
+    public void boundedQueue() throws Exception
+    {
+        final ExecutorPool pool = scheduler.getPool(DefaultScheduler.EXPORT_POOL);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Promise<Void> running = scheduler.run(DefaultScheduler.EXPORT_POOL, () -> {
+            started.countDown();
+            release.await();
+        });
+        started.await();
+        final Promise<Void> queued = scheduler.run(DefaultScheduler.EXPORT_POOL, () -> {
+        });
+        Assert.assertEquals(1, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getQueueDepth());
+        // the queue is full, so the next export is rejected and does not block the caller
+        final Promise<Void> rejected = scheduler.run(DefaultScheduler.EXPORT_POOL, () -> {
+        });
+        try
+        {
+            waitFor(rejected);
+            Assert.fail("RejectedExecutionException expected");
+        }
+        catch (ExecutionException ex)
+        {
+            Assert.assertTrue(ex.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertEquals(1, pool.getRejectedCount());
+        release.countDown();
+        waitFor(running);
+        waitFor(queued);
+        Assert.assertEquals(0, pool.getQueueDepth());
+    }
+
+    @Test
+    public void discardOldestCompletesDroppedPromise() throws Exception
+    {
+        final Map<String, ExecutorPool.Config> configs = new HashMap<>();
+        configs.put(DefaultScheduler.EXPORT_POOL, new ExecutorPool.Config(1, 1, ExecutorPool.Rejection.discardOldest, false));
+        final DefaultScheduler discardScheduler = new DefaultScheduler(logger, new TimeZoneConverterImpl(), 2, configs);
+        try
+        {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final Promise<Void> running = discardScheduler.run(DefaultScheduler.EXPORT_POOL, () -> {
+                started.countDown();
+                release.await();
+            });
+            started.await();
+            final Promise<Void> dropped = discardScheduler.run(DefaultScheduler.EXPORT_POOL, () -> {
+            });
+            final Promise<Void> queued = discardScheduler.run(DefaultScheduler.EXPORT_POOL, () -> {
+            });
+            // the dropped task is completed, so its caller doesn't wait forever
+            try
+            {
+                waitFor(dropped);
+                Assert.fail("RejectedExecutionException expected");
+            }
+            catch (ExecutionException ex)
+            {
+                Assert.assertTrue(ex.getCause() instanceof RejectedExecutionException);
+            }
+            release.countDown();
+            waitFor(running);
+            waitFor(queued);
+        }
+        finally
+        {
+            discardScheduler.dispose();
+        }
+    }
+
+    @Test
+    public void disposeCompletesQueuedPromises() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        scheduler.run(DefaultScheduler.EXPORT_POOL, () -> {
+            started.countDown();
+            new CountDownLatch(1).await();
+        });
+        started.await();
+        // the continuations of the promises can't run after the dispose, so the result is observed before
+        final CompletableFuture<Void> queued = toFuture(scheduler.run(DefaultScheduler.EXPORT_POOL, () -> {
+        }));
+        scheduler.dispose();
+        try
+        {
+            queued.get(10, TimeUnit.SECONDS);
+            Assert.fail("RejectedExecutionException expected");
+        }
+        catch (ExecutionException ex)
+        {
+            Assert.assertTrue(ex.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void schedule() throws Exception
+    {
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch repeated = new CountDownLatch(3);
+        final String[] thread = new String[1];
+        final io.reactivex.rxjava3.disposables.Disposable disposable = scheduler.schedule(() -> {
+            thread[0] = Thread.currentThread().getName();
+            repeated.countDown();
+            if (count.incrementAndGet() == 1)
+            {
+                throw new IllegalStateException("the next runs are still scheduled");
+            }
+        }, 0, 10);
+        Assert.assertTrue(repeated.await(10, TimeUnit.SECONDS));
+        disposable.dispose();
+        Assert.assertTrue(thread[0], thread[0].startsWith("rapla-background-"));
+        Thread.sleep(50);
+        final int countAfterDispose = count.get();
+        Thread.sleep(100);
+        Assert.assertEquals(countAfterDispose, count.get());
+    }
+
+    @Test
+    public void fullBackgroundPoolRetriesJob() throws Exception
+    {
+        final Map<String, ExecutorPool.Config> configs = new HashMap<>();
+        configs.put(DefaultScheduler.BACKGROUND_POOL, new ExecutorPool.Config(1, 1, ExecutorPool.Rejection.abort, false));
+        final DefaultScheduler fullScheduler = new DefaultScheduler(logger, new TimeZoneConverterImpl(), 2, configs);
+        try
+        {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final Promise<Void> running = fullScheduler.run(DefaultScheduler.BACKGROUND_POOL, () -> {
+                started.countDown();
+                release.await();
+            });
+            started.await();
+            final Promise<Void> queued = fullScheduler.run(DefaultScheduler.BACKGROUND_POOL, () -> {
+            });
+            final CountDownLatch executed = new CountDownLatch(1);
+            final String[] thread = new String[1];
+            final io.reactivex.rxjava3.disposables.Disposable disposable = fullScheduler.schedule(() -> {
+                thread[0] = Thread.currentThread().getName();
+                executed.countDown();
+            }, 0, 10);
+            // the job is rejected and not run in place on the timer thread
+            Assert.assertFalse(executed.await(100, TimeUnit.MILLISECONDS));
+            Assert.assertTrue(fullScheduler.getPool(DefaultScheduler.BACKGROUND_POOL).getRejectedCount() > 0);
+            release.countDown();
+            waitFor(running);
+            waitFor(queued);
+            Assert.assertTrue(executed.await(10, TimeUnit.SECONDS));
+            disposable.dispose();
+            Assert.assertTrue(thread[0], thread[0].startsWith("rapla-background-"));
+        }
+        finally
+        {
+            fullScheduler.dispose();
+        }
+    }
+
+    @Test
+    public void fullRequestPoolRejectsPromise() throws Exception
+    {
+        Assert.assertEquals(ExecutorPool.Rejection.abort, DefaultScheduler.getDefaultConfig(DefaultScheduler.REQUEST_POOL).getRejection());
+        final Map<String, ExecutorPool.Config> configs = new HashMap<>();
+        configs.put(DefaultScheduler.REQUEST_POOL, DefaultScheduler.getDefaultConfig(DefaultScheduler.REQUEST_POOL).withSize(1).withQueueSize(1));
+        final DefaultScheduler fullScheduler = new DefaultScheduler(logger, new TimeZoneConverterImpl(), 2, configs);
+        try
+        {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final Promise<Void> running = fullScheduler.run(() -> {
+                started.countDown();
+                release.await();
+            });
+            started.await();
+            final Promise<Void> queued = fullScheduler.run(() -> {
+            });
+            final Thread caller = Thread.currentThread();
+            final Promise<Thread> rejected = fullScheduler.supply(Thread::currentThread);
+            try
+            {
+                final Thread thread = waitFor(rejected);
+                Assert.fail("RejectedExecutionException expected, but executed in " + (thread == caller ? "the caller" : thread.getName()));
+            }
+            catch (ExecutionException ex)
+            {
+                Assert.assertTrue(ex.getCause() instanceof RejectedExecutionException);
+            }
+            release.countDown();
+            waitFor(running);
+            waitFor(queued);
+        }
+        finally
+        {
+            fullScheduler.dispose();
+        }
+    }
+
+    @Test
+    public void threadPerTask() throws Exception
+    {
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorPool pool = new ExecutorPool("perTask", new ExecutorPool.Config(1, 2, ExecutorPool.Rejection.abort, true),
+                (runnable) -> new Thread(runnable, "perTask-" + threadCount.incrementAndGet()));
+        try
+        {
+            // blocking tasks don't wait for a pool thread, up to size + queue tasks run at the same time
+            final CountDownLatch started = new CountDownLatch(3);
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch finished = new CountDownLatch(3);
+            for (int i = 0; i < 3; i++)
+            {
+                pool.execute(() -> {
+                    started.countDown();
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    finished.countDown();
+                });
+            }
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(3, pool.getActiveCount());
+            Assert.assertEquals(0, pool.getQueueDepth());
+            try
+            {
+                pool.execute(() -> {
+                });
+                Assert.fail("RejectedExecutionException expected");
+            }
+            catch (RejectedExecutionException ex)
+            {
+            }
+            Assert.assertEquals(1, pool.getRejectedCount());
+            release.countDown();
+            Assert.assertTrue(finished.await(10, TimeUnit.SECONDS));
+            // a finished task frees its permit
+            final CountDownLatch executed = new CountDownLatch(1);
+            pool.execute(executed::countDown);
+            Assert.assertTrue(executed.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(4, threadCount.get());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        try
+        {
+            pool.execute(() -> {
+            });
+            Assert.fail("RejectedExecutionException expected");
+        }
+        catch (RejectedExecutionException ex)
+        {
+        }
+    }
+
+    @Test
+    public void virtualThreads()
+    {
+        final ExecutorPool pool = new ExecutorPool(logger, "virtual", new ExecutorPool.Config(2, 10, ExecutorPool.Rejection.callerRuns, true));
+        try
+        {
+            boolean supported;
+            try
+            {
+                Thread.class.getMethod("ofVirtual");
+                supported = true;
+            }
+            catch (NoSuchMethodException ex)
+            {
+                supported = false;
+            }
+            // falls back to platform threads on older runtimes
+            Assert.assertEquals(supported, pool.isVirtualThreads());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    private <T> T waitFor(Promise<T> promise) throws Exception
+    {
+        return toFuture(promise).get(10, TimeUnit.SECONDS);
+    }
+
+    private <T> CompletableFuture<T> toFuture(Promise<T> promise)
+    {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        promise.handle((result, ex) -> {
+            if (ex != null)
+            {
+                future.completeExceptionally(ex);
+            }
+            else
+            {
+                future.complete(result);
+            }
+            return result;
+        });
+        return future;
+    }
+}
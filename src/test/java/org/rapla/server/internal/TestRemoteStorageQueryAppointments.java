@@ -0,0 +1,155 @@
+package org.rapla.server.internal;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.EntityNotFoundException;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.ClassificationFilter;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.internal.ClassificationFilterImpl;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.facade.client.ClientFacade;
+import org.rapla.logger.Logger;
+import org.rapla.rest.JsonParserWrapper;
+import org.rapla.server.RemoteSession;
+import org.rapla.storage.CachableStorageOperator;
+import org.rapla.storage.dbrm.AppointmentMap;
+import org.rapla.storage.dbrm.RemoteStorage.QueryAppointments;
+import org.rapla.test.util.RaplaTestCase;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** queries the appointments with the reservation filters of the client, that are evaluated on the server */
+@RunWith(JUnit4.class)
+public class TestRemoteStorageQueryAppointments
+{
+    RaplaFacade facade;
+    CachableStorageOperator operator;
+    RemoteStorageImpl remoteStorage;
+    JsonParserWrapper.JsonParser json;
+    Allocatable allocatable;
+    Date start;
+    Date end;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        final Logger logger = RaplaTestCase.initLoger();
+        final ClientFacade clientFacade = RaplaTestCase.createSimpleSimpsonsWithHomer();
+        facade = clientFacade.getRaplaFacade();
+        operator = (CachableStorageOperator) facade.getOperator();
+        final User homer = clientFacade.getUser();
+        remoteStorage = new RemoteStorageImpl(null);
+        remoteStorage.operator = operator;
+        remoteStorage.security = new SecurityManager(logger, null, null, operator);
+        remoteStorage.session = new RemoteSession()
+        {
+            @Override
+            public Logger getLogger()
+            {
+                return logger;
+            }
+
+            @Override
+            public User checkAndGetUser(HttpServletRequest request)
+            {
+                return homer;
+            }
+
+            @Override
+            public boolean isAuthentified(HttpServletRequest request)
+            {
+                return true;
+            }
+
+            @Override
+            public void logout()
+            {
+            }
+        };
+        json = JsonParserWrapper.defaultJson().get();
+        allocatable = facade.getAllocatables()[0];
+        start = DateTools.toDateTime(DateTools.addDay(new Date()), new Date(DateTools.toTime(10, 0, 0)));
+        end = DateTools.addDays(start, 1);
+        storeEvent("server filter match");
+        storeEvent("server filter other");
+    }
+
+    @Test
+    public void reservationFilterIsEvaluatedOnServer() throws Exception
+    {
+        final ClassificationFilter filter = facade.getDynamicType("event").newClassificationFilter();
+        filter.addEqualsRule("name", "server filter match");
+        final Set<String> names = queryNames(filter);
+        Assert.assertEquals(Collections.singleton("server filter match"), names);
+
+        // without filter both events are returned
+        Assert.assertTrue(queryNames().containsAll(new TreeSet<>(Arrays.asList("server filter match", "server filter other"))));
+    }
+
+    @Test
+    public void unknownTypeInReservationFilter() throws Exception
+    {
+        final DynamicType eventType = facade.getDynamicType("event");
+        // a client with an outdated type sends the id of a type, that the server does not know
+        final String filterJson = json.toJson(eventType.newClassificationFilter()).replace(eventType.getId(), "unknown_type");
+        final ClassificationFilterImpl unknownFilter = json.fromJson(filterJson, ClassificationFilterImpl.class);
+        try
+        {
+            queryNames(unknownFilter);
+            Assert.fail("EntityNotFoundException expected");
+        }
+        catch (EntityNotFoundException ex)
+        {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("unknown_type"));
+        }
+    }
+
+    private Set<String> queryNames(ClassificationFilter... filters) throws Exception
+    {
+        final QueryAppointments query = new QueryAppointments(null, new String[] { allocatable.getId() }, start, end, null, false);
+        if (filters.length > 0)
+        {
+            final List<ClassificationFilterImpl> reservationFilters = new ArrayList<>();
+            for (ClassificationFilter filter : filters)
+            {
+                reservationFilters.add((ClassificationFilterImpl) filter);
+            }
+            query.setReservationFilters(reservationFilters);
+        }
+        // the query and the result are transferred as json like in a rest call
+        final QueryAppointments sent = json.fromJson(json.toJson(query), QueryAppointments.class);
+        final AppointmentMap result = RaplaTestCase.waitForWithRaplaException(remoteStorage.queryAppointments(sent), 10000);
+        final AppointmentMap received = json.fromJson(json.toJson(result), AppointmentMap.class);
+        received.init(operator);
+        final Set<String> names = new TreeSet<>();
+        for (Appointment appointment : received.getResult(null).getAllAppointments())
+        {
+            names.add((String) appointment.getReservation().getClassification().getValue("name"));
+        }
+        return names;
+    }
+
+    private void storeEvent(String name) throws Exception
+    {
+        final Reservation event = facade.newReservationDeprecated();
+        event.getClassification().setValue("name", name);
+        event.addAppointment(facade.newAppointmentDeprecated(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR * 2)));
+        event.addAllocatable(allocatable);
+        facade.store(event);
+    }
+}
@@ -0,0 +1,154 @@
+package org.rapla.server.provider.resteasy;
+
+import org.jboss.resteasy.core.Dispatcher;
+import org.jboss.resteasy.mock.MockDispatcherFactory;
+import org.jboss.resteasy.mock.MockHttpRequest;
+import org.jboss.resteasy.mock.MockHttpResponse;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.RaplaBootstrapLogger;
+import org.rapla.rest.server.provider.json.JsonWriter;
+import org.rapla.scheduler.CompletablePromise;
+import org.rapla.scheduler.Promise;
+import org.rapla.scheduler.ResolvedPromise;
+import org.rapla.scheduler.sync.UtilConcurrentCommandScheduler;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class PromiseAsyncResponseProviderTest
+{
+    Dispatcher dispatcher;
+    static UtilConcurrentCommandScheduler scheduler = new UtilConcurrentCommandScheduler(RaplaBootstrapLogger.createRaplaLogger(), 2);
+    static CountDownLatch release;
+
+    @Path("promise")
+    public static class PromiseResource
+    {
+        @GET
+        @Path("resolved")
+        @Produces(MediaType.APPLICATION_JSON)
+        public Promise<String> resolved()
+        {
+            return new ResolvedPromise<>("resolved");
+        }
+
+        @GET
+        @Path("later")
+        @Produces(MediaType.APPLICATION_JSON)
+        public Promise<String> later()
+        {
+            final CompletablePromise<String> promise = scheduler.createCompletable();
+            scheduler.execute(() -> {
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException ex)
+                {
+                    promise.completeExceptionally(ex);
+                    return;
+                }
+                promise.complete("later");
+            });
+            return promise;
+        }
+
+        @GET
+        @Path("error")
+        @Produces(MediaType.APPLICATION_JSON)
+        public Promise<String> error()
+        {
+            return scheduler.supply(() -> {
+                throw new RaplaException("query failed");
+            });
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        dispatcher = MockDispatcherFactory.createDispatcher();
+        dispatcher.getProviderFactory().registerProvider(PromiseAsyncResponseProvider.class);
+        dispatcher.getProviderFactory().registerProvider(ResteasyExceptionMapper.class);
+        dispatcher.getProviderFactory().registerProvider(JsonWriter.class);
+        dispatcher.getRegistry().addPerRequestResource(PromiseResource.class);
+        release = new CountDownLatch(1);
+    }
+
+    @AfterClass
+    public static void disposeScheduler()
+    {
+        scheduler.cancel();
+    }
+
+    @Test
+    public void resolved() throws Exception
+    {
+        final MockHttpResponse response = invoke("resolved");
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertTrue(response.getContentAsString(), response.getContentAsString().contains("resolved"));
+    }
+
+    @Test
+    public void later() throws Exception
+    {
+        // releases the promise in case the request blocks
+        final Thread releaseThread = new Thread(() -> {
+            try
+            {
+                Thread.sleep(2000);
+            }
+            catch (InterruptedException ex)
+            {
+            }
+            release.countDown();
+        });
+        releaseThread.start();
+        final MockHttpRequest request = MockHttpRequest.get("/promise/later");
+        final MockHttpResponse response = new MockHttpResponse();
+        dispatcher.invoke(request, response);
+        // the request returned without waiting for the promise
+        Assert.assertEquals(0, response.getOutput().length);
+        releaseThread.interrupt();
+        waitForResponse(response);
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertTrue(response.getContentAsString(), response.getContentAsString().contains("later"));
+    }
+
+    @Test
+    public void error() throws Exception
+    {
+        final MockHttpResponse response = invoke("error");
+        Assert.assertEquals(500, response.getStatus());
+        Assert.assertTrue(response.getContentAsString(), response.getContentAsString().contains("query failed"));
+    }
+
+    private MockHttpResponse invoke(String path) throws Exception
+    {
+        final MockHttpRequest request = MockHttpRequest.get("/promise/" + path);
+        final MockHttpResponse response = new MockHttpResponse();
+        dispatcher.invoke(request, response);
+        waitForResponse(response);
+        return response;
+    }
+
+    private void waitForResponse(MockHttpResponse response) throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (response.getOutput().length == 0 && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(10);
+        }
+    }
+}
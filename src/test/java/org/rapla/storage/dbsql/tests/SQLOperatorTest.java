@@ -52,12 +52,16 @@ import org.rapla.storage.dbsql.DBOperator;
 import org.rapla.storage.tests.AbstractOperatorTest;
 import org.rapla.test.util.RaplaTestCase;
 
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
@@ -65,10 +69,17 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @RunWith(JUnit4.class)
 public class SQLOperatorTest extends AbstractOperatorTest
@@ -76,6 +87,8 @@ public class SQLOperatorTest extends AbstractOperatorTest
 
     RaplaFacade facade;
     Logger logger;
+    /** the operator waits for the gate before it opens a connection*/
+    volatile CountDownLatch connectionGate = new CountDownLatch(0);
 
     
     @Before
@@ -84,7 +97,7 @@ public class SQLOperatorTest extends AbstractOperatorTest
         logger = RaplaTestCase.initLoger();
         org.hsqldb.jdbc.JDBCDataSource datasource = createDatasource();
         String xmlFile = "/testdefault.xml";
-        facade = RaplaTestCase.createFacadeWithDatasource(logger, datasource, xmlFile);
+        facade = RaplaTestCase.createFacadeWithDatasource(logger, createGatedDatasource(datasource), xmlFile);
     }
 
     @NotNull public JDBCDataSource createDatasource()
@@ -96,6 +109,24 @@ public class SQLOperatorTest extends AbstractOperatorTest
         return datasource;
     }
 
+    private DataSource createGatedDatasource(DataSource datasource)
+    {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { DataSource.class }, (proxy, method, args) -> {
+            if (method.getName().equals("getConnection"))
+            {
+                connectionGate.await();
+            }
+            try
+            {
+                return method.invoke(datasource, args);
+            }
+            catch (InvocationTargetException ex)
+            {
+                throw ex.getCause();
+            }
+        });
+    }
+
     @After
     public void shutDown() throws Exception
     {
@@ -537,6 +568,217 @@ public class SQLOperatorTest extends AbstractOperatorTest
         }
     }
 
+    @Test
+    public void testConcurrentDispatches() throws Exception
+    {
+        RaplaFacade facade = getFacade();
+        CachableStorageOperator operator = getOperator();
+        final User user = facade.getUser("homer");
+        final int count = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            // dispatches waiting for the write lock are stored together
+            List<Future<Reservation>> futures = new ArrayList<>();
+            for (int i = 0; i < count; i++)
+            {
+                final String name = "concurrent-" + i;
+                futures.add(executor.submit(() -> {
+                    Reservation event = newEvent(name, user);
+                    facade.store(event);
+                    return event;
+                }));
+            }
+            List<Reservation> stored = new ArrayList<>();
+            for (Future<Reservation> future : futures)
+            {
+                stored.add(future.get());
+            }
+            Reservation first = facade.tryResolve(stored.get(0).getReference());
+            Assert.assertNotNull(first);
+
+            // concurrent changes of the same version are not stored together, so only one of them succeeds
+            List<Future<Reservation>> edits = new ArrayList<>();
+            for (int i = 0; i < 4; i++)
+            {
+                final String name = "concurrent-edit-" + i;
+                edits.add(executor.submit(() -> {
+                    Reservation edit = facade.edit(first);
+                    edit.getClassification().setValue("name", name);
+                    facade.store(edit);
+                    return edit;
+                }));
+            }
+            int failed = 0;
+            for (Future<Reservation> future : edits)
+            {
+                try
+                {
+                    future.get();
+                }
+                catch (ExecutionException ex)
+                {
+                    failed++;
+                }
+            }
+            Assert.assertEquals(3, failed);
+
+            operator.disconnect();
+            operator.connect();
+            for (Reservation event : stored)
+            {
+                Assert.assertNotNull(facade.tryResolve(event.getReference()));
+            }
+            Assert.assertTrue(facade.tryResolve(first.getReference()).getName(null).startsWith("concurrent-edit-"));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentDispatchRolledBackAlone() throws Exception
+    {
+        RaplaFacade facade = getFacade();
+        CachableStorageOperator operator = getOperator();
+        final User user = facade.getUser("homer");
+        final List<Reservation> events = new ArrayList<>();
+        events.add(newEvent("group-1", user));
+        // the name is longer than the attribute value column, so the insert fails after the event row is written
+        final StringBuilder tooLong = new StringBuilder();
+        while (tooLong.length() <= 15000)
+        {
+            tooLong.append("too long ");
+        }
+        events.add(newEvent(tooLong.toString(), user));
+        events.add(newEvent("group-3", user));
+        ExecutorService executor = Executors.newFixedThreadPool(events.size());
+        try
+        {
+            final List<Callable<Reservation>> stores = new ArrayList<>();
+            for (Reservation event : events)
+            {
+                stores.add(() -> {
+                    facade.store(event);
+                    return event;
+                });
+            }
+            final List<Future<Reservation>> futures = submitWithBlockedConnections(executor, stores);
+            futures.get(0).get();
+            try
+            {
+                futures.get(1).get();
+                Assert.fail("Storing a too long value should fail");
+            }
+            catch (ExecutionException ex)
+            {
+            }
+            futures.get(2).get();
+
+            operator.disconnect();
+            operator.connect();
+            Assert.assertNotNull(facade.tryResolve(events.get(0).getReference()));
+            // the event row of the failed dispatch is rolled back with its savepoint
+            Assert.assertNull(facade.tryResolve(events.get(1).getReference()));
+            Assert.assertNotNull(facade.tryResolve(events.get(2).getReference()));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentUsersWithSameUsername() throws Exception
+    {
+        RaplaFacade facade = getFacade();
+        CachableStorageOperator operator = getOperator();
+        final List<User> users = new ArrayList<>();
+        for (int i = 0; i < 2; i++)
+        {
+            final User user = facade.newUser();
+            user.setUsername("concurrent-user");
+            user.setName("Concurrent " + i);
+            users.add(user);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(users.size());
+        try
+        {
+            final List<Callable<User>> stores = new ArrayList<>();
+            for (User user : users)
+            {
+                stores.add(() -> {
+                    facade.store(user);
+                    return user;
+                });
+            }
+            int failed = 0;
+            for (Future<User> future : submitWithBlockedConnections(executor, stores))
+            {
+                try
+                {
+                    future.get();
+                }
+                catch (ExecutionException ex)
+                {
+                    failed++;
+                }
+            }
+            // the second user is checked against the stored first user
+            Assert.assertEquals(1, failed);
+            operator.disconnect();
+            operator.connect();
+            Assert.assertNotNull(operator.getUser("concurrent-user"));
+            int stored = 0;
+            for (User user : users)
+            {
+                if (facade.tryResolve(user.getReference()) != null)
+                {
+                    stored++;
+                }
+            }
+            Assert.assertEquals(1, stored);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private Reservation newEvent(String name, User user) throws RaplaException
+    {
+        RaplaFacade facade = getFacade();
+        Reservation event = facade.newReservation(facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0].newClassification(), user);
+        event.getClassification().setValue("name", name);
+        event.addAppointment(facade.newAppointmentWithUser(new Date(), new Date(), user));
+        return event;
+    }
+
+    /**
+     * Blocks the connections of the operator until all stores are submitted. The first store waits for its connection while it holds the write lock,
+     * so the dispatches of the others are queued and stored in one group.
+     */
+    private <T> List<Future<T>> submitWithBlockedConnections(ExecutorService executor, List<Callable<T>> stores) throws Exception
+    {
+        connectionGate = new CountDownLatch(1);
+        final List<Future<T>> futures = new ArrayList<>();
+        try
+        {
+            for (Callable<T> store : stores)
+            {
+                futures.add(executor.submit(store));
+                // keeps the order of the dispatches in the queue
+                Thread.sleep(200);
+            }
+        }
+        finally
+        {
+            connectionGate.countDown();
+        }
+        return futures;
+    }
+
     /* TODO re-think the test and finish it
     @Test
     public void concurrentReadAndUpdate() throws Exception
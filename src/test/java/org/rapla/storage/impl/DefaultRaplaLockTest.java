@@ -0,0 +1,120 @@
+package org.rapla.storage.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.RaplaBootstrapLogger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.StampedLock;
+
+@RunWith(JUnit4.class)
+public class DefaultRaplaLockTest
+{
+    @Test
+    public void statistics() throws Exception
+    {
+        final DefaultRaplaLock lock = new DefaultRaplaLock(RaplaBootstrapLogger.createRaplaLogger());
+        lock.setSlowHoldMillis(50);
+        final RaplaLock.ReadLock readLock = lock.readLock(getClass(), "read test");
+        lock.unlock(readLock);
+
+        // a writer that holds the lock lets the reader wait until it times out
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread writer = new Thread(() -> {
+            try
+            {
+                final RaplaLock.WriteLock writeLock = lock.writeLock(DefaultRaplaLockTest.class, "write test");
+                locked.countDown();
+                release.await();
+                lock.unlock(writeLock);
+            }
+            catch (Exception ex)
+            {
+                throw new IllegalStateException(ex);
+            }
+        });
+        writer.start();
+        locked.await();
+        try
+        {
+            lock.readLock(getClass(), "read test", 1);
+            Assert.fail("timeout expected");
+        }
+        catch (RaplaException ex)
+        {
+            // expected
+        }
+        release.countDown();
+        writer.join();
+
+        final LockStatistics statistics = lock.getStatistics();
+        Assert.assertEquals(1, statistics.getReadLockCount());
+        Assert.assertEquals(1, statistics.getReadLockTimeouts());
+        Assert.assertEquals(1, statistics.getWriteLockCount());
+        Assert.assertEquals(0, statistics.getWriteLockTimeouts());
+        Assert.assertTrue(statistics.getMaxReadWaitMillis() >= 900);
+        Assert.assertTrue(statistics.getMaxWriteHoldMillis() >= 900);
+        Assert.assertEquals(1, statistics.getSlowHolds());
+
+        final List<LockStatistics.CallerStatistics> callers = statistics.getCallers();
+        Assert.assertEquals(2, callers.size());
+        final LockStatistics.CallerStatistics read = callers.get(0);
+        Assert.assertEquals(LockStatistics.Mode.read, read.getMode());
+        Assert.assertEquals("DefaultRaplaLockTest.read", read.getCaller());
+        Assert.assertEquals(2, read.getWaits().getCount());
+        // the wait of the timeout is counted in the >= 1s bucket
+        Assert.assertEquals(1, read.getWaits().getBuckets()[4]);
+
+        statistics.reset();
+        Assert.assertEquals(0, statistics.getCallerStatistics().length);
+    }
+
+    @Test
+    public void mbean() throws Exception
+    {
+        final DefaultRaplaLock lock = new DefaultRaplaLock(RaplaBootstrapLogger.createRaplaLogger());
+        lock.registerMBean("test");
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("org.rapla:type=LockStatistics,name=\"test\"");
+        try
+        {
+            lock.unlock(lock.writeLock(getClass(), "write"));
+            Assert.assertEquals(1L, server.getAttribute(name, "WriteLockCount"));
+        }
+        finally
+        {
+            lock.unregisterMBean();
+        }
+        Assert.assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void readLockReleasedByOtherThread() throws Exception
+    {
+        // like the restart lock of an async request, that is released by the thread completing the request
+        final DefaultRaplaLock lock = new DefaultRaplaLock(RaplaBootstrapLogger.createRaplaLogger(), new StampedLock().asReadWriteLock());
+        final RaplaLock.ReadLock readLock = lock.readLock(getClass(), "async request");
+        try
+        {
+            lock.writeLock(getClass(), "restart", 1);
+            Assert.fail("timeout expected");
+        }
+        catch (RaplaException ex)
+        {
+            // expected
+        }
+        final Thread completer = new Thread(() -> lock.unlock(readLock));
+        completer.start();
+        completer.join();
+        lock.unlock(lock.writeLock(getClass(), "restart", 1));
+        Assert.assertEquals(1, lock.getStatistics().getWriteLockTimeouts());
+    }
+}
@@ -0,0 +1,121 @@
+package org.rapla.storage.impl.server;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.RepeatingType;
+import org.rapla.entities.domain.internal.AppointmentImpl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+
+@RunWith(JUnit4.class)
+public class AppointmentIndexTest
+{
+    private AppointmentIndex index;
+    private int idCounter;
+
+    @Before
+    public void setUp()
+    {
+        index = new AppointmentIndex();
+        idCounter = 0;
+    }
+
+    private AppointmentImpl createAppointment(long start, long end)
+    {
+        AppointmentImpl appointment = new AppointmentImpl(new Date(start), new Date(end));
+        appointment.setId("app_" + (idCounter++));
+        return appointment;
+    }
+
+    @Test
+    public void overlappingCandidates()
+    {
+        final long hour = DateTools.MILLISECONDS_PER_HOUR;
+        final AppointmentImpl old = createAppointment(0, hour);
+        final AppointmentImpl longOne = createAppointment(hour, 100 * hour);
+        final AppointmentImpl inside = createAppointment(50 * hour, 51 * hour);
+        final AppointmentImpl later = createAppointment(200 * hour, 201 * hour);
+        index.add(old);
+        index.add(longOne);
+        index.add(inside);
+        index.add(later);
+        SortedSet<Appointment> result = index.getOverlapping(new Date(49 * hour), new Date(52 * hour));
+        Assert.assertEquals(2, result.size());
+        Assert.assertTrue(result.contains(longOne));
+        Assert.assertTrue(result.contains(inside));
+        Assert.assertEquals(4, index.getOverlapping(null, null).size());
+        Assert.assertEquals(1, index.getOverlapping(new Date(150 * hour), null).size());
+    }
+
+    @Test
+    public void infiniteRepeating()
+    {
+        final long day = DateTools.MILLISECONDS_PER_DAY;
+        final Appointment repeating = createAppointment(0, DateTools.MILLISECONDS_PER_HOUR);
+        repeating.setRepeatingEnabled(true);
+        repeating.getRepeating().setType(RepeatingType.WEEKLY);
+        repeating.getRepeating().setEnd(null);
+        index.add(repeating);
+        index.add(createAppointment(day, day + 1));
+        SortedSet<Appointment> result = index.getOverlapping(new Date(1000 * day), new Date(1001 * day));
+        Assert.assertEquals(1, result.size());
+        Assert.assertTrue(result.contains(repeating));
+    }
+
+    @Test
+    public void randomizedAgainstLinearScan()
+    {
+        Random random = new Random(42);
+        List<AppointmentImpl> all = new ArrayList<>();
+        for (int i = 0; i < 2000; i++)
+        {
+            long start = random.nextInt(100000);
+            AppointmentImpl appointment = createAppointment(start, start + 1 + random.nextInt(5000));
+            all.add(appointment);
+            index.add(appointment);
+        }
+        // remove every third appointment, half of them through the iterator
+        Iterator<Appointment> it = index.iterator();
+        int count = 0;
+        while (it.hasNext())
+        {
+            Appointment next = it.next();
+            if (count++ % 6 == 0)
+            {
+                it.remove();
+                all.remove(next);
+            }
+        }
+        for (int i = all.size() - 1; i >= 0; i -= 6)
+        {
+            index.remove(all.remove(i));
+        }
+        Assert.assertEquals(all.size(), index.size());
+        for (int i = 0; i < 200; i++)
+        {
+            long start = random.nextInt(100000);
+            long end = start + random.nextInt(3000);
+            SortedSet<Appointment> result = index.getOverlapping(new Date(start), new Date(end));
+            int expected = 0;
+            for (AppointmentImpl appointment : all)
+            {
+                if (appointment.getStart().getTime() <= end && appointment.getEnd().getTime() >= start)
+                {
+                    expected++;
+                    Assert.assertTrue(result.contains(appointment));
+                }
+            }
+            Assert.assertEquals(expected, result.size());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.rapla.storage.impl.server;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.RaplaObjectAnnotations;
+import org.rapla.entities.domain.RequestStatus;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.facade.client.ClientFacade;
+import org.rapla.storage.CachableStorageOperator;
+import org.rapla.storage.StorageOperator;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+@RunWith(JUnit4.class)
+public class AppointmentQueryIndexTest
+{
+    RaplaFacade raplaFacade;
+    CachableStorageOperator operator;
+    Allocatable resource;
+    Date start;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ClientFacade facade = RaplaTestCase.createSimpleSimpsonsWithHomer();
+        raplaFacade = facade.getRaplaFacade();
+        operator = (CachableStorageOperator) raplaFacade.getOperator();
+        resource = raplaFacade.newResourceDeprecated();
+        resource.getClassification().setValue("name", "indexed room");
+        raplaFacade.store(resource);
+        start = new Date(DateTools.cutDate(new Date()).getTime() + 10 * DateTools.MILLISECONDS_PER_HOUR);
+    }
+
+    private Reservation newReservation(String name, Allocatable allocatable) throws Exception
+    {
+        Reservation event = raplaFacade.newReservationDeprecated();
+        event.getClassification().setValue("name", name);
+        event.addAppointment(raplaFacade.newAppointmentDeprecated(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR)));
+        event.addAllocatable(allocatable);
+        return event;
+    }
+
+    private String query(Allocatable allocatable, boolean requestsOnly) throws Exception
+    {
+        final Collection<Appointment> appointments = operator.waitForWithRaplaException(
+                operator.queryAppointments(null, Collections.singleton(allocatable), Collections.<User>emptyList(), null, null, null, null, requestsOnly), 10000)
+                .getAllAppointments();
+        List<String> names = new ArrayList<>();
+        for (Appointment appointment : appointments)
+        {
+            names.add(appointment.getReservation().getName(Locale.ENGLISH));
+        }
+        return new TreeSet<>(names).toString();
+    }
+
+    @Test
+    public void requests() throws Exception
+    {
+        raplaFacade.store(newReservation("allocation", resource));
+        Reservation request = newReservation("request", resource);
+        request.setRequestStatus(resource, RequestStatus.REQUESTED);
+        raplaFacade.store(request);
+        Assert.assertEquals("[request]", query(resource, true));
+        Assert.assertEquals("[allocation, request]", query(resource, false));
+
+        Reservation editable = raplaFacade.edit(request);
+        editable.setRequestStatus(resource, null);
+        raplaFacade.store(editable);
+        Assert.assertEquals("[]", query(resource, true));
+    }
+
+    @Test
+    public void templates() throws Exception
+    {
+        Classification classification = raplaFacade.getDynamicType(StorageOperator.RAPLA_TEMPLATE).newClassification();
+        classification.setValue("name", "template");
+        Allocatable template = raplaFacade.newAllocatable(classification, operator.getUser("homer"));
+        raplaFacade.store(template);
+        raplaFacade.store(newReservation("allocation", resource));
+        Reservation templateEvent = newReservation("template event", resource);
+        templateEvent.setAnnotation(RaplaObjectAnnotations.KEY_TEMPLATE, template.getId());
+        raplaFacade.store(templateEvent);
+        Assert.assertEquals("[template event]", query(template, false));
+        Assert.assertEquals("[allocation]", query(resource, false));
+
+        raplaFacade.remove(raplaFacade.tryResolve(templateEvent.getReference()));
+        Assert.assertEquals("[]", query(template, false));
+    }
+}
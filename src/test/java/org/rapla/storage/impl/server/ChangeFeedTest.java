@@ -0,0 +1,79 @@
+package org.rapla.storage.impl.server;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Permission;
+import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.facade.client.ClientFacade;
+import org.rapla.storage.CachableStorageOperator;
+import org.rapla.storage.UpdateResult;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.Collection;
+import java.util.Date;
+
+@RunWith(JUnit4.class)
+public class ChangeFeedTest
+{
+    RaplaFacade raplaFacade;
+    CachableStorageOperator operator;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ClientFacade facade = RaplaTestCase.createSimpleSimpsonsWithHomer();
+        raplaFacade = facade.getRaplaFacade();
+        operator = (CachableStorageOperator) raplaFacade.getOperator();
+    }
+
+    private Allocatable storeResource(String name, User readUser) throws Exception
+    {
+        Allocatable resource = raplaFacade.newResourceDeprecated();
+        resource.getClassification().setValue("name", name);
+        if (readUser != null)
+        {
+            resource.removePermission(resource.getPermissionList().iterator().next());
+            Permission permission = resource.newPermission();
+            permission.setUser(readUser);
+            permission.setAccessLevel(Permission.READ);
+            resource.addPermission(permission);
+        }
+        raplaFacade.store(resource);
+        return resource;
+    }
+
+    @Test
+    public void changesForUser() throws Exception
+    {
+        User homer = operator.getUser("homer");
+        User monty = operator.getUser("monty");
+        Date since = operator.getLastRefreshed();
+        Thread.sleep(5);
+        Allocatable forAll = storeResource("for all", null);
+        Allocatable forHomer = storeResource("for homer", homer);
+        Allocatable forMonty = storeResource("for monty", monty);
+
+        Collection<ReferenceInfo> montyChanges = operator.getUpdateResult(since, monty).getAddedAndChangedIds();
+        Assert.assertTrue(montyChanges.contains(forAll.getReference()));
+        Assert.assertTrue(montyChanges.contains(forMonty.getReference()));
+        Assert.assertFalse(montyChanges.contains(forHomer.getReference()));
+        Collection<ReferenceInfo> adminChanges = operator.getUpdateResult(since, homer).getAddedAndChangedIds();
+        Assert.assertTrue(adminChanges.contains(forAll.getReference()));
+        Assert.assertTrue(adminChanges.contains(forMonty.getReference()));
+        Assert.assertTrue(adminChanges.contains(forHomer.getReference()));
+
+        // the users that could read the previous version are notified of the removal
+        Date beforeRemove = operator.getLastRefreshed();
+        Thread.sleep(5);
+        raplaFacade.remove(raplaFacade.tryResolve(forMonty.getReference()));
+        UpdateResult montyUpdate = operator.getUpdateResult(beforeRemove, monty);
+        Assert.assertTrue(montyUpdate.getRemovedIds().contains(forMonty.getReference()));
+        Assert.assertFalse(montyUpdate.getAddedAndChangedIds().contains(forAll.getReference()));
+    }
+}
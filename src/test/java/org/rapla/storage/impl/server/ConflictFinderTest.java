@@ -0,0 +1,191 @@
+package org.rapla.storage.impl.server;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.RepeatingType;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.facade.Conflict;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.facade.client.ClientFacade;
+import org.rapla.logger.Logger;
+import org.rapla.logger.RaplaBootstrapLogger;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+@RunWith(JUnit4.class)
+public class ConflictFinderTest
+{
+    RaplaFacade raplaFacade;
+    LocalAbstractCachableOperator operator;
+    Logger logger;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        logger = RaplaBootstrapLogger.createRaplaLogger();
+        ClientFacade facade = RaplaTestCase.createSimpleSimpsonsWithHomer();
+        raplaFacade = facade.getRaplaFacade();
+        operator = (LocalAbstractCachableOperator) raplaFacade.getOperator();
+    }
+
+    @Test
+    public void incrementalUpdateMatchesFullCalculation() throws Exception
+    {
+        final Random random = new Random(4711);
+        int conflicts = 0;
+        for (int round = 0; round < 200; round++)
+        {
+            randomEdit(random);
+            final Set<String> incremental = getIds(RaplaTestCase.waitForWithRaplaException(operator.getConflicts((User) null), 10000));
+            final Set<String> full = getIds(createConflictFinder(1).getConflicts(null));
+            Assert.assertEquals("conflicts after edit " + round, full, incremental);
+            conflicts = Math.max(conflicts, full.size());
+        }
+        // the random edits must produce conflicts, otherwise the test checks nothing
+        Assert.assertTrue(conflicts > 0);
+    }
+
+    @Test
+    public void parallelInitMatchesSequential() throws Exception
+    {
+        final Random random = new Random(42);
+        for (int round = 0; round < 50; round++)
+        {
+            randomEdit(random);
+        }
+        final Set<String> sequential = getIds(createConflictFinder(1).getConflicts(null));
+        final Set<String> parallel = getIds(createConflictFinder(4).getConflicts(null));
+        Assert.assertFalse(sequential.isEmpty());
+        Assert.assertEquals(sequential, parallel);
+    }
+
+    /** changes, adds or removes appointments, allocations and reservations */
+    private void randomEdit(Random random) throws Exception
+    {
+        final Allocatable[] allocatables = raplaFacade.getAllocatables();
+        final List<Reservation> reservations = new ArrayList<>(RaplaTestCase.waitForWithRaplaException(raplaFacade.getReservationsForAllocatable(null, null, null, null), 10000));
+        final int action = random.nextInt(7);
+        if (action == 5 && reservations.size() > 1)
+        {
+            raplaFacade.remove(reservations.get(random.nextInt(reservations.size())));
+            return;
+        }
+        final Reservation reservation;
+        if (action == 6 || reservations.isEmpty())
+        {
+            reservation = raplaFacade.newReservationDeprecated();
+            reservation.getClassification().setValue("name", "random");
+        }
+        else
+        {
+            reservation = raplaFacade.edit(reservations.get(random.nextInt(reservations.size())));
+        }
+        final Appointment[] appointments = reservation.getAppointments();
+        if (action == 0 && appointments.length > 1)
+        {
+            reservation.removeAppointment(appointments[random.nextInt(appointments.length)]);
+        }
+        else if (action == 1)
+        {
+            final Allocatable allocatable = allocatables[random.nextInt(allocatables.length)];
+            if (reservation.hasAllocated(allocatable))
+            {
+                reservation.removeAllocatable(allocatable);
+            }
+            else
+            {
+                reservation.addAllocatable(allocatable);
+            }
+        }
+        else
+        {
+            final long start = operator.today().getTime() + random.nextInt(20 * 24) * DateTools.MILLISECONDS_PER_HOUR / 2;
+            final Date end = new Date(start + (1 + random.nextInt(6)) * DateTools.MILLISECONDS_PER_HOUR);
+            final Appointment appointment;
+            if (appointments.length > 0 && action != 4)
+            {
+                appointment = appointments[random.nextInt(appointments.length)];
+                appointment.move(new Date(start), end);
+            }
+            else
+            {
+                appointment = raplaFacade.newAppointmentDeprecated(new Date(start), end);
+                reservation.addAppointment(appointment);
+            }
+            if (random.nextInt(3) == 0)
+            {
+                appointment.setRepeatingEnabled(true);
+                appointment.getRepeating().setType(random.nextBoolean() ? RepeatingType.DAILY : RepeatingType.WEEKLY);
+                if (random.nextBoolean())
+                {
+                    appointment.getRepeating().setNumber(2 + random.nextInt(20));
+                }
+                if (random.nextBoolean())
+                {
+                    appointment.getRepeating().addException(new Date(start + DateTools.MILLISECONDS_PER_WEEK));
+                }
+            }
+            if (random.nextInt(3) == 0 || reservation.getAllocatables().length == 0)
+            {
+                reservation.addAllocatable(allocatables[random.nextInt(allocatables.length)]);
+            }
+        }
+        if (reservation.getAppointments().length == 0)
+        {
+            return;
+        }
+        raplaFacade.store(reservation);
+    }
+
+    private ConflictFinder createConflictFinder(int parallelism) throws Exception
+    {
+        final Collection<Allocatable> allocatables = Arrays.asList(raplaFacade.getAllocatables());
+        final AllocationMap allocationMap = new AllocationMap()
+        {
+            @Override
+            public SortedSet<Appointment> getAppointments(Allocatable allocatable)
+            {
+                return operator.getAppointments(allocatable);
+            }
+
+            @Override
+            public SortedSet<Appointment> getAppointments(Allocatable allocatable, Date start, Date end)
+            {
+                return operator.getAppointments(allocatable, start, end);
+            }
+
+            @Override
+            public Collection<Allocatable> getAllocatables()
+            {
+                return allocatables;
+            }
+        };
+        return new ConflictFinder(allocationMap, operator.today(), logger, operator, operator.getPermissionController(), parallelism);
+    }
+
+    private Set<String> getIds(Collection<Conflict> conflicts)
+    {
+        final Set<String> ids = new TreeSet<>();
+        for (Conflict conflict : conflicts)
+        {
+            ids.add(conflict.getId());
+        }
+        return ids;
+    }
+}
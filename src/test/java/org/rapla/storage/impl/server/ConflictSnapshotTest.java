@@ -0,0 +1,65 @@
+package org.rapla.storage.impl.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class ConflictSnapshotTest
+{
+    @Test
+    public void writeAndRead() throws IOException
+    {
+        ConflictSnapshot snapshot = new ConflictSnapshot("1234-5678", 1000L, 2000L, 3000L);
+        snapshot.addConflict("r1", "a1", "a2");
+        snapshot.addConflict("r1", "a1", "a3");
+        snapshot.addConflict("r2", "a4", "a5");
+        StringWriter writer = new StringWriter();
+        snapshot.write(writer);
+
+        ConflictSnapshot read = ConflictSnapshot.read(new StringReader(writer.toString()));
+        Assert.assertEquals("1234-5678", read.getDataVersion());
+        Assert.assertEquals(1000L, read.getTimestamp());
+        Assert.assertEquals(2000L, read.getToday());
+        Assert.assertEquals(3000L, read.getMaxCheck());
+        Assert.assertEquals(3, read.size());
+        List<String> conflicts = new ArrayList<>();
+        for (ConflictSnapshot.Entry entry : read.getConflicts("r1"))
+        {
+            conflicts.add(entry.getAppointment1() + "," + entry.getAppointment2());
+        }
+        Assert.assertEquals("[a1,a2, a1,a3]", conflicts.toString());
+        Assert.assertTrue(read.getConflicts("r3").isEmpty());
+    }
+
+    @Test
+    public void invalidSnapshot()
+    {
+        String[] invalid = {
+                // unknown version
+                "version=0\ntimestamp=1\ntoday=1\nmaxCheck=1\n\n",
+                // missing timestamp
+                "version=1\ndataVersion=1\ntoday=1\nmaxCheck=1\n\n",
+                // missing appointment
+                "version=1\ndataVersion=1\ntimestamp=1\ntoday=1\nmaxCheck=1\n\nr1\ta1\n" };
+        for (String content : invalid)
+        {
+            try
+            {
+                ConflictSnapshot.read(new StringReader(content));
+                Assert.fail("IOException expected for " + content);
+            }
+            catch (IOException ex)
+            {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.rapla.storage.impl.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.AppointmentBlock;
+import org.rapla.entities.domain.RepeatingType;
+import org.rapla.entities.domain.internal.AppointmentImpl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+public class FreeSlotFinderTest
+{
+    private static final long HOUR = DateTools.MILLISECONDS_PER_HOUR;
+    private static final long DAY = DateTools.MILLISECONDS_PER_DAY;
+    // 2020-01-06 is a monday
+    private final long monday = DateTools.toDate(2020, 1, 6);
+
+    private BusyTimeline createBusy(long... startEnds)
+    {
+        List<AppointmentBlock> blocks = new ArrayList<>();
+        for (int i = 0; i < startEnds.length; i += 2)
+        {
+            blocks.add(new AppointmentBlock(startEnds[i], startEnds[i + 1], null, false));
+        }
+        return BusyTimeline.create(blocks);
+    }
+
+    @Test
+    public void mergedTimeline()
+    {
+        BusyTimeline busy = createBusy(10, 20, 15, 30, 30, 40, 50, 60);
+        Assert.assertEquals(2, busy.size());
+        Assert.assertEquals(40, busy.getEnd(0));
+        Assert.assertTrue(busy.isBusy(39, 45));
+        Assert.assertFalse(busy.isBusy(40, 50));
+        Assert.assertFalse(busy.isBusy(0, 10));
+        Assert.assertEquals(60, busy.getConflictEnd(45, 51));
+    }
+
+    @Test
+    public void jumpsOverBusyTime()
+    {
+        AppointmentImpl appointment = new AppointmentImpl(new Date(monday + 8 * HOUR), new Date(monday + 10 * HOUR));
+        BusyTimeline busy = createBusy(monday + 8 * HOUR, monday + 12 * HOUR, monday + 13 * HOUR, monday + 14 * HOUR);
+        FreeSlotFinder finder = new FreeSlotFinder(appointment, 8 * 60, 18 * 60, null, 4);
+        Assert.assertEquals(new Date(monday + 14 * HOUR), finder.findNextFreeStart(busy));
+        // weekends excluded and the rest of monday is busy
+        busy = createBusy(monday + 8 * HOUR, monday + 2 * DAY);
+        finder = new FreeSlotFinder(appointment, 8 * 60, 18 * 60, new Integer[] { DateTools.WEDNESDAY }, 4);
+        Assert.assertEquals(new Date(monday + 3 * DAY + 8 * HOUR), finder.findNextFreeStart(busy));
+    }
+
+    @Test
+    public void repeatingAgainstStepwiseSearch()
+    {
+        Random random = new Random(7);
+        List<AppointmentBlock> blocks = new ArrayList<>();
+        for (int i = 0; i < 300; i++)
+        {
+            long start = monday + random.nextInt(200) * DAY + (8 + random.nextInt(8)) * HOUR;
+            blocks.add(new AppointmentBlock(start, start + (1 + random.nextInt(3)) * HOUR, null, false));
+        }
+        BusyTimeline busy = BusyTimeline.create(blocks);
+        AppointmentImpl appointment = new AppointmentImpl(new Date(monday + 9 * HOUR), new Date(monday + 11 * HOUR), RepeatingType.WEEKLY, 6);
+        FreeSlotFinder finder = new FreeSlotFinder(appointment, 8 * 60, 18 * 60, null, 2);
+        Date found = finder.findNextFreeStart(busy);
+        Assert.assertNotNull(found);
+        // the first free slot found by testing every half hour
+        for (long start = monday + 9 * HOUR + HOUR / 2; start < found.getTime(); start += HOUR / 2)
+        {
+            int minute = DateTools.getMinuteOfDay(start);
+            if (minute < 8 * 60 || minute + 120 > 18 * 60)
+            {
+                continue;
+            }
+            Assert.assertTrue(new Date(start).toString(), isBusy(appointment, start, busy));
+        }
+        Assert.assertFalse(isBusy(appointment, found.getTime(), busy));
+    }
+
+    private boolean isBusy(AppointmentImpl appointment, long start, BusyTimeline busy)
+    {
+        Appointment moved = appointment.clone();
+        moved.moveTo(new Date(start));
+        List<AppointmentBlock> blocks = new ArrayList<>();
+        moved.createBlocks(new Date(start), moved.getMaxEnd(), blocks);
+        for (AppointmentBlock block : blocks)
+        {
+            for (int i = 0; i < busy.size(); i++)
+            {
+                if (busy.getStart(i) < block.getEnd() && busy.getEnd(i) > block.getStart())
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
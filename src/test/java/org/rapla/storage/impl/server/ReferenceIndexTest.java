@@ -0,0 +1,77 @@
+package org.rapla.storage.impl.server;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.DependencyException;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.facade.client.ClientFacade;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.Date;
+
+@RunWith(JUnit4.class)
+public class ReferenceIndexTest
+{
+    RaplaFacade raplaFacade;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ClientFacade facade = RaplaTestCase.createSimpleSimpsonsWithHomer();
+        raplaFacade = facade.getRaplaFacade();
+    }
+
+    @Test
+    public void dependenciesUpdatedOnStore() throws Exception
+    {
+        Allocatable resource = raplaFacade.newResourceDeprecated();
+        resource.getClassification().setValue("name", "Referenced Room");
+        raplaFacade.store(resource);
+
+        Reservation event = raplaFacade.newReservationDeprecated();
+        event.getClassification().setValue("name", "Referencing Event");
+        Date start = new Date(DateTools.cutDate(new Date()).getTime() + 10 * DateTools.MILLISECONDS_PER_HOUR);
+        Appointment appointment = raplaFacade.newAppointmentDeprecated(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR));
+        event.addAppointment(appointment);
+        event.addAllocatable(resource);
+        raplaFacade.store(event);
+
+        try
+        {
+            raplaFacade.remove(resource);
+            Assert.fail("DependencyException should have thrown");
+        }
+        catch (DependencyException ex)
+        {
+            Assert.assertTrue(ex.getDependencies().toString().contains("Referencing Event"));
+        }
+
+        // removing the allocation also removes the reference from the index
+        Reservation editable = raplaFacade.edit(event);
+        editable.removeAllocatable(resource);
+        raplaFacade.store(editable);
+        raplaFacade.remove(resource);
+    }
+
+    @Test
+    public void removedReferer() throws Exception
+    {
+        Allocatable resource = raplaFacade.newResourceDeprecated();
+        raplaFacade.store(resource);
+        Reservation event = raplaFacade.newReservationDeprecated();
+        Date start = new Date(DateTools.cutDate(new Date()).getTime() + 10 * DateTools.MILLISECONDS_PER_HOUR);
+        event.addAppointment(raplaFacade.newAppointmentDeprecated(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR)));
+        event.addAllocatable(resource);
+        raplaFacade.store(event);
+
+        raplaFacade.remove(event);
+        raplaFacade.remove(resource);
+    }
+}
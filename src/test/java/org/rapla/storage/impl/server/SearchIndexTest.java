@@ -0,0 +1,92 @@
+package org.rapla.storage.impl.server;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.dynamictype.Classifiable;
+import org.rapla.entities.Named;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.facade.client.ClientFacade;
+import org.rapla.storage.CachableStorageOperator;
+import org.rapla.storage.SearchQuery;
+import org.rapla.storage.SearchResult;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+@RunWith(JUnit4.class)
+public class SearchIndexTest
+{
+    RaplaFacade raplaFacade;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ClientFacade facade = RaplaTestCase.createSimpleSimpsonsWithHomer();
+        raplaFacade = facade.getRaplaFacade();
+    }
+
+    private String search(String text) throws Exception
+    {
+        return search(text, null);
+    }
+
+    private String search(String text, User user) throws Exception
+    {
+        final CachableStorageOperator operator = (CachableStorageOperator) raplaFacade.getOperator();
+        SearchResult result = operator.waitForWithRaplaException(operator.search(user, new SearchQuery(text)), 10000);
+        List<String> names = new ArrayList<>();
+        for (Classifiable classifiable : result.getResults())
+        {
+            names.add(((Named) classifiable).getName(Locale.ENGLISH));
+        }
+        Assert.assertEquals(names.size(), result.getTotalCount());
+        return names.toString();
+    }
+
+    @Test
+    public void prefixAndRanking() throws Exception
+    {
+        Assert.assertEquals("[Room A66, Room A66.1]", search("room a66"));
+        Assert.assertEquals("[Room A66, Room A66.1]", search("ROOM A"));
+        Assert.assertEquals("[Test, test-reservation, test-reservation]", search("tes"));
+        Assert.assertEquals("[]", search("room bowling"));
+        Assert.assertEquals("[]", search(" - "));
+        // the title of the lecturer is not part of the name
+        Assert.assertEquals("[Burns Monty]", search("mr"));
+    }
+
+    @Test
+    public void updatedOnStore() throws Exception
+    {
+        Allocatable resource = raplaFacade.newResourceDeprecated();
+        resource.getClassification().setValue("name", "Mr Room");
+        raplaFacade.store(resource);
+        // matches in the name rank before matches in attributes and whole words before prefixes
+        Assert.assertEquals("[Mr Room, Burns Monty]", search("mr"));
+        Assert.assertEquals("[Mr Room, Room A66, Room A66.1]", search("room"));
+        Assert.assertEquals("[Mr Room]", search("room mr"));
+
+        Allocatable editable = raplaFacade.edit(resource);
+        editable.getClassification().setValue("name", "Roomservice");
+        raplaFacade.store(editable);
+        Assert.assertEquals("[Room A66, Room A66.1, Roomservice]", search("room"));
+        Assert.assertEquals("[Burns Monty]", search("mr"));
+
+        raplaFacade.remove(editable);
+        Assert.assertEquals("[Room A66, Room A66.1]", search("room"));
+    }
+
+    @Test
+    public void permissions() throws Exception
+    {
+        User monty = raplaFacade.getOperator().getUser("monty");
+        Assert.assertEquals("[Room A66, Room A66.1]", search("room", monty));
+    }
+}
@@ -0,0 +1,55 @@
+package org.rapla.storage.tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.storage.FreeBusyMatrix;
+
+import java.util.BitSet;
+import java.util.Date;
+
+@RunWith(JUnit4.class)
+public class FreeBusyMatrixTest
+{
+    private static final long SLOT = 15 * DateTools.MILLISECONDS_PER_MINUTE;
+    private final long start = DateTools.toDate(2020, 1, 6);
+    private final ReferenceInfo<Allocatable> room = new ReferenceInfo<>("r1", Allocatable.class);
+    private final ReferenceInfo<Allocatable> freeRoom = new ReferenceInfo<>("r2", Allocatable.class);
+
+    @Test
+    public void runLengthEncoding()
+    {
+        FreeBusyMatrix matrix = new FreeBusyMatrix(new Date(start), 15, 96);
+        BitSet busy = new BitSet();
+        busy.set(0, 2);
+        busy.set(10, 14);
+        busy.set(95);
+        matrix.putBusySlots(room, busy);
+        matrix.putBusySlots(freeRoom, new BitSet());
+        Assert.assertArrayEquals(new int[] { 0, 2, 8, 4, 81, 1 }, matrix.getRuns(room));
+        Assert.assertNull(matrix.getRuns(freeRoom));
+        Assert.assertEquals(busy, matrix.getBusySlots(room));
+        Assert.assertEquals(new Date(start + DateTools.MILLISECONDS_PER_DAY), matrix.getEnd());
+    }
+
+    @Test
+    public void busyTest()
+    {
+        FreeBusyMatrix matrix = new FreeBusyMatrix(new Date(start), 15, 96);
+        BitSet busy = new BitSet();
+        busy.set(10, 14);
+        matrix.putBusySlots(room, busy);
+        Assert.assertFalse(matrix.isBusy(room, start, start + 10 * SLOT));
+        Assert.assertTrue(matrix.isBusy(room, start, start + 10 * SLOT + 1));
+        Assert.assertTrue(matrix.isBusy(room, start + 12 * SLOT, start + 12 * SLOT + 1));
+        Assert.assertFalse(matrix.isBusy(room, start + 14 * SLOT, start + 20 * SLOT));
+        Assert.assertFalse(matrix.isBusy(freeRoom, start, start + 96 * SLOT));
+        // outside of the matrix nothing is known
+        Assert.assertTrue(matrix.isBusy(freeRoom, start - 1, start + SLOT));
+        Assert.assertTrue(matrix.isBusy(freeRoom, start, start + 96 * SLOT + 1));
+    }
+}
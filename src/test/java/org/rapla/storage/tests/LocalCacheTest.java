@@ -38,6 +38,7 @@ import org.rapla.entities.dynamictype.internal.AttributeImpl;
 import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
 import org.rapla.entities.dynamictype.internal.StandardFunctions;
 import org.rapla.entities.extensionpoints.FunctionFactory;
+import org.rapla.entities.internal.UserImpl;
 import org.rapla.entities.storage.ExternalSyncEntity;
 import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.facade.RaplaFacade;
@@ -99,8 +100,7 @@ public class LocalCacheTest  {
         return type.toString() + "_" + intId;
     }
 
-    @Test
-    public void testAllocatable() throws Exception {
+    private FileOperator createOperator() {
         String resolvedPath = "";
         Logger logger = RaplaBootstrapLogger.createRaplaLogger();
         AbstractBundleManager bundleManager = new ServerBundleManager();
@@ -119,6 +119,12 @@ public class LocalCacheTest  {
         PromiseWait promiseWait = new PromiseWaitImpl(logger);
         FileOperator operator = new FileOperator(logger, promiseWait,i18n, raplaLocale, scheduler, functionFactoryMap, resolvedPath,
                 permissionExtensions);
+        return operator;
+    }
+
+    @Test
+    public void testAllocatable() throws Exception {
+        FileOperator operator = createOperator();
         final PermissionController controller = DefaultPermissionControllerSupport.getController(operator);
         LocalCache cache = new LocalCache(controller);
 
@@ -142,6 +148,88 @@ public class LocalCacheTest  {
         Assert.assertEquals("Beta", name);
     }
 
+    private UserImpl createUser(int intId, String username) {
+        Date today = new Date();
+        UserImpl user = new UserImpl(today, today);
+        user.setId(getId(User.class, intId));
+        user.setUsername(username);
+        return user;
+    }
+
+    @Test
+    public void testKeyIndex() throws Exception {
+        FileOperator operator = createOperator();
+        LocalCache cache = new LocalCache(DefaultPermissionControllerSupport.getController(operator));
+
+        DynamicTypeImpl type = createDynamicType();
+        type.setResolver( cache);
+        type.setOperator(operator);
+        cache.put( type );
+        Assert.assertSame(type, cache.getDynamicType("defaultResource"));
+
+        UserImpl homer = createUser(1, "Homer");
+        cache.put(homer);
+        UserImpl homer2 = createUser(2, "homer");
+        cache.put(homer2);
+        Assert.assertSame(homer, cache.getUser("Homer"));
+        Assert.assertSame(homer2, cache.getUser("homer"));
+        Assert.assertNotNull(cache.getUser("HOMER"));
+        Assert.assertNull(cache.getUser("marge"));
+
+        // renaming removes the old keys
+        UserImpl marge = createUser(2, "Marge");
+        cache.put(marge);
+        Assert.assertSame(homer, cache.getUser("homer"));
+        Assert.assertSame(marge, cache.getUser("marge"));
+        cache.remove(homer);
+        Assert.assertNull(cache.getUser("homer"));
+        Assert.assertSame(marge, cache.getUser("Marge"));
+
+        DynamicTypeImpl renamedType = createDynamicType();
+        renamedType.setResolver( cache);
+        renamedType.setOperator(operator);
+        renamedType.setKey("room");
+        cache.put(renamedType);
+        Assert.assertNull(cache.getDynamicType("defaultResource"));
+        Assert.assertSame(renamedType, cache.getDynamicType("room"));
+        cache.remove(renamedType);
+        Assert.assertNull(cache.getDynamicType("room"));
+
+        cache.put(homer);
+        cache.clearAll();
+        Assert.assertNull(cache.getUser("Homer"));
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        FileOperator operator = createOperator();
+        LocalCache cache = new LocalCache(DefaultPermissionControllerSupport.getController(operator));
+
+        DynamicTypeImpl type = createDynamicType();
+        type.setResolver( cache);
+        type.setOperator(operator);
+        type.setReadOnly(  );
+        cache.put( type );
+        AllocatableImpl resource1 = createResource(cache,1,type,"Adrian");
+        cache.put(resource1);
+        UserImpl homer = createUser(1, "Homer");
+        cache.put(homer);
+
+        LocalCache snapshot = cache.createSnapshot();
+        AllocatableImpl resource2 = createResource(cache,2,type,"Beta");
+        cache.put(resource2);
+        cache.remove(homer);
+        Assert.assertEquals(2, cache.getAllocatables().size());
+        Assert.assertNull(cache.getUser("Homer"));
+
+        // the snapshot keeps the state of its creation
+        Assert.assertEquals(1, snapshot.getAllocatables().size());
+        Assert.assertNull(snapshot.tryResolve(resource2.getReference()));
+        Assert.assertSame(resource1, snapshot.tryResolve(resource1.getReference()));
+        Assert.assertSame(homer, snapshot.getUser("Homer"));
+        Assert.assertSame(type, snapshot.getDynamicType("defaultResource"));
+    }
+
     @Test
     public void test2() throws Exception {
 
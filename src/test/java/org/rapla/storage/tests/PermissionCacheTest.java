@@ -0,0 +1,92 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage.tests;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.entities.Category;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Permission;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.facade.client.ClientFacade;
+import org.rapla.storage.PermissionController;
+import org.rapla.test.util.RaplaTestCase;
+
+@RunWith(JUnit4.class)
+public class PermissionCacheTest
+{
+    RaplaFacade raplaFacade;
+    PermissionController permissionController;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ClientFacade facade = RaplaTestCase.createSimpleSimpsonsWithHomer();
+        raplaFacade = facade.getRaplaFacade();
+        permissionController = raplaFacade.getPermissionController();
+    }
+
+    private User getMonty() throws Exception
+    {
+        return raplaFacade.getOperator().getUser("monty");
+    }
+
+    @Test
+    public void invalidatedOnChanges() throws Exception
+    {
+        Category groups = raplaFacade.edit(raplaFacade.getUserGroupsCategory());
+        Category testGroup = raplaFacade.newCategory();
+        testGroup.setKey("test-group");
+        groups.addCategory(testGroup);
+        raplaFacade.store(groups);
+        testGroup = raplaFacade.getUserGroupsCategory().getCategory("test-group");
+
+        Allocatable resource = raplaFacade.newResourceDeprecated();
+        resource.getClassification().setValue("name", "cached-resource");
+        resource.removePermission(resource.getPermissionList().iterator().next());
+        Permission permission = resource.newPermission();
+        permission.setGroup(testGroup);
+        permission.setAccessLevel(Permission.READ);
+        resource.addPermission(permission);
+        raplaFacade.store(resource);
+        resource = raplaFacade.tryResolve(resource.getReference());
+
+        User oldMonty = getMonty();
+        Assert.assertFalse(permissionController.canRead(resource, oldMonty));
+        Assert.assertFalse(permissionController.canRead(resource, oldMonty));
+
+        // the groups of the user change
+        User editMonty = raplaFacade.edit(oldMonty);
+        editMonty.addGroup(testGroup);
+        raplaFacade.store(editMonty);
+        User monty = getMonty();
+        Assert.assertTrue(permissionController.canRead(resource, monty));
+        Assert.assertFalse(permissionController.canModify(resource, monty));
+        // checks with the old version of the user are not mixed up with the new version
+        Assert.assertFalse(permissionController.canRead(resource, oldMonty));
+
+        // the permissions of the entity change
+        Allocatable editResource = raplaFacade.edit(resource);
+        Permission editPermission = editResource.newPermission();
+        editPermission.setUser(monty);
+        editPermission.setAccessLevel(Permission.EDIT);
+        editResource.addPermission(editPermission);
+        raplaFacade.store(editResource);
+        resource = raplaFacade.tryResolve(resource.getReference());
+        Assert.assertTrue(permissionController.canModify(resource, monty));
+    }
+}